@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import java.util.Arrays;
+
+/**
+ * Pure Java block compressor in the style of LZ4: a greedy LZ77 matcher
+ * using a hash table of 4-byte sequences, producing a stream of sequences
+ * each made up of a token, literals and a back-reference. It trades
+ * compression ratio for speed, which is what's needed for compressing items
+ * on the fly before they go on the network.
+ *
+ * <p>Sequence layout:
+ * <pre>
+ *   | token | extra literal length bytes | literals | offset (2 bytes, LE) | extra match length bytes |
+ * </pre>
+ * The high 4 bits of the token are the literal length, the low 4 bits the
+ * match length minus {@value #MIN_MATCH}; the value 15 means that the
+ * length continues in the following bytes, each adding up to 255. The
+ * last sequence only has literals.
+ */
+final class BlockCompressor {
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int LAST_LITERALS = 5; // the end of the block is always encoded as literals
+    private static final int MATCH_FIND_LIMIT = 12; // no match starts this close to the end of the block
+    private static final int HASH_LOG = 12;
+    private static final int RUN_MASK = 0xF;
+
+    private static final ThreadLocal<int[]> HASH_TABLES = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+
+    private BlockCompressor() {
+    }
+
+    /**
+     * Returns the maximum size of the compressed form of a block of the
+     * given length.
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses {@code src[srcOff, srcOff + srcLen)} into {@code dest}
+     * starting at {@code destOff}, which must have room for {@link
+     * #maxCompressedLength(int)} bytes. Returns the number of bytes written.
+     */
+    static int compress(byte[] src, int srcOff, int srcLen, byte[] dest, int destOff) {
+        int[] hashTable = HASH_TABLES.get();
+        Arrays.fill(hashTable, -1);
+
+        int srcEnd = srcOff + srcLen;
+        int matchLimit = srcEnd - LAST_LITERALS;
+        int findLimit = srcEnd - MATCH_FIND_LIMIT;
+
+        int dp = destOff;
+        int anchor = srcOff; // start of the pending literals
+        int sp = srcOff;
+        while (sp < findLimit) {
+            int sequence = readInt(src, sp);
+            int h = hash(sequence);
+            int candidate = hashTable[h];
+            hashTable[h] = sp;
+            if (candidate < 0 || sp - candidate > MAX_OFFSET || readInt(src, candidate) != sequence) {
+                sp++;
+                continue;
+            }
+
+            int matchLength = MIN_MATCH;
+            while (sp + matchLength < matchLimit && src[candidate + matchLength] == src[sp + matchLength]) {
+                matchLength++;
+            }
+
+            dp = writeSequence(src, anchor, sp - anchor, sp - candidate, matchLength, dest, dp);
+            sp += matchLength;
+            anchor = sp;
+        }
+        return writeLastLiterals(src, anchor, srcEnd - anchor, dest, dp) - destOff;
+    }
+
+    /**
+     * Decompresses {@code src[srcOff, srcOff + srcLen)} into {@code dest},
+     * which must have exactly the size of the uncompressed block.
+     */
+    static void decompress(byte[] src, int srcOff, int srcLen, byte[] dest) {
+        int sp = srcOff;
+        int srcEnd = srcOff + srcLen;
+        int dp = 0;
+        while (sp < srcEnd) {
+            int token = src[sp++] & 0xFF;
+
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK) {
+                int b;
+                do {
+                    b = src[sp++] & 0xFF;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, sp, dest, dp, literalLength);
+            sp += literalLength;
+            dp += literalLength;
+            if (sp >= srcEnd) {
+                break; // last sequence
+            }
+
+            int offset = (src[sp] & 0xFF) | (src[sp + 1] & 0xFF) << 8;
+            sp += 2;
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int b;
+                do {
+                    b = src[sp++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+
+            // byte by byte, the match can overlap the bytes it produces
+            int mp = dp - offset;
+            for (int i = 0; i < matchLength; i++) {
+                dest[dp++] = dest[mp++];
+            }
+        }
+        if (dp != dest.length) {
+            throw new IllegalStateException("Corrupt compressed block, decompressed " + dp + " bytes instead of "
+                    + dest.length);
+        }
+    }
+
+    private static int writeSequence(byte[] src, int literalOff, int literalLength, int offset, int matchLength,
+                                     byte[] dest, int dp) {
+        int tokenPos = dp++;
+        int matchRun = matchLength - MIN_MATCH;
+        dest[tokenPos] = (byte) (Math.min(literalLength, RUN_MASK) << 4 | Math.min(matchRun, RUN_MASK));
+        dp = writeLengthTail(literalLength, dest, dp);
+        System.arraycopy(src, literalOff, dest, dp, literalLength);
+        dp += literalLength;
+        dest[dp++] = (byte) offset;
+        dest[dp++] = (byte) (offset >>> 8);
+        return writeLengthTail(matchRun, dest, dp);
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalOff, int literalLength, byte[] dest, int dp) {
+        dest[dp++] = (byte) (Math.min(literalLength, RUN_MASK) << 4);
+        dp = writeLengthTail(literalLength, dest, dp);
+        System.arraycopy(src, literalOff, dest, dp, literalLength);
+        return dp + literalLength;
+    }
+
+    private static int writeLengthTail(int length, byte[] dest, int dp) {
+        if (length < RUN_MASK) {
+            return dp;
+        }
+        int remaining = length - RUN_MASK;
+        while (remaining >= 255) {
+            dest[dp++] = (byte) 255;
+            remaining -= 255;
+        }
+        dest[dp++] = (byte) remaining;
+        return dp;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF)
+                | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16
+                | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import javax.annotation.Nonnull;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Open addressing hash map keyed by encoded keys, for processors keeping
+ * state per key. Unlike a {@code HashMap<ByteArrayKey, V>} it doesn't
+ * create any object per key: the key bytes are appended to a single key
+ * store, which can be kept off-heap, and their offsets, lengths and hashes
+ * go to parallel primitive arrays. Collisions are resolved by linear
+ * probing, the hash being the murmur3 hash keyed frames carry in their
+ * header (see {@link Utils#encode}).
+ *
+ * <p>Entries can't be removed, the processors using it keep their keys
+ * until they complete. Not thread safe.
+ *
+ * @param <V> type of the values, which can't be null
+ */
+public final class ByteKeyMap<V> {
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final KeyStore keyStore;
+
+    private int[] hashes;
+    private int[] keyOffsets;
+    private int[] keyLengths;
+    private Object[] values; // null marks free slots
+    private int size;
+    private int resizeThreshold;
+
+    public ByteKeyMap(boolean offHeapKeys) {
+        this.keyStore = offHeapKeys ? new DirectKeyStore() : new HeapKeyStore();
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value of the key of a keyed frame, null if there is none.
+     */
+    public V get(@Nonnull byte[] keyedFrame) {
+        return get(keyedFrame, Utils.KEYED_FRAME_HEADER_SIZE, Utils.getKeyLength(keyedFrame), Utils.getKeyHash(keyedFrame));
+    }
+
+    /**
+     * Maps the key of a keyed frame to the given value, returns the value
+     * it was mapped to before, if any.
+     */
+    public V put(@Nonnull byte[] keyedFrame, @Nonnull V value) {
+        return put(keyedFrame, Utils.KEYED_FRAME_HEADER_SIZE, Utils.getKeyLength(keyedFrame), Utils.getKeyHash(keyedFrame), value);
+    }
+
+    /**
+     * Returns the value of the key in the given range of an array, with the
+     * given hash, null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(@Nonnull byte[] bytes, int offset, int length, int hash) {
+        int slot = findSlot(bytes, offset, length, hash);
+        return (V) values[slot];
+    }
+
+    /**
+     * Maps the key in the given range of an array, with the given hash, to
+     * the given value, returns the value it was mapped to before, if any.
+     * The key bytes are copied.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(@Nonnull byte[] bytes, int offset, int length, int hash, @Nonnull V value) {
+        int slot = findSlot(bytes, offset, length, hash);
+        V previous = (V) values[slot];
+        if (previous == null) {
+            hashes[slot] = hash;
+            keyOffsets[slot] = keyStore.append(bytes, offset, length);
+            keyLengths[slot] = length;
+            if (++size > resizeThreshold) {
+                values[slot] = value;
+                resize();
+                return null;
+            }
+        }
+        values[slot] = value;
+        return previous;
+    }
+
+    /**
+     * Returns the values of the map, in no particular order. The map must
+     * not get new keys while they are iterated.
+     */
+    public Iterable<V> values() {
+        return () -> new Iterator<V>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < values.length && values[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < values.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                V value = (V) values[next];
+                next = advance(next + 1);
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Returns the slot holding the given key, or the free slot it should go
+     * to if it isn't in the map.
+     */
+    private int findSlot(byte[] bytes, int offset, int length, int hash) {
+        int mask = values.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            if (values[slot] == null) {
+                return slot;
+            }
+            if (hashes[slot] == hash
+                    && keyLengths[slot] == length
+                    && keyStore.equals(keyOffsets[slot], bytes, offset, length)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Mixes the bits of a key hash once more, so that the keys of a
+     * processor, which come from a subset of the partitions, don't cluster.
+     */
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        return hash ^ hash >>> 16;
+    }
+
+    private void allocate(int capacity) {
+        hashes = new int[capacity];
+        keyOffsets = new int[capacity];
+        keyLengths = new int[capacity];
+        values = new Object[capacity];
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void resize() {
+        int[] oldHashes = hashes;
+        int[] oldKeyOffsets = keyOffsets;
+        int[] oldKeyLengths = keyLengths;
+        Object[] oldValues = values;
+        allocate(oldValues.length << 1);
+        int mask = values.length - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) {
+                continue;
+            }
+            int slot = spread(oldHashes[i]) & mask;
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = oldHashes[i];
+            keyOffsets[slot] = oldKeyOffsets[i];
+            keyLengths[slot] = oldKeyLengths[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    /**
+     * Append-only storage of the key bytes.
+     */
+    private interface KeyStore {
+
+        /**
+         * Appends the key, returns its offset in the store.
+         */
+        int append(byte[] bytes, int offset, int length);
+
+        boolean equals(int storeOffset, byte[] bytes, int offset, int length);
+    }
+
+    private static final class HeapKeyStore implements KeyStore {
+
+        private byte[] store = new byte[INITIAL_CAPACITY * 16];
+        private int end;
+
+        @Override
+        public int append(byte[] bytes, int offset, int length) {
+            if (end + length > store.length) {
+                store = Arrays.copyOf(store, newCapacity(store.length, end + length));
+            }
+            System.arraycopy(bytes, offset, store, end, length);
+            int keyOffset = end;
+            end += length;
+            return keyOffset;
+        }
+
+        @Override
+        public boolean equals(int storeOffset, byte[] bytes, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                if (store[storeOffset + i] != bytes[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class DirectKeyStore implements KeyStore {
+
+        private ByteBuffer store = ByteBuffer.allocateDirect(INITIAL_CAPACITY * 16);
+
+        @Override
+        public int append(byte[] bytes, int offset, int length) {
+            if (store.remaining() < length) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(newCapacity(store.capacity(), store.position() + length));
+                ((Buffer) store).flip(); // JDK 9+ overrides it covariantly, which JDK 8 lacks
+                grown.put(store);
+                store = grown; // the old one is freed when it gets collected
+            }
+            int keyOffset = store.position();
+            store.put(bytes, offset, length);
+            return keyOffset;
+        }
+
+        @Override
+        public boolean equals(int storeOffset, byte[] bytes, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                if (store.get(storeOffset + i) != bytes[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static int newCapacity(int capacity, int minCapacity) {
+        long newCapacity = Math.max((long) capacity << 1, minCapacity);
+        if (newCapacity > Integer.MAX_VALUE - 8) {
+            if (minCapacity > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Key store full, can't grow beyond 2GB");
+            }
+            newCapacity = Integer.MAX_VALUE - 8;
+        }
+        return (int) newCapacity;
+    }
+}
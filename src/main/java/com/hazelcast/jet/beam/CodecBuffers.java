@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Thread confined, reusable streams for encoding and decoding the items
+ * passed over Jet edges. Jet runs each processor on a single thread at a
+ * time, so a stream per thread can be reused for all the elements the
+ * processors of that thread handle. Encoded items are copied out of the
+ * output stream at their exact size, decoded items are read straight out
+ * of the received array.
+ *
+ * <p>Neither stream is reentrant: a coder must not encode (or decode)
+ * through {@link Utils} while it's itself being used by it.
+ */
+final class CodecBuffers {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Buffers grown above this size for some exceptionally large element
+     * are not kept, so that a single such element doesn't make each thread
+     * retain its memory forever.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    private static final ThreadLocal<OutputBuffer> OUTPUT_BUFFERS = ThreadLocal.withInitial(OutputBuffer::new);
+    private static final ThreadLocal<InputBuffer> INPUT_BUFFERS = ThreadLocal.withInitial(InputBuffer::new);
+    private static final ThreadLocal<byte[]> SCRATCH_ARRAYS = ThreadLocal.withInitial(() -> new byte[INITIAL_CAPACITY]);
+
+    private CodecBuffers() {
+    }
+
+    /**
+     * Returns the emptied output buffer of the current thread.
+     */
+    static OutputBuffer output() {
+        OutputBuffer buffer = OUTPUT_BUFFERS.get();
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = new OutputBuffer();
+            OUTPUT_BUFFERS.set(buffer);
+        }
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Returns the input buffer of the current thread, set to read the given
+     * range of the array.
+     */
+    static InputBuffer input(byte[] bytes, int offset, int length) {
+        InputBuffer buffer = INPUT_BUFFERS.get();
+        buffer.wrap(bytes, offset, length);
+        return buffer;
+    }
+
+    /**
+     * Returns a scratch array of the current thread, at least of the given
+     * length, with undefined content.
+     */
+    static byte[] scratch(int minLength) {
+        byte[] array = SCRATCH_ARRAYS.get();
+        if (array.length < minLength) {
+            array = new byte[minLength];
+            if (minLength <= MAX_RETAINED_CAPACITY) {
+                SCRATCH_ARRAYS.set(array);
+            }
+        }
+        return array;
+    }
+
+    static final class OutputBuffer extends ByteArrayOutputStream {
+
+        OutputBuffer() {
+            super(INITIAL_CAPACITY);
+        }
+
+        OutputBuffer(int initialCapacity) {
+            super(initialCapacity);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        // the methods of ByteArrayOutputStream are synchronized, these are not, the buffer is confined to a thread
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        /**
+         * Reserves the given number of bytes, to be filled in later via
+         * {@link #setInt(int, int)}.
+         */
+        void skip(int length) {
+            ensureCapacity(count + length);
+            count += length;
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        private void ensureCapacity(int minCapacity) {
+            if (minCapacity > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(minCapacity, buf.length << 1));
+            }
+        }
+
+        /**
+         * Writes a long the way Beam's {@code VarInt} does: 7 bits per byte,
+         * least significant first, the high bit set on all but the last.
+         */
+        void writeVarLong(long value) {
+            ensureCapacity(count + 10);
+            while ((value & ~0x7FL) != 0) {
+                buf[count++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            buf[count++] = (byte) value;
+        }
+
+        /**
+         * Writes an int in big-endian order.
+         */
+        void writeInt(int value) {
+            ensureCapacity(count + Integer.BYTES);
+            setInt(count, value);
+            count += Integer.BYTES;
+        }
+
+        /**
+         * Writes a string in UTF-8, preceded by its length in bytes as a
+         * var-int if asked to, which is what Beam's {@code StringUtf8Coder}
+         * does in the nested context. ASCII strings, the common case, are
+         * written without an intermediate byte array.
+         */
+        void writeUtf8(String value, boolean withLength) {
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) >= 0x80) {
+                    byte[] bytes = value.getBytes(UTF_8);
+                    if (withLength) {
+                        writeVarLong(bytes.length);
+                    }
+                    write(bytes, 0, bytes.length);
+                    return;
+                }
+            }
+            if (withLength) {
+                writeVarLong(length);
+            }
+            ensureCapacity(count + length);
+            for (int i = 0; i < length; i++) {
+                buf[count++] = (byte) value.charAt(i);
+            }
+        }
+
+        /**
+         * Overwrites 4 already written bytes at the given position with an
+         * int, in big-endian order.
+         */
+        void setInt(int position, int value) {
+            buf[position] = (byte) (value >>> 24);
+            buf[position + 1] = (byte) (value >>> 16);
+            buf[position + 2] = (byte) (value >>> 8);
+            buf[position + 3] = (byte) value;
+        }
+
+        /**
+         * Appends the bytes written to this buffer to another one.
+         */
+        void copyTo(OutputBuffer other) {
+            other.write(buf, 0, count);
+        }
+
+        /**
+         * Returns the hash of the given range of the written bytes.
+         */
+        int hash(int offset, int length) {
+            return Utils.hash(buf, offset, length);
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+    }
+
+    static final class InputBuffer extends ByteArrayInputStream {
+
+        private static final byte[] EMPTY = new byte[0];
+
+        InputBuffer() {
+            super(EMPTY);
+        }
+
+        // the methods of ByteArrayInputStream are synchronized, these are not, the buffer is confined to a thread
+
+        @Override
+        public int read() {
+            return pos < count ? buf[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (pos >= count) {
+                return -1;
+            }
+            int n = Math.min(len, count - pos);
+            System.arraycopy(buf, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return count - pos;
+        }
+
+        /**
+         * Reads a long written by {@link OutputBuffer#writeVarLong(long)}.
+         */
+        long readVarLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                if (pos >= count) {
+                    throw new EOFException();
+                }
+                byte b = buf[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed var-long");
+        }
+
+        /**
+         * Reads an int written by {@link OutputBuffer#writeInt(int)}.
+         */
+        int readInt() throws IOException {
+            if (count - pos < Integer.BYTES) {
+                throw new EOFException();
+            }
+            int value = (buf[pos] & 0xFF) << 24
+                    | (buf[pos + 1] & 0xFF) << 16
+                    | (buf[pos + 2] & 0xFF) << 8
+                    | buf[pos + 3] & 0xFF;
+            pos += Integer.BYTES;
+            return value;
+        }
+
+        /**
+         * Reads a string of the given length in bytes, or of all the
+         * remaining bytes if the length is negative, straight out of the
+         * underlying array.
+         */
+        String readUtf8(int length) throws IOException {
+            if (length < 0) {
+                length = count - pos;
+            } else if (count - pos < length) {
+                throw new EOFException();
+            }
+            String value = new String(buf, pos, length, UTF_8);
+            pos += length;
+            return value;
+        }
+
+        /**
+         * Reads the given number of bytes, or all the remaining ones if the
+         * number is negative, into a new array.
+         */
+        byte[] readBytes(int length) throws IOException {
+            if (length < 0) {
+                length = count - pos;
+            } else if (count - pos < length) {
+                throw new EOFException();
+            }
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        /**
+         * Returns the position of the next byte to read in the underlying
+         * array.
+         */
+        int position() {
+            return pos;
+        }
+
+        /**
+         * Returns the underlying array.
+         */
+        byte[] array() {
+            return buf;
+        }
+
+        void wrap(byte[] bytes, int offset, int length) {
+            this.buf = bytes;
+            this.pos = offset;
+            this.count = Math.min(offset + length, bytes.length);
+            this.mark = offset;
+        }
+
+        /**
+         * Drops the reference to the last read array, so that it can be
+         * garbage collected while the thread is idle.
+         */
+        void release() {
+            wrap(EMPTY, 0, 0);
+        }
+    }
+}
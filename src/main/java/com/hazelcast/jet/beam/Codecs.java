@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
+import org.apache.beam.sdk.coders.BigEndianLongCoder;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CollectionCoder;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.IterableLikeCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.ListCoder;
+import org.apache.beam.sdk.coders.NullableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Codecs specialised for the Beam coders most items on Jet edges are made
+ * of: strings, var-ints, big-endian numbers, byte arrays, KVs, iterables,
+ * nullables and windowed values. They produce exactly the bytes of the
+ * coders they stand for, but work straight on the {@link CodecBuffers}
+ * instead of going through generic streams, coder contexts and the
+ * stream wrappers Beam's coders create for each call. Any other coder in a
+ * coder tree is used as it is.
+ *
+ * <p>Schema {@code RowCoder}s aren't specialised: Beam already generates
+ * their code for each schema.
+ */
+final class Codecs {
+
+    private static final int CACHE_SIZE_LOG = 6;
+
+    /**
+     * Per thread cache of the codecs of the coders used last, a slot for
+     * each coder, selected by its identity hash: the coder at even indices,
+     * its codec at the following odd one. Processors keep their coders for
+     * the whole job, so lookups mostly hit.
+     */
+    private static final ThreadLocal<Object[]> CACHES = ThreadLocal.withInitial(() -> new Object[2 << CACHE_SIZE_LOG]);
+
+    private Codecs() {
+    }
+
+    /**
+     * Returns the codec of a coder, from the cache of the current thread if
+     * it has been asked for recently.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Codec<T> forCoder(Coder<T> coder) {
+        Object[] cache = CACHES.get();
+        int slot = (System.identityHashCode(coder) & ((1 << CACHE_SIZE_LOG) - 1)) << 1;
+        if (cache[slot] != coder) {
+            cache[slot + 1] = of(coder);
+            cache[slot] = coder;
+        }
+        return (Codec<T>) cache[slot + 1];
+    }
+
+    /**
+     * Builds the codec of a coder, specialising as much of its coder tree as
+     * possible. Coders are matched by their exact class: the Beam coders
+     * aren't final, a subclass may encode differently, so it's left to its
+     * own methods.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static <T> Codec<T> of(Coder<T> coder) {
+        Codec<?> codec;
+        Class<?> coderClass = coder.getClass();
+        if (coderClass == StringUtf8Coder.class) {
+            codec = new StringCodec();
+        } else if (coderClass == VarLongCoder.class) {
+            codec = new VarLongCodec();
+        } else if (coderClass == VarIntCoder.class) {
+            codec = new VarIntCodec();
+        } else if (coderClass == BigEndianLongCoder.class) {
+            codec = new BigEndianLongCodec();
+        } else if (coderClass == BigEndianIntegerCoder.class) {
+            codec = new BigEndianIntegerCodec();
+        } else if (coderClass == ByteArrayCoder.class) {
+            codec = new ByteArrayCodec();
+        } else if (coderClass == KvCoder.class) {
+            KvCoder<?, ?> kvCoder = (KvCoder<?, ?>) coder;
+            codec = new KvCodec<>(of(kvCoder.getKeyCoder()), of(kvCoder.getValueCoder()));
+        } else if (coderClass == IterableCoder.class || coderClass == ListCoder.class || coderClass == CollectionCoder.class) {
+            IterableLikeCoder iterableCoder = (IterableLikeCoder) coder;
+            codec = new IterableCodec<>(of(iterableCoder.getElemCoder()), iterableCoder);
+        } else if (coderClass == NullableCoder.class) {
+            codec = new NullableCodec<>(of(((NullableCoder<?>) coder).getValueCoder()));
+        } else if (coderClass == WindowedValue.FullWindowedValueCoder.class) {
+            WindowedValue.FullWindowedValueCoder<?> fullCoder = (WindowedValue.FullWindowedValueCoder<?>) coder;
+            if (fullCoder.getValueCoder().getClass() == KvCoder.class) {
+                KvCoder<?, ?> kvCoder = (KvCoder<?, ?>) fullCoder.getValueCoder();
+                codec = new KeyedWindowedValueCodec<>(
+                        of(kvCoder.getKeyCoder()), of(kvCoder.getValueCoder()), fullCoder.getWindowCoder());
+            } else {
+                codec = new WindowedValueCodec<>(of(fullCoder.getValueCoder()), fullCoder.getWindowCoder());
+            }
+        } else {
+            codec = new CoderCodec<>(coder);
+        }
+        return (Codec<T>) codec;
+    }
+
+    /**
+     * Encodes and decodes values like a Beam coder does. The outer flag
+     * stands for Beam's {@code Coder.Context.OUTER}: the value takes the
+     * rest of the stream, so no length needs to be written for it.
+     */
+    abstract static class Codec<T> {
+
+        abstract void encode(T value, CodecBuffers.OutputBuffer out, boolean outer) throws IOException;
+
+        abstract T decode(CodecBuffers.InputBuffer in, boolean outer) throws IOException;
+    }
+
+    private static final class StringCodec extends Codec<String> {
+
+        @Override
+        void encode(String value, CodecBuffers.OutputBuffer out, boolean outer) {
+            out.writeUtf8(value, !outer);
+        }
+
+        @Override
+        String decode(CodecBuffers.InputBuffer in, boolean outer) throws IOException {
+            return in.readUtf8(outer ? -1 : readLength(in));
+        }
+    }
+
+    private static final class VarLongCodec extends Codec<Long> {
+
+        @Override
+        void encode(Long value, CodecBuffers.OutputBuffer out, boolean outer) {
+            out.writeVarLong(value);
+        }
+
+        @Override
+        Long decode(CodecBuffers.InputBuffer in, boolean outer) throws IOException {
+            return in.readVarLong();
+        }
+    }
+
+    private static final class VarIntCodec extends Codec<Integer> {
+
+        @Override
+        void encode(Integer value, CodecBuffers.OutputBuffer out, boolean outer) {
+            out.writeVarLong(value & 0xFFFFFFFFL); // as VarInt does, negative ints aren't sign extended
+        }
+
+        @Override
+        Integer decode(CodecBuffers.InputBuffer in, boolean outer) throws IOException {
+            return (int) in.readVarLong();
+        }
+    }
+
+    private static final class BigEndianLongCodec extends Codec<Long> {
+
+        @Override
+        void encode(Long value, CodecBuffers.OutputBuffer out, boolean outer) {
+            out.writeInt((int) (value >>> 32));
+            out.writeInt((int) (long) value);
+        }
+
+        @Override
+        Long decode(CodecBuffers.InputBuffer in, boolean outer) throws IOException {
+            return (long) in.readInt() << 32 | in.readInt() & 0xFFFFFFFFL;
+        }
+    }
+
+    private static final class BigEndianIntegerCodec extends Codec<Integer> {
+
+        @Override
+        void encode(Integer value, CodecBuffers.OutputBuffer out, boolean outer) {
+            out.writeInt(value);
+        }
+
+        @Override
+        Integer decode(CodecBuffers.InputBuffer in, boolean outer) throws IOException {
+            return in.readInt();
+        }
+    }
+
+    private static final class ByteArrayCodec extends Codec<byte[]> {
+
+        @Override
+        void encode(byte[] value, CodecBuffers.OutputBuffer out, boolean outer) {
+            if (!outer) {
+                out.writeVarLong(value.length);
+            }
+            out.write(value, 0, value.length);
+        }
+
+        @Override
+        byte[] decode(CodecBuffers.InputBuffer in, boolean outer) throws IOException {
+            return in.readBytes(outer ? -1 : readLength(in));
+        }
+    }
+
+    private static final class KvCodec<K, V> extends Codec<KV<K, V>> {
+
+        private final Codec<K> keyCodec;
+        private final Codec<V> valueCodec;
+
+        KvCodec(Codec<K> keyCodec, Codec<V> valueCodec) {
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+        }
+
+        @Override
+        void encode(KV<K, V> value, CodecBuffers.OutputBuffer out, boolean outer) throws IOException {
+            keyCodec.encode(value.getKey(), out, false);
+            valueCodec.encode(value.getValue(), out, outer);
+        }
+
+        @Override
+        KV<K, V> decode(CodecBuffers.InputBuffer in, boolean outer) throws IOException {
+            K key = keyCodec.decode(in, false);
+            return KV.of(key, valueCodec.decode(in, outer));
+        }
+    }
+
+    /**
+     * Codec of {@link IterableLikeCoder}s: the element count as a big-endian
+     * int, then the elements. Iterables of unknown size are left to the
+     * coder, which writes them in blocks, each with its own count; both
+     * forms are decoded.
+     */
+    private static final class IterableCodec<T, IterableT extends Iterable<T>> extends Codec<IterableT> {
+
+        private final Codec<T> elementCodec;
+        private final IterableLikeCoder<T, IterableT> coder;
+
+        IterableCodec(Codec<T> elementCodec, IterableLikeCoder<T, IterableT> coder) {
+            this.elementCodec = elementCodec;
+            this.coder = coder;
+        }
+
+        @Override
+        void encode(IterableT value, CodecBuffers.OutputBuffer out, boolean outer) throws IOException {
+            if (!(value instanceof Collection)) {
+                coder.encode(value, out);
+                return;
+            }
+            Collection<T> collection = (Collection<T>) value;
+            out.writeInt(collection.size());
+            for (T element : collection) {
+                elementCodec.encode(element, out, false);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        IterableT decode(CodecBuffers.InputBuffer in, boolean outer) throws IOException {
+            int size = in.readInt();
+            List<T> elements;
+            if (size >= 0) {
+                elements = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    elements.add(elementCodec.decode(in, false));
+                }
+            } else {
+                elements = new ArrayList<>();
+                for (long count; (count = in.readVarLong()) > 0; ) {
+                    for (long i = 0; i < count; i++) {
+                        elements.add(elementCodec.decode(in, false));
+                    }
+                }
+            }
+            return (IterableT) elements; // all the specialised coders decode into lists
+        }
+    }
+
+    private static final class NullableCodec<T> extends Codec<T> {
+
+        private static final int NULL = 0;
+        private static final int NOT_NULL = 1;
+
+        private final Codec<T> valueCodec;
+
+        NullableCodec(Codec<T> valueCodec) {
+            this.valueCodec = valueCodec;
+        }
+
+        @Override
+        void encode(T value, CodecBuffers.OutputBuffer out, boolean outer) throws IOException {
+            if (value == null) {
+                out.write(NULL);
+            } else {
+                out.write(NOT_NULL);
+                valueCodec.encode(value, out, outer);
+            }
+        }
+
+        @Override
+        T decode(CodecBuffers.InputBuffer in, boolean outer) throws IOException {
+            int marker = in.read();
+            if (marker == NULL) {
+                return null;
+            } else if (marker == NOT_NULL) {
+                return valueCodec.decode(in, outer);
+            }
+            throw new IOException("Invalid nullable marker " + marker);
+        }
+    }
+
+    /**
+     * Codec of windowed values in the format of {@link
+     * CompactWindowedValueCoder}, which is what they travel on edges in.
+     */
+    private static class WindowedValueCodec<T> extends Codec<WindowedValue<T>> {
+
+        final Coder<? extends BoundedWindow> windowCoder;
+        private final CompactWindowedValueCoder.ValueWriter<T> outerWriter;
+        private final CompactWindowedValueCoder.ValueWriter<T> nestedWriter;
+        private final CompactWindowedValueCoder.ValueReader<T> outerReader;
+        private final CompactWindowedValueCoder.ValueReader<T> nestedReader;
+
+        WindowedValueCodec(Codec<T> valueCodec, Coder<? extends BoundedWindow> windowCoder) {
+            this.windowCoder = windowCoder;
+            this.outerWriter = (value, out) -> valueCodec.encode(value, (CodecBuffers.OutputBuffer) out, true);
+            this.nestedWriter = (value, out) -> valueCodec.encode(value, (CodecBuffers.OutputBuffer) out, false);
+            this.outerReader = in -> valueCodec.decode((CodecBuffers.InputBuffer) in, true);
+            this.nestedReader = in -> valueCodec.decode((CodecBuffers.InputBuffer) in, false);
+        }
+
+        @Override
+        void encode(WindowedValue<T> value, CodecBuffers.OutputBuffer out, boolean outer) throws IOException {
+            CompactWindowedValueCoder.encode(value, outer ? outerWriter : nestedWriter, windowCoder, out);
+        }
+
+        @Override
+        WindowedValue<T> decode(CodecBuffers.InputBuffer in, boolean outer) throws IOException {
+            return CompactWindowedValueCoder.decode(outer ? outerReader : nestedReader, windowCoder, in);
+        }
+    }
+
+    /**
+     * Codec of windowed KVs, which besides encoding them as a whole, like
+     * {@link WindowedValueCodec}, encodes them as keyed frames (see {@link
+     * Utils#encode(Object, Coder)}): the key on its own, in the header, and
+     * the rest as the payload, which leaves the key out and has the value
+     * in the nested form, so that it can be cut out as it is.
+     */
+    static final class KeyedWindowedValueCodec<K, V> extends WindowedValueCodec<KV<K, V>> {
+
+        private final Codec<K> keyCodec;
+        private final CompactWindowedValueCoder.ValueWriter<KV<K, V>> payloadWriter;
+        private final CompactWindowedValueCoder.ValueReader<KV<K, V>> payloadReader;
+        private final CompactWindowedValueCoder.ValueReader<KV<K, V>> windowingReader;
+
+        private K payloadKey; // key of the payload being decoded, codecs are confined to a thread
+
+        KeyedWindowedValueCodec(Codec<K> keyCodec, Codec<V> valueCodec, Coder<? extends BoundedWindow> windowCoder) {
+            super(new KvCodec<>(keyCodec, valueCodec), windowCoder);
+            this.keyCodec = keyCodec;
+            this.payloadWriter = (kv, out) -> valueCodec.encode(kv.getValue(), (CodecBuffers.OutputBuffer) out, false);
+            this.payloadReader = in -> KV.of(payloadKey, valueCodec.decode((CodecBuffers.InputBuffer) in, false));
+            this.windowingReader = in -> null;
+        }
+
+        void encodeKey(K key, CodecBuffers.OutputBuffer out) throws IOException {
+            keyCodec.encode(key, out, true);
+        }
+
+        void encodePayload(WindowedValue<KV<K, V>> value, CodecBuffers.OutputBuffer out) throws IOException {
+            CompactWindowedValueCoder.encode(value, payloadWriter, windowCoder, out);
+        }
+
+        K decodeKey(CodecBuffers.InputBuffer in) throws IOException {
+            return keyCodec.decode(in, true);
+        }
+
+        WindowedValue<KV<K, V>> decodePayload(K key, CodecBuffers.InputBuffer in) throws IOException {
+            payloadKey = key;
+            try {
+                return CompactWindowedValueCoder.decode(payloadReader, windowCoder, in);
+            } finally {
+                payloadKey = null;
+            }
+        }
+
+        /**
+         * Decodes the timestamp, windows and pane of a payload, leaving the
+         * input positioned at the start of its value, which isn't decoded.
+         */
+        WindowedValue<KV<K, V>> decodeWindowing(CodecBuffers.InputBuffer in) throws IOException {
+            return CompactWindowedValueCoder.decode(windowingReader, windowCoder, in);
+        }
+    }
+
+    /**
+     * Codec of a coder nothing is specialised for, which it delegates to.
+     */
+    private static final class CoderCodec<T> extends Codec<T> {
+
+        private final Coder<T> coder;
+
+        CoderCodec(Coder<T> coder) {
+            this.coder = coder;
+        }
+
+        @Override
+        void encode(T value, CodecBuffers.OutputBuffer out, boolean outer) throws IOException {
+            coder.encode(value, out, outer ? Coder.Context.OUTER : Coder.Context.NESTED);
+        }
+
+        @Override
+        T decode(CodecBuffers.InputBuffer in, boolean outer) throws IOException {
+            return coder.decode(in, outer ? Coder.Context.OUTER : Coder.Context.NESTED);
+        }
+    }
+
+    private static int readLength(CodecBuffers.InputBuffer in) throws IOException {
+        long length = in.readVarLong();
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid length " + length);
+        }
+        return (int) length;
+    }
+}
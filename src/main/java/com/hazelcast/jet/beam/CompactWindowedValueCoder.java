@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import org.apache.beam.sdk.coders.CollectionCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.StructuredCoder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.VarInt;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.joda.time.Instant;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Runner internal coder of {@link WindowedValue}s, used for the items
+ * travelling on Jet edges instead of the {@link
+ * WindowedValue.FullWindowedValueCoder} of their PCollection, which writes
+ * a full timestamp, a window collection and the pane of each element.
+ *
+ * <p>Each element starts with a tag byte telling how its window, pane and
+ * timestamp are encoded, so the common cases take no more bytes:
+ * <ul>
+ *     <li>the global window and the panes {@code NO_FIRING} and
+ *     {@code ON_TIME_AND_ONLY_FIRING} are written as the tag only,
+ *     <li>a single {@link IntervalWindow} is written as two var-longs, its
+ *     end and its length,
+ *     <li>the minimal timestamp, usual in the global window, and the max
+ *     timestamp of the window, usual after grouping, are written as the tag
+ *     only; other timestamps in an interval window as a var-long delta from
+ *     its max timestamp.
+ * </ul>
+ * Anything else falls back to the window collection and pane coders of the
+ * full coder. Decoded interval windows are interned per thread, elements
+ * of the same window share its instance.
+ */
+public final class CompactWindowedValueCoder<T> extends StructuredCoder<WindowedValue<T>> {
+
+    private static final int WINDOW_MASK = 0x03;
+    private static final int WINDOW_GLOBAL = 0x00;
+    private static final int WINDOW_INTERVAL = 0x01;
+    private static final int WINDOW_OTHER = 0x02;
+
+    private static final int PANE_MASK = 0x0C;
+    private static final int PANE_NO_FIRING = 0x00;
+    private static final int PANE_ON_TIME_AND_ONLY_FIRING = 0x04;
+    private static final int PANE_OTHER = 0x08;
+
+    private static final int TIMESTAMP_MASK = 0x30;
+    private static final int TIMESTAMP_MIN = 0x00;
+    private static final int TIMESTAMP_WINDOW_MAX = 0x10;
+    private static final int TIMESTAMP_WINDOW_DELTA = 0x20;
+    private static final int TIMESTAMP_ABSOLUTE = 0x30;
+
+    private static final int INTERNED_WINDOWS_LOG = 10;
+    private static final ThreadLocal<IntervalWindow[]> INTERNED_INTERVAL_WINDOWS =
+            ThreadLocal.withInitial(() -> new IntervalWindow[1 << INTERNED_WINDOWS_LOG]);
+
+    private final Coder<T> valueCoder;
+    private final Coder<? extends BoundedWindow> windowCoder;
+
+    private CompactWindowedValueCoder(Coder<T> valueCoder, Coder<? extends BoundedWindow> windowCoder) {
+        this.valueCoder = valueCoder;
+        this.windowCoder = windowCoder;
+    }
+
+    public static <T> CompactWindowedValueCoder<T> of(WindowedValue.FullWindowedValueCoder<T> fullCoder) {
+        return new CompactWindowedValueCoder<>(fullCoder.getValueCoder(), fullCoder.getWindowCoder());
+    }
+
+    @Override
+    public void encode(WindowedValue<T> value, OutputStream outStream) throws IOException {
+        encode(value, outStream, Context.NESTED);
+    }
+
+    @Override
+    public void encode(WindowedValue<T> value, OutputStream outStream, Context context) throws IOException {
+        encode(value, (v, out) -> valueCoder.encode(v, out, context), windowCoder, outStream);
+    }
+
+    @Override
+    public WindowedValue<T> decode(InputStream inStream) throws IOException {
+        return decode(inStream, Context.NESTED);
+    }
+
+    @Override
+    public WindowedValue<T> decode(InputStream inStream, Context context) throws IOException {
+        return decode(in -> valueCoder.decode(in, context), windowCoder, inStream);
+    }
+
+    @Override
+    public List<? extends Coder<?>> getCoderArguments() {
+        return Arrays.asList(valueCoder, windowCoder);
+    }
+
+    @Override
+    public void verifyDeterministic() throws NonDeterministicException {
+        verifyDeterministic(this, "Value coder must be deterministic", valueCoder);
+        verifyDeterministic(this, "Window coder must be deterministic", windowCoder);
+    }
+
+    /**
+     * Encodes a windowed value the way an instance of this coder would,
+     * without needing one, the value itself with the given writer.
+     */
+    static <T> void encode(
+            WindowedValue<T> value,
+            ValueWriter<T> valueWriter,
+            Coder<? extends BoundedWindow> windowCoder,
+            OutputStream outStream
+    ) throws IOException {
+        Collection<? extends BoundedWindow> windows = value.getWindows();
+        BoundedWindow window = windows.size() == 1 ? windows.iterator().next() : null;
+        PaneInfo pane = value.getPane();
+        Instant timestamp = value.getTimestamp();
+
+        int windowTag;
+        if (GlobalWindow.INSTANCE.equals(window)) {
+            windowTag = WINDOW_GLOBAL;
+        } else if (window instanceof IntervalWindow && windowCoder.equals(IntervalWindow.getCoder())) {
+            windowTag = WINDOW_INTERVAL;
+        } else {
+            windowTag = WINDOW_OTHER;
+        }
+
+        int paneTag;
+        if (PaneInfo.NO_FIRING.equals(pane)) {
+            paneTag = PANE_NO_FIRING;
+        } else if (PaneInfo.ON_TIME_AND_ONLY_FIRING.equals(pane)) {
+            paneTag = PANE_ON_TIME_AND_ONLY_FIRING;
+        } else {
+            paneTag = PANE_OTHER;
+        }
+
+        int timestampTag;
+        long timestampDelta = 0;
+        if (timestamp.equals(BoundedWindow.TIMESTAMP_MIN_VALUE)) {
+            timestampTag = TIMESTAMP_MIN;
+        } else if (windowTag == WINDOW_INTERVAL) {
+            timestampDelta = window.maxTimestamp().getMillis() - timestamp.getMillis();
+            timestampTag = timestampDelta == 0 ? TIMESTAMP_WINDOW_MAX
+                    : timestampDelta > 0 ? TIMESTAMP_WINDOW_DELTA : TIMESTAMP_ABSOLUTE;
+        } else {
+            timestampTag = TIMESTAMP_ABSOLUTE;
+        }
+
+        outStream.write(windowTag | paneTag | timestampTag);
+        if (windowTag == WINDOW_INTERVAL) {
+            IntervalWindow intervalWindow = (IntervalWindow) window;
+            long end = intervalWindow.end().getMillis();
+            VarInt.encode(end, outStream);
+            VarInt.encode(end - intervalWindow.start().getMillis(), outStream);
+        } else if (windowTag == WINDOW_OTHER) {
+            windowsCoder(windowCoder).encode(windows, outStream);
+        }
+        if (paneTag == PANE_OTHER) {
+            PaneInfo.PaneInfoCoder.INSTANCE.encode(pane, outStream);
+        }
+        if (timestampTag == TIMESTAMP_WINDOW_DELTA) {
+            VarInt.encode(timestampDelta, outStream);
+        } else if (timestampTag == TIMESTAMP_ABSOLUTE) {
+            VarInt.encode(timestamp.getMillis(), outStream);
+        }
+        valueWriter.write(value.getValue(), outStream);
+    }
+
+    /**
+     * Decodes a windowed value the way an instance of this coder would,
+     * without needing one, the value itself with the given reader.
+     */
+    static <T> WindowedValue<T> decode(
+            ValueReader<T> valueReader,
+            Coder<? extends BoundedWindow> windowCoder,
+            InputStream inStream
+    ) throws IOException {
+        int tag = inStream.read();
+        if (tag < 0) {
+            throw new IOException("Unexpected end of stream, no windowed value tag");
+        }
+
+        BoundedWindow window = null;
+        Collection<? extends BoundedWindow> windows = null;
+        switch (tag & WINDOW_MASK) {
+            case WINDOW_GLOBAL:
+                window = GlobalWindow.INSTANCE;
+                break;
+            case WINDOW_INTERVAL:
+                long end = VarInt.decodeLong(inStream);
+                window = internIntervalWindow(end - VarInt.decodeLong(inStream), end);
+                break;
+            case WINDOW_OTHER:
+                windows = windowsCoder(windowCoder).decode(inStream);
+                break;
+            default:
+                throw new IOException("Unknown window tag in " + tag);
+        }
+
+        PaneInfo pane;
+        switch (tag & PANE_MASK) {
+            case PANE_NO_FIRING:
+                pane = PaneInfo.NO_FIRING;
+                break;
+            case PANE_ON_TIME_AND_ONLY_FIRING:
+                pane = PaneInfo.ON_TIME_AND_ONLY_FIRING;
+                break;
+            case PANE_OTHER:
+                pane = PaneInfo.PaneInfoCoder.INSTANCE.decode(inStream);
+                break;
+            default:
+                throw new IOException("Unknown pane tag in " + tag);
+        }
+
+        Instant timestamp;
+        switch (tag & TIMESTAMP_MASK) {
+            case TIMESTAMP_MIN:
+                timestamp = BoundedWindow.TIMESTAMP_MIN_VALUE;
+                break;
+            case TIMESTAMP_WINDOW_MAX:
+                timestamp = window.maxTimestamp();
+                break;
+            case TIMESTAMP_WINDOW_DELTA:
+                timestamp = new Instant(window.maxTimestamp().getMillis() - VarInt.decodeLong(inStream));
+                break;
+            default:
+                timestamp = new Instant(VarInt.decodeLong(inStream));
+                break;
+        }
+
+        T value = valueReader.read(inStream);
+        return windows == null ? WindowedValue.of(value, timestamp, window, pane) : WindowedValue.of(value, timestamp, windows, pane);
+    }
+
+    private static Coder<Collection<? extends BoundedWindow>> windowsCoder(Coder<? extends BoundedWindow> windowCoder) {
+        return (Coder) CollectionCoder.of(windowCoder);
+    }
+
+    /**
+     * Returns an interval window with the given bounds, the same instance as
+     * for the last window of these bounds decoded by the current thread, as
+     * long as it hasn't been evicted by one of other bounds since.
+     */
+    private static IntervalWindow internIntervalWindow(long start, long end) {
+        IntervalWindow[] windows = INTERNED_INTERVAL_WINDOWS.get();
+        int slot = (int) ((start * 31 + end) * 0x9E3779B97F4A7C15L >>> (Long.SIZE - INTERNED_WINDOWS_LOG));
+        IntervalWindow window = windows[slot];
+        if (window == null || window.start().getMillis() != start || window.end().getMillis() != end) {
+            window = new IntervalWindow(new Instant(start), new Instant(end));
+            windows[slot] = window;
+        }
+        return window;
+    }
+
+    /**
+     * Writes the value of a windowed value, the last part of its encoding.
+     */
+    @FunctionalInterface
+    interface ValueWriter<T> {
+        void write(T value, OutputStream outStream) throws IOException;
+    }
+
+    /**
+     * Reads the value of a windowed value, the last part of its encoding.
+     */
+    @FunctionalInterface
+    interface ValueReader<T> {
+        T read(InputStream inStream) throws IOException;
+    }
+}
@@ -16,62 +16,158 @@
 
 package com.hazelcast.jet.beam;
 
+import com.hazelcast.jet.beam.processors.BatchingP;
+import com.hazelcast.jet.beam.processors.CompressingP;
+import com.hazelcast.jet.beam.processors.FusedP;
+import com.hazelcast.jet.beam.processors.UnbatchingP;
+import com.hazelcast.jet.beam.processors.UnchunkingP;
+import com.hazelcast.jet.config.EdgeConfig;
 import com.hazelcast.jet.core.DAG;
 import com.hazelcast.jet.core.Edge;
+import com.hazelcast.jet.core.Partitioner;
 import com.hazelcast.jet.core.Processor;
 import com.hazelcast.jet.core.ProcessorMetaSupplier;
 import com.hazelcast.jet.core.Vertex;
-import com.hazelcast.jet.function.FunctionEx;
 import com.hazelcast.jet.function.SupplierEx;
 import org.apache.beam.sdk.coders.Coder;
-import org.apache.beam.sdk.coders.KvCoder;
-import org.apache.beam.sdk.util.CoderUtils;
-import org.apache.beam.sdk.util.WindowedValue;
-import org.apache.beam.sdk.util.WindowedValue.WindowedValueCoder;
-import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollectionView;
 
+import javax.annotation.Nonnull;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.hazelcast.jet.function.Functions.wholeItem;
 
 /** Utility class for wiring up Jet DAGs based on Beam pipelines. */
 public class DAGBuilder {
 
     private final DAG dag = new DAG();
     private final int localParallelism;
-
+    private final Map<Pattern, Integer> transformLocalParallelism;
+    private final List<Pattern> cooperativeTransforms;
+    private final boolean fusionEnabled;
+    private final EdgeSettings defaultEdgeSettings;
+    private final Map<Pattern, EdgeSettings> pCollectionEdgeSettings;
+    private final List<Pattern> compressedCollections;
+    private final int compressionThreshold;
+
+    private final List<Vertex> vertices = new ArrayList<>();
+    private final Map<Vertex, SupplierEx<Processor>> fusableVertices = new HashMap<>();
+    private final Map<Vertex, Coder> keyPreservingVertices = new HashMap<>();
+    private final Set<Vertex> sideEffectFreeVertices = new HashSet<>();
+    private final Set<Vertex> chunkingVertices = new HashSet<>();
+    private final Set<Vertex> localInputVertices = new HashSet<>();
+    private final Set<Vertex> nonCooperativeVertices = new HashSet<>();
     private final Map<String, Vertex> edgeStartPoints = new HashMap<>();
     private final Map<String, List<Vertex>> edgeEndPoints = new HashMap<>();
     private final Map<String, Coder> edgeCoders = new HashMap<>();
     private final Map<String, String> pCollsOfEdges = new HashMap<>();
+    private final Map<String, String> transformsOfVertices = new HashMap<>();
+    private final Map<String, String> collectionNamesOfEdges = new HashMap<>();
+    private final Map<Vertex, SupplierEx<Processor>> processorSuppliers = new HashMap<>();
+    private final Map<Edge, Coder> codersOfDagEdges = new HashMap<>();
+    private final Map<Edge, String> collectionNamesOfDagEdges = new HashMap<>();
+    private final Map<Vertex, Boolean> cooperativenessOfDagVertices = new HashMap<>();
     private final Set<String> sideInputCollections = new HashSet<>();
 
     private final List<WiringListener> listeners = new ArrayList<>();
 
     private int vertexId = 0;
+    private boolean wired;
 
     DAGBuilder(JetPipelineOptions options) {
         this.localParallelism = options.getJetLocalParallelism();
+        this.transformLocalParallelism = parseTransformLocalParallelism(options.getJetTransformLocalParallelism());
+        this.cooperativeTransforms = options.getJetCooperativeTransforms() == null ?
+                Collections.emptyList() :
+                options.getJetCooperativeTransforms().stream().map(Pattern::compile).collect(Collectors.toList());
+        this.fusionEnabled = options.getJetFusionEnabled();
+        this.defaultEdgeSettings = new EdgeSettings(
+                options.getJetEdgeQueueSize(),
+                options.getJetEdgePacketSizeLimit(),
+                options.getJetEdgeReceiveWindowMultiplier(),
+                options.getJetEdgeBatchSize(),
+                options.getJetEdgeBatchDelayMillis()
+        );
+        this.pCollectionEdgeSettings = parsePCollectionEdgeSettings(options.getJetPCollectionEdgeConfig());
+        this.compressedCollections = options.getJetCompressedPCollections() == null ?
+                Collections.emptyList() :
+                options.getJetCompressedPCollections().stream().map(Pattern::compile).collect(Collectors.toList());
+        this.compressionThreshold = options.getJetEdgeCompressionThreshold();
     }
 
     DAG getDag() {
-        wireUp();
+        if (!wired) {
+            wireUp();
+            wired = true;
+        }
         return dag;
     }
 
+    /**
+     * Describes the wired up DAG. Cooperativeness is the one recorded while
+     * translating (see {@link #registerNonCooperativeVertex(Vertex)}), the
+     * size of the elements on edges is only known for fixed-width coders.
+     */
+    ExplainPlan explain() {
+        getDag();
+        ExplainPlan plan = new ExplainPlan();
+        for (Vertex vertex : dag) {
+            plan.addVertex(vertex.getName(), vertex.getLocalParallelism(), cooperativenessOfDagVertices.get(vertex));
+        }
+        for (Vertex vertex : dag) {
+            for (Edge edge : dag.getOutboundEdges(vertex.getName())) {
+                plan.addEdge(
+                        edge.getSourceName(),
+                        edge.getSourceOrdinal(),
+                        edge.getDestName(),
+                        edge.getDestOrdinal(),
+                        collectionNamesOfDagEdges.get(edge),
+                        edge.isDistributed(),
+                        edge.getRoutingPolicy().toString(),
+                        String.valueOf(codersOfDagEdges.get(edge))
+                );
+            }
+        }
+        return plan;
+    }
+
     void registerConstructionListeners(WiringListener listener) {
         listeners.add(listener);
     }
 
     String newVertexId(String transformName) {
-        return vertexId++ + " (" + transformName + ")";
+        return newVertexId(transformName, "");
+    }
+
+    String newVertexId(String transformName, String suffix) {
+        String id = vertexId++ + " (" + transformName + ")" + suffix;
+        transformsOfVertices.put(id, transformName);
+        return id;
+    }
+
+    /**
+     * Returns true if the user has declared the transform to be CPU-only, so
+     * it can be executed by cooperative processors.
+     */
+    boolean isCooperativeTransform(String transformName) {
+        for (Pattern pattern : cooperativeTransforms) {
+            if (pattern.matcher(transformName).matches()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     void registerCollectionOfEdge(String edgeId, String pCollId) {
@@ -81,6 +177,10 @@ public class DAGBuilder {
         }
     }
 
+    void registerCollectionName(String edgeId, String pCollName) {
+        collectionNamesOfEdges.put(edgeId, pCollName);
+    }
+
     void registerEdgeStartPoint(String edgeId, Vertex vertex, Coder coder) {
         Objects.requireNonNull(edgeId);
         Objects.requireNonNull(vertex);
@@ -103,19 +203,182 @@ public class DAGBuilder {
                 .add(vertex);
     }
 
+    /**
+     * Marks a vertex whose processors block, so aren't cooperative. Vertices
+     * fused with it aren't cooperative either.
+     */
+    void registerNonCooperativeVertex(Vertex vertex) {
+        nonCooperativeVertices.add(vertex);
+    }
+
     void registerSideInput(PCollectionView<?> view) {
         sideInputCollections.add(view.getTagInternal().getId());
     }
 
     Vertex addVertex(String id, ProcessorMetaSupplier processorMetaSupplier) {
-        return dag.newVertex(id, processorMetaSupplier);
+        Vertex vertex = new Vertex(id, processorMetaSupplier);
+        Integer transformParallelism = getTransformLocalParallelism(id);
+        if (transformParallelism != null) {
+            vertex.localParallelism(transformParallelism);
+        }
+        vertices.add(vertex);
+        return vertex;
     }
 
     Vertex addVertex(String id, SupplierEx<Processor> processor) {
-        return dag
-                .newVertex(id, processor)
-                .localParallelism(localParallelism)
+        Integer transformParallelism = getTransformLocalParallelism(id);
+        Vertex vertex = new Vertex(id, processor)
+                .localParallelism(transformParallelism == null ? localParallelism : transformParallelism)
                 ;
+        vertices.add(vertex);
+        processorSuppliers.put(vertex, processor);
+        return vertex;
+    }
+
+    private Integer getTransformLocalParallelism(String vertexId) {
+        String transformName = transformsOfVertices.get(vertexId);
+        if (transformName == null) {
+            return null;
+        }
+        for (Map.Entry<Pattern, Integer> entry : transformLocalParallelism.entrySet()) {
+            if (entry.getKey().matcher(transformName).matches()) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Marks a vertex whose input is partitioned by key and whose output
+     * keeps the keys of the input, so that its output is already partitioned
+     * the same way, as long as the keys are encoded by the same coder.
+     */
+    void registerKeyPreservingVertex(Vertex vertex, Coder keyCoder) {
+        keyPreservingVertices.put(vertex, Objects.requireNonNull(keyCoder));
+    }
+
+    /**
+     * Marks a vertex which does nothing apart from producing its output, so
+     * it can be left out of the DAG if nothing consumes its output.
+     */
+    void registerSideEffectFreeVertex(Vertex vertex) {
+        sideEffectFreeVertices.add(vertex);
+    }
+
+    /**
+     * Marks a vertex which may split the grouped elements it outputs into
+     * chunk frames (see {@link KeyedFrameGrouping}), the processors
+     * consuming them have to put them back together.
+     */
+    void registerChunkingVertex(Vertex vertex) {
+        chunkingVertices.add(vertex);
+    }
+
+    /**
+     * Marks a vertex which doesn't need its keyed input to be partitioned,
+     * like the local pre-aggregation of a lifted combine, so its inbound
+     * edges are kept local and unpartitioned and can even be fused.
+     */
+    void registerLocalInputVertex(Vertex vertex) {
+        localInputVertices.add(vertex);
+    }
+
+    private static Map<Pattern, Integer> parseTransformLocalParallelism(List<String> items) {
+        Map<Pattern, Integer> res = new LinkedHashMap<>();
+        if (items == null) {
+            return res;
+        }
+        for (String item : items) {
+            int separatorIndex = item.lastIndexOf('=');
+            if (separatorIndex < 0) {
+                throw new IllegalArgumentException("Transform local parallelism must be specified as <regex>=<parallelism>: " + item);
+            }
+            int parallelism;
+            try {
+                parallelism = Integer.parseInt(item.substring(separatorIndex + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid transform local parallelism: " + item, e);
+            }
+            if (parallelism != -1 && parallelism < 1) {
+                throw new IllegalArgumentException("Transform local parallelism must be >0 or -1: " + item);
+            }
+            res.put(Pattern.compile(item.substring(0, separatorIndex).trim()), parallelism);
+        }
+        return res;
+    }
+
+    /**
+     * Adds a vertex which doesn't depend on how its input is partitioned and
+     * has no other inputs apart from its main one, so it can be fused with
+     * its neighbours into a single vertex.
+     */
+    Vertex addFusableVertex(String id, SupplierEx<Processor> processor) {
+        Vertex vertex = addVertex(id, processor);
+        fusableVertices.put(vertex, processor);
+        return vertex;
+    }
+
+    private static Map<Pattern, EdgeSettings> parsePCollectionEdgeSettings(List<String> items) {
+        Map<Pattern, EdgeSettings> res = new LinkedHashMap<>();
+        if (items == null) {
+            return res;
+        }
+        for (String item : items) {
+            int separatorIndex = item.lastIndexOf('=');
+            if (separatorIndex < 0) {
+                throw new IllegalArgumentException("PCollection edge config must be specified as <regex>=<property>:<value>...: " + item);
+            }
+            Map<String, Integer> properties = new HashMap<>();
+            for (String property : item.substring(separatorIndex + 1).split(";")) {
+                String[] nameAndValue = property.split(":");
+                if (nameAndValue.length != 2) {
+                    throw new IllegalArgumentException("Invalid PCollection edge config property '" + property + "' in: " + item);
+                }
+                try {
+                    properties.put(nameAndValue[0].trim(), Integer.parseInt(nameAndValue[1].trim()));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid PCollection edge config property '" + property + "' in: " + item, e);
+                }
+            }
+            EdgeSettings settings = new EdgeSettings(
+                    properties.remove("queueSize"),
+                    properties.remove("packetSizeLimit"),
+                    properties.remove("receiveWindowMultiplier"),
+                    properties.remove("batchSize"),
+                    properties.remove("batchDelayMillis")
+            );
+            if (!properties.isEmpty()) {
+                throw new IllegalArgumentException("Unknown PCollection edge config properties " + properties.keySet() + " in: " + item);
+            }
+            res.put(Pattern.compile(item.substring(0, separatorIndex).trim()), settings);
+        }
+        return res;
+    }
+
+    private EdgeConfig getEdgeConfig(String edgeId) {
+        return getEdgeSettings(edgeId).toEdgeConfig();
+    }
+
+    /**
+     * Returns the batching settings of an edge, null if its items shouldn't
+     * be packed into multi-element frames.
+     */
+    private BatchingP.Settings getBatchingSettings(String edgeId) {
+        return getEdgeSettings(edgeId).toBatchingSettings();
+    }
+
+    private EdgeSettings getEdgeSettings(String edgeId) {
+        EdgeSettings settings = defaultEdgeSettings;
+        String pCollName = collectionNamesOfEdges.get(edgeId);
+        if (pCollName != null) {
+            for (Map.Entry<Pattern, EdgeSettings> entry : pCollectionEdgeSettings.entrySet()) {
+                if (entry.getKey().matcher(pCollName).matches()) {
+                    settings = entry.getValue().withDefaults(defaultEdgeSettings);
+                    break;
+                }
+            }
+        }
+        return settings;
     }
 
     private void wireUp() {
@@ -133,18 +396,80 @@ public class DAGBuilder {
         void isInboundEdgeOfVertex(Edge edge, String edgeId, String pCollId, String vertexId);
     }
 
-    private static class PartitionedKeyExtractor<K, V> implements FunctionEx<byte[], Object> {
-        private final WindowedValue.WindowedValueCoder<KV<K, V>> coder;
+    /**
+     * Edge configuration properties set via the pipeline options, null
+     * meaning that Jet's default is to be used.
+     */
+    private static class EdgeSettings {
+        private static final int DEFAULT_BATCH_DELAY_MILLIS = 10;
+
+        private final Integer queueSize;
+        private final Integer packetSizeLimit;
+        private final Integer receiveWindowMultiplier;
+        private final Integer batchSize;
+        private final Integer batchDelayMillis;
+
+        EdgeSettings(
+                Integer queueSize,
+                Integer packetSizeLimit,
+                Integer receiveWindowMultiplier,
+                Integer batchSize,
+                Integer batchDelayMillis
+        ) {
+            this.queueSize = queueSize;
+            this.packetSizeLimit = packetSizeLimit;
+            this.receiveWindowMultiplier = receiveWindowMultiplier;
+            this.batchSize = batchSize;
+            this.batchDelayMillis = batchDelayMillis;
+        }
 
-        PartitionedKeyExtractor(Coder coder) {
-            this.coder = (WindowedValue.WindowedValueCoder<KV<K, V>>) coder;
+        EdgeSettings withDefaults(EdgeSettings defaults) {
+            return new EdgeSettings(
+                    queueSize == null ? defaults.queueSize : queueSize,
+                    packetSizeLimit == null ? defaults.packetSizeLimit : packetSizeLimit,
+                    receiveWindowMultiplier == null ? defaults.receiveWindowMultiplier : receiveWindowMultiplier,
+                    batchSize == null ? defaults.batchSize : batchSize,
+                    batchDelayMillis == null ? defaults.batchDelayMillis : batchDelayMillis
+            );
         }
 
+        BatchingP.Settings toBatchingSettings() {
+            if (batchSize == null || batchSize <= 1) {
+                return null;
+            }
+            return new BatchingP.Settings(batchSize, batchDelayMillis == null ? DEFAULT_BATCH_DELAY_MILLIS : batchDelayMillis);
+        }
+
+        /** Returns null if nothing is set, so the edge uses the config of the Jet instance. */
+        EdgeConfig toEdgeConfig() {
+            if (queueSize == null && packetSizeLimit == null && receiveWindowMultiplier == null) {
+                return null;
+            }
+            EdgeConfig config = new EdgeConfig();
+            if (queueSize != null) {
+                config.setQueueSize(queueSize);
+            }
+            if (packetSizeLimit != null) {
+                config.setPacketSizeLimit(packetSizeLimit);
+            }
+            if (receiveWindowMultiplier != null) {
+                config.setReceiveWindowMultiplier(receiveWindowMultiplier);
+            }
+            return config;
+        }
+    }
+
+    /**
+     * Partitions keyed frames (see {@link Utils#encode(Object, Coder)}) by the
+     * key hash in their header, without decoding anything.
+     */
+    private static class KeyHashPartitioner implements Partitioner<byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
         @Override
-        public Object applyEx(byte[] b) throws Exception {
-            WindowedValue<KV<K, V>> windowedValue = CoderUtils.decodeFromByteArray(coder, b); //todo: decoding twice....
-            KvCoder<K, V> kvCoder = (KvCoder<K, V>) coder.getValueCoder();
-            return CoderUtils.encodeToByteArray(kvCoder.getKeyCoder(), windowedValue.getValue().getKey());
+        public int getPartition(@Nonnull byte[] item, int partitionCount) {
+            return Utils.getPartition(item, partitionCount);
         }
     }
 
@@ -152,12 +477,34 @@ public class DAGBuilder {
 
         private final Map<Vertex, Integer> inboundOrdinals = new HashMap<>();
         private final Map<Vertex, Integer> outboundOrdinals = new HashMap<>();
+        private final Map<Vertex, Vertex> fusedVertices = new HashMap<>(); // from chain member to vertex in DAG
+        private final Map<Vertex, Vertex> dagVertices = new LinkedHashMap<>(); // from translated vertex to vertex in DAG
+        private final Map<Vertex, Set<Integer>> compressedOrdinals = new HashMap<>(); // of vertices in DAG
+        private final Map<Vertex, Map<Integer, BatchingP.Settings>> batchedOutboundOrdinals = new HashMap<>(); // of vertices in DAG
+        private final Map<Vertex, Set<Integer>> batchedInboundOrdinals = new HashMap<>(); // of vertices in DAG
+        private final Map<Vertex, Map<Integer, Coder>> chunkedInboundOrdinals = new HashMap<>(); // of vertices in DAG
+        private final Set<String> fusedEdgeIds = new HashSet<>();
 
         void wireUp() {
+            pruneUnconsumedVertices();
+
             Collection<String> edgeIds = new HashSet<>();
             edgeIds.addAll(edgeStartPoints.keySet());
             edgeIds.addAll(edgeEndPoints.keySet());
 
+            if (fusionEnabled) {
+                fuse(edgeIds);
+            }
+            for (Vertex vertex : vertices) {
+                dagVertices.put(vertex, fusedVertices.getOrDefault(vertex, vertex));
+            }
+            wrapVertices(edgeIds);
+            dagVertices.forEach((translated, inDag) ->
+                    cooperativenessOfDagVertices.merge(inDag, !nonCooperativeVertices.contains(translated), Boolean::logicalAnd));
+            for (Vertex vertex : new LinkedHashSet<>(dagVertices.values())) {
+                dag.vertex(vertex);
+            }
+
             for (String edgeId : edgeIds) {
                 String pCollId = pCollsOfEdges.get(edgeId);
                 if (pCollId == null) {
@@ -182,31 +529,287 @@ public class DAGBuilder {
             }
         }
 
+        /**
+         * Removes side-effect free vertices with no consumers, together with
+         * their inbound edges. Doing so can leave their producers without
+         * consumers too, so it's repeated until nothing changes.
+         */
+        private void pruneUnconsumedVertices() {
+            boolean pruned = true;
+            while (pruned) {
+                pruned = false;
+                for (Vertex vertex : new ArrayList<>(vertices)) {
+                    if (sideEffectFreeVertices.contains(vertex) && !hasConsumers(vertex)) {
+                        vertices.remove(vertex);
+                        edgeStartPoints.entrySet().removeIf(e -> {
+                            boolean outboundEdge = e.getValue().equals(vertex);
+                            if (outboundEdge) {
+                                edgeEndPoints.remove(e.getKey());
+                            }
+                            return outboundEdge;
+                        });
+                        for (List<Vertex> destinationVertices : edgeEndPoints.values()) {
+                            destinationVertices.removeIf(vertex::equals);
+                        }
+                        pruned = true;
+                    }
+                }
+            }
+        }
+
+        private boolean hasConsumers(Vertex vertex) {
+            for (Map.Entry<String, Vertex> entry : edgeStartPoints.entrySet()) {
+                if (entry.getValue().equals(vertex) && !edgeEndPoints.getOrDefault(entry.getKey(), Collections.emptyList()).isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void fuse(Collection<String> edgeIds) {
+            Map<Vertex, Integer> outboundEdgeCounts = new HashMap<>();
+            Map<Vertex, Integer> inboundEdgeCounts = new HashMap<>();
+            for (String edgeId : edgeIds) {
+                Vertex sourceVertex = edgeStartPoints.get(edgeId);
+                for (Vertex destinationVertex : edgeEndPoints.getOrDefault(edgeId, Collections.emptyList())) {
+                    outboundEdgeCounts.merge(sourceVertex, 1, Integer::sum);
+                    inboundEdgeCounts.merge(destinationVertex, 1, Integer::sum);
+                }
+            }
+
+            Map<Vertex, Vertex> successors = new HashMap<>();
+            Set<Vertex> fusedSuccessors = new HashSet<>();
+            for (String edgeId : edgeIds) {
+                Vertex sourceVertex = edgeStartPoints.get(edgeId);
+                List<Vertex> destinationVertices = edgeEndPoints.getOrDefault(edgeId, Collections.emptyList());
+                if (destinationVertices.size() != 1) {
+                    continue;
+                }
+                Vertex destinationVertex = destinationVertices.get(0);
+                boolean fusable = sourceVertex != destinationVertex
+                        && fusableVertices.containsKey(sourceVertex)
+                        && fusableVertices.containsKey(destinationVertex)
+                        && outboundEdgeCounts.get(sourceVertex) == 1
+                        && inboundEdgeCounts.get(destinationVertex) == 1
+                        && sourceVertex.getLocalParallelism() == destinationVertex.getLocalParallelism()
+                        && (!Utils.isKeyedValueCoder(edgeCoders.get(edgeId)) || localInputVertices.contains(destinationVertex))
+                        && !sideInputCollections.contains(pCollsOfEdges.get(edgeId));
+                if (fusable) {
+                    successors.put(sourceVertex, destinationVertex);
+                    fusedSuccessors.add(destinationVertex);
+                    fusedEdgeIds.add(edgeId);
+                }
+            }
+
+            for (Vertex head : vertices) {
+                if (!successors.containsKey(head) || fusedSuccessors.contains(head)) {
+                    continue; // not the head of a chain
+                }
+                List<String> names = new ArrayList<>();
+                List<SupplierEx<Processor>> suppliers = new ArrayList<>();
+                List<Vertex> chain = new ArrayList<>();
+                for (Vertex member = head; member != null; member = successors.get(member)) {
+                    chain.add(member);
+                    names.add(member.getName());
+                    suppliers.add(fusableVertices.get(member));
+                }
+                SupplierEx<Processor> fusedSupplier = FusedP.supplier(suppliers);
+                Vertex fusedVertex = new Vertex(String.join(" + ", names), fusedSupplier)
+                        .localParallelism(head.getLocalParallelism());
+                processorSuppliers.put(fusedVertex, fusedSupplier);
+                for (Vertex member : chain) {
+                    fusedVertices.put(member, fusedVertex);
+                }
+            }
+        }
+
+        /**
+         * Replaces the vertices at the ends of distributed edges whose items
+         * get compressed or packed into multi-element frames with ones whose
+         * processors do that: the producers compress and pack the items, the
+         * consumers of packed items unpack them. Vertices with
+         * meta-suppliers (sources) are left as they are, so their edges are
+         * neither compressed nor packed. Consumers of chunking vertices get
+         * wrapped too, to put the chunked elements back together.
+         */
+        private void wrapVertices(Collection<String> edgeIds) {
+            Set<Vertex> compressing = new LinkedHashSet<>();
+            Set<Vertex> batching = new LinkedHashSet<>();
+            Set<Vertex> unbatching = new LinkedHashSet<>();
+            Set<Vertex> unchunking = new LinkedHashSet<>();
+            for (String edgeId : edgeIds) {
+                Vertex sourceVertex = edgeStartPoints.get(edgeId);
+                for (Vertex destinationVertex : edgeEndPoints.getOrDefault(edgeId, Collections.emptyList())) {
+                    if (isCompressedEdge(edgeId, sourceVertex, destinationVertex)) {
+                        compressing.add(dagVertices.get(sourceVertex));
+                    }
+                    if (isBatchedEdge(edgeId, sourceVertex, destinationVertex)) {
+                        batching.add(dagVertices.get(sourceVertex));
+                        unbatching.add(dagVertices.get(destinationVertex));
+                    }
+                    if (isChunkedEdge(edgeId, sourceVertex)) {
+                        unchunking.add(dagVertices.get(destinationVertex));
+                    }
+                }
+            }
+
+            Set<Vertex> wrapped = new LinkedHashSet<>();
+            wrapped.addAll(compressing);
+            wrapped.addAll(batching);
+            wrapped.addAll(unbatching);
+            wrapped.addAll(unchunking);
+            for (Vertex dagVertex : wrapped) {
+                SupplierEx<Processor> supplier = processorSuppliers.get(dagVertex);
+                if (unchunking.contains(dagVertex)) {
+                    Map<Integer, Coder> ordinals = new HashMap<>(); // filled in when adding the edges
+                    supplier = UnchunkingP.supplier(supplier, ordinals);
+                    chunkedInboundOrdinals.put(dagVertex, ordinals);
+                }
+                if (unbatching.contains(dagVertex)) {
+                    Set<Integer> ordinals = new HashSet<>(); // filled in when adding the edges
+                    supplier = UnbatchingP.supplier(supplier, ordinals);
+                    batchedInboundOrdinals.put(dagVertex, ordinals);
+                }
+                if (compressing.contains(dagVertex)) {
+                    Set<Integer> ordinals = new HashSet<>(); // filled in when adding the edges
+                    supplier = CompressingP.supplier(supplier, ordinals, compressionThreshold);
+                    compressedOrdinals.put(dagVertex, ordinals);
+                }
+                if (batching.contains(dagVertex)) {
+                    Map<Integer, BatchingP.Settings> ordinals = new HashMap<>(); // filled in when adding the edges
+                    supplier = BatchingP.supplier(supplier, ordinals);
+                    batchedOutboundOrdinals.put(dagVertex, ordinals);
+                }
+                Vertex wrappingVertex = new Vertex(dagVertex.getName(), supplier)
+                        .localParallelism(dagVertex.getLocalParallelism());
+                dagVertices.replaceAll((translated, inDag) -> inDag == dagVertex ? wrappingVertex : inDag);
+                processorSuppliers.put(wrappingVertex, supplier);
+                rekey(compressedOrdinals, dagVertex, wrappingVertex);
+                rekey(batchedOutboundOrdinals, dagVertex, wrappingVertex);
+                rekey(batchedInboundOrdinals, dagVertex, wrappingVertex);
+                rekey(chunkedInboundOrdinals, dagVertex, wrappingVertex);
+            }
+        }
+
+        private <T> void rekey(Map<Vertex, T> map, Vertex oldKey, Vertex newKey) {
+            T value = map.remove(oldKey);
+            if (value != null) {
+                map.put(newKey, value);
+            }
+        }
+
+        /**
+         * Tells if an edge is distributed. Only keyed edges can be, and they
+         * are, unless their items are on the right member already or their
+         * consumer pre-aggregates them locally.
+         */
+        private boolean isDistributedEdge(String edgeId, Vertex sourceVertex, Vertex destinationVertex) {
+            if (fusedEdgeIds.contains(edgeId)) {
+                return false;
+            }
+            Coder coder = edgeCoders.get(edgeId);
+            if (!Utils.isKeyedValueCoder(coder)) {
+                return false;
+            }
+            if (sideInputCollections.contains(pCollsOfEdges.get(edgeId))) {
+                return true;
+            }
+            return !localInputVertices.contains(destinationVertex) && !isPartitionedByProducer(sourceVertex, coder);
+        }
+
+        private boolean isBatchedEdge(String edgeId, Vertex sourceVertex, Vertex destinationVertex) {
+            return getBatchingSettings(edgeId) != null
+                    && isDistributedEdge(edgeId, sourceVertex, destinationVertex)
+                    && !sideInputCollections.contains(pCollsOfEdges.get(edgeId))
+                    && processorSuppliers.containsKey(dagVertices.get(sourceVertex))
+                    && processorSuppliers.containsKey(dagVertices.get(destinationVertex));
+        }
+
+        /**
+         * Edges out of chunking vertices are never fused, they carry keyed
+         * values, and their consumers always have processor suppliers, only
+         * sources don't.
+         */
+        private boolean isChunkedEdge(String edgeId, Vertex sourceVertex) {
+            return chunkingVertices.contains(sourceVertex) && !fusedEdgeIds.contains(edgeId);
+        }
+
+        private boolean isCompressedEdge(String edgeId, Vertex sourceVertex, Vertex destinationVertex) {
+            if (compressedCollections.isEmpty()
+                    || !isDistributedEdge(edgeId, sourceVertex, destinationVertex)
+                    || !processorSuppliers.containsKey(dagVertices.get(sourceVertex))) {
+                return false;
+            }
+            String name = collectionNamesOfEdges.getOrDefault(edgeId, pCollsOfEdges.get(edgeId));
+            return compressedCollections.stream().anyMatch(pattern -> pattern.matcher(name).matches());
+        }
+
         private void addEdge(Vertex sourceVertex, Vertex destinationVertex, Coder coder, String edgeId, String pCollId, boolean sideInputEdge) {
             try {
+                if (fusedEdgeIds.contains(edgeId)) {
+                    // edge internal to a fused vertex, only the processors at its two ends need to know about it
+                    notifyListeners(Edge.from(sourceVertex).to(destinationVertex), edgeId, pCollId, sourceVertex, destinationVertex);
+                    return;
+                }
+
                 boolean carriesKeyedValues = Utils.isKeyedValueCoder(coder);
+                Vertex dagSourceVertex = dagVertices.get(sourceVertex);
+                Vertex dagDestinationVertex = dagVertices.get(destinationVertex);
+                int sourceOrdinal = getNextFreeOrdinal(dagSourceVertex, false);
                 Edge edge = Edge
-                        .from(sourceVertex, getNextFreeOrdinal(sourceVertex, false))
-                        .to(destinationVertex, getNextFreeOrdinal(destinationVertex, true));
-                edge = carriesKeyedValues ? edge.distributed() : edge;
+                        .from(dagSourceVertex, sourceOrdinal)
+                        .to(dagDestinationVertex, getNextFreeOrdinal(dagDestinationVertex, true));
+                int destinationOrdinal = edge.getDestOrdinal();
+                if (isCompressedEdge(edgeId, sourceVertex, destinationVertex)) {
+                    compressedOrdinals.get(dagSourceVertex).add(sourceOrdinal);
+                }
+                if (isBatchedEdge(edgeId, sourceVertex, destinationVertex)) {
+                    batchedOutboundOrdinals.get(dagSourceVertex).put(sourceOrdinal, getBatchingSettings(edgeId));
+                    batchedInboundOrdinals.get(dagDestinationVertex).add(destinationOrdinal);
+                }
+                if (isChunkedEdge(edgeId, sourceVertex)) {
+                    chunkedInboundOrdinals.get(dagDestinationVertex).put(destinationOrdinal, coder);
+                }
+                // only keyed edges may be distributed, items of all others aren't encoded (see Utils.isEncodedOnEdges)
+                edge = isDistributedEdge(edgeId, sourceVertex, destinationVertex) ? edge.distributed() : edge;
                 if (sideInputEdge) {
                     edge = edge.broadcast();
-                } else {
-                    edge = carriesKeyedValues ? edge.partitioned(new PartitionedKeyExtractor(coder)) : edge;
+                } else if (carriesKeyedValues && !localInputVertices.contains(destinationVertex)) {
+                    edge = edge.partitioned(wholeItem(), new KeyHashPartitioner());
+                }
+                EdgeConfig edgeConfig = getEdgeConfig(edgeId);
+                if (edgeConfig != null) {
+                    edge.setConfig(edgeConfig);
                 }
                 dag.edge(edge);
+                codersOfDagEdges.put(edge, coder);
+                collectionNamesOfDagEdges.put(edge, collectionNamesOfEdges.getOrDefault(edgeId, pCollId));
 
-                String sourceVertexName = sourceVertex.getName();
-                String destinationVertexName = destinationVertex.getName();
-                for (WiringListener listener : listeners) {
-                    listener.isInboundEdgeOfVertex(edge, edgeId, pCollId, destinationVertexName);
-                    listener.isOutboundEdgeOfVertex(edge, edgeId, pCollId, sourceVertexName);
-                }
+                notifyListeners(edge, edgeId, pCollId, sourceVertex, destinationVertex);
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
         }
 
+        /**
+         * Items produced by a key preserving vertex are on the cluster member
+         * owning their key's partition already, a local partitioned edge is
+         * enough to get them to the right processor.
+         */
+        private boolean isPartitionedByProducer(Vertex sourceVertex, Coder coder) {
+            Coder inputKeyCoder = keyPreservingVertices.get(sourceVertex);
+            return inputKeyCoder != null && inputKeyCoder.equals(Utils.getKeyCoder(coder));
+        }
+
+        private void notifyListeners(Edge edge, String edgeId, String pCollId, Vertex sourceVertex, Vertex destinationVertex) {
+            String sourceVertexName = sourceVertex.getName();
+            String destinationVertexName = destinationVertex.getName();
+            for (WiringListener listener : listeners) {
+                listener.isInboundEdgeOfVertex(edge, edgeId, pCollId, destinationVertexName);
+                listener.isOutboundEdgeOfVertex(edge, edgeId, pCollId, sourceVertexName);
+            }
+        }
+
         private int getNextFreeOrdinal(Vertex vertex, boolean inbound) {
             Map<Vertex, Integer> ordinals = inbound ? inboundOrdinals : outboundOrdinals;
             int nextOrdinal = 1 + ordinals.getOrDefault(vertex, -1);
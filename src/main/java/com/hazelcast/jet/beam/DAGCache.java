@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.jet.core.DAG;
+import org.apache.beam.runners.core.construction.PTransformTranslation;
+import org.apache.beam.runners.core.construction.SdkComponents;
+import org.apache.beam.runners.core.construction.WindowingStrategyTranslation;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.io.Read;
+import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.runners.TransformHierarchy;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.View;
+import org.apache.beam.sdk.util.SerializableUtils;
+import org.apache.beam.sdk.util.common.ReflectHelpers;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PValue;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * In-JVM cache of translated Jet DAGs, keyed by a fingerprint of the Beam
+ * pipeline and of the pipeline options the DAG was translated with. The
+ * fingerprint covers what a walk of the pipeline finds: the names of its
+ * transforms and their URNs (or classes), the serialized DoFns, CombineFns,
+ * sources (which hold the elements of Creates) and view functions they run,
+ * and the names, coders and windowing strategies of their PCollections.
+ * Pipelines with primitive transforms carrying any other user state, like
+ * TestStream, aren't cached.
+ */
+class DAGCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DAGCache.class);
+
+    private static final int MAX_SIZE = 64;
+
+    /** Primitive transforms which carry no user state beyond their output's windowing strategy. */
+    private static final List<String> STATELESS_PRIMITIVE_URNS = Arrays.asList(
+            PTransformTranslation.GROUP_BY_KEY_TRANSFORM_URN,
+            PTransformTranslation.FLATTEN_TRANSFORM_URN,
+            PTransformTranslation.ASSIGN_WINDOWS_TRANSFORM_URN,
+            PTransformTranslation.IMPULSE_TRANSFORM_URN
+    );
+
+    /** Options that differ between otherwise identical submissions. */
+    private static final List<String> VOLATILE_OPTIONS = Arrays.asList("optionsId", "jobName");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModules(ObjectMapper.findModules(ReflectHelpers.findClassLoader()));
+
+    private static final Map<String, Translation> TRANSLATIONS = new LinkedHashMap<String, Translation>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Translation> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    private DAGCache() {
+    }
+
+    /**
+     * Returns the cached translation of the pipeline, translating it with
+     * the given translator if there is none yet. The fingerprint has to be
+     * taken before the translator modifies the pipeline.
+     */
+    static Translation get(Pipeline pipeline, PipelineOptions options, Supplier<Translation> translator) {
+        String fingerprint = fingerprint(pipeline, options);
+        if (fingerprint == null) {
+            return translator.get();
+        }
+        synchronized (TRANSLATIONS) {
+            Translation translation = TRANSLATIONS.get(fingerprint);
+            if (translation != null) {
+                LOG.debug("Reusing translated DAG for pipeline " + fingerprint);
+                return translation;
+            }
+        }
+        Translation translation = translator.get();
+        synchronized (TRANSLATIONS) {
+            TRANSLATIONS.put(fingerprint, translation);
+        }
+        return translation;
+    }
+
+    static String fingerprint(Pipeline pipeline, PipelineOptions options) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            FingerprintingVisitor visitor = new FingerprintingVisitor(digest, options);
+            pipeline.traverseTopologically(visitor);
+            if (visitor.unknownState != null) {
+                LOG.debug("Pipeline won't be cached, its transform " + visitor.unknownState + " has state which can't be fingerprinted");
+                return null;
+            }
+
+            digest.update(MAPPER.writeValueAsString(optionValues(options)).getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            LOG.warn("Failed fingerprinting pipeline, it won't be cached", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the values of the options, sorted by name. Options only get
+     * serialized once they've been set or read, so the defaults of the Jet
+     * options are read first, otherwise the options would serialize
+     * differently after a translation.
+     */
+    private static Map<String, JsonNode> optionValues(PipelineOptions options) throws ReflectiveOperationException {
+        JetPipelineOptions jetOptions = options.as(JetPipelineOptions.class);
+        for (Method method : JetPipelineOptions.class.getDeclaredMethods()) {
+            if (method.getName().startsWith("get") && method.getParameterCount() == 0) {
+                method.invoke(jetOptions);
+            }
+        }
+        Map<String, JsonNode> values = new TreeMap<>();
+        JsonNode optionsJson = MAPPER.valueToTree(options).get("options");
+        for (Iterator<Map.Entry<String, JsonNode>> it = optionsJson.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = it.next();
+            if (!field.getValue().isNull() && !VOLATILE_OPTIONS.contains(field.getKey())) {
+                values.put(field.getKey(), field.getValue());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * A translated DAG, with its explain plan if one was asked for.
+     */
+    static final class Translation {
+
+        private final DAG dag;
+        private final ExplainPlan explainPlan;
+
+        Translation(DAG dag, ExplainPlan explainPlan) {
+            this.dag = dag;
+            this.explainPlan = explainPlan;
+        }
+
+        DAG getDag() {
+            return dag;
+        }
+
+        ExplainPlan getExplainPlan() {
+            return explainPlan;
+        }
+    }
+
+    private static class FingerprintingVisitor extends Pipeline.PipelineVisitor.Defaults {
+
+        private final MessageDigest digest;
+        private final SdkComponents components;
+        private final Map<WindowingStrategy<?, ?>, byte[]> windowingStrategies = new IdentityHashMap<>();
+
+        private String unknownState; // name of the first primitive transform with state not covered, if any
+
+        FingerprintingVisitor(MessageDigest digest, PipelineOptions options) {
+            this.digest = digest;
+            this.components = SdkComponents.create(options);
+        }
+
+        @Override
+        public CompositeBehavior enterCompositeTransform(TransformHierarchy.Node node) {
+            if (!node.isRootNode()) {
+                update("composite", node);
+            }
+            return CompositeBehavior.ENTER_TRANSFORM;
+        }
+
+        @Override
+        public void visitPrimitiveTransform(TransformHierarchy.Node node) {
+            update("primitive", node);
+            PTransform<?, ?> transform = node.getTransform();
+            if (unknownState == null
+                    && userCode(transform) == null
+                    && !STATELESS_PRIMITIVE_URNS.contains(PTransformTranslation.urnForTransformOrNull(transform))) {
+                unknownState = node.getFullName();
+            }
+        }
+
+        @Override
+        public void visitValue(PValue value, TransformHierarchy.Node producer) {
+            update("value", value.getName());
+            if (value instanceof PCollection) {
+                PCollection<?> pCollection = (PCollection<?>) value;
+                update(coderStructure(pCollection.getCoder()));
+                digest.update(windowingStrategy(pCollection.getWindowingStrategy()));
+            }
+        }
+
+        private void update(String kind, TransformHierarchy.Node node) {
+            PTransform<?, ?> transform = node.getTransform();
+            String urn = PTransformTranslation.urnForTransformOrNull(transform);
+            update(kind, node.getFullName(), urn == null ? transform.getClass().getName() : urn);
+            Serializable userCode = userCode(transform);
+            if (userCode != null) {
+                digest.update(SerializableUtils.serializeToByteArray(userCode));
+            }
+            for (PValue input : node.getInputs().values()) {
+                update("input", input.getName());
+            }
+        }
+
+        private void update(String... strings) {
+            for (String string : strings) {
+                digest.update(String.valueOf(string).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+        }
+
+        private byte[] windowingStrategy(WindowingStrategy<?, ?> windowingStrategy) {
+            return windowingStrategies.computeIfAbsent(windowingStrategy, w -> {
+                try {
+                    return WindowingStrategyTranslation.toProto(w, components).toByteArray();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        private static Serializable userCode(PTransform<?, ?> transform) {
+            Serializable userCode = null;
+            if (transform instanceof ParDo.SingleOutput) {
+                userCode = ((ParDo.SingleOutput<?, ?>) transform).getFn();
+            } else if (transform instanceof ParDo.MultiOutput) {
+                userCode = ((ParDo.MultiOutput<?, ?>) transform).getFn();
+            } else if (transform instanceof Combine.PerKey) {
+                userCode = ((Combine.PerKey<?, ?, ?>) transform).getFn();
+            } else if (transform instanceof Combine.Globally) {
+                userCode = ((Combine.Globally<?, ?>) transform).getFn();
+            } else if (transform instanceof Combine.GroupedValues) {
+                userCode = ((Combine.GroupedValues<?, ?, ?>) transform).getFn();
+            } else if (transform instanceof Read.Bounded) {
+                userCode = ((Read.Bounded<?>) transform).getSource();
+            } else if (transform instanceof Read.Unbounded) {
+                userCode = ((Read.Unbounded<?>) transform).getSource();
+            } else if (transform instanceof View.CreatePCollectionView) {
+                userCode = ((View.CreatePCollectionView<?, ?>) transform).getView().getViewFn();
+            }
+            return userCode;
+        }
+
+        private static String coderStructure(Coder<?> coder) {
+            List<? extends Coder<?>> arguments = coder.getCoderArguments();
+            if (arguments == null || arguments.isEmpty()) {
+                return coder.getClass().getName();
+            }
+            StringBuilder sb = new StringBuilder(coder.getClass().getName()).append('(');
+            for (Coder<?> argument : arguments) {
+                sb.append(coderStructure(argument)).append(',');
+            }
+            return sb.append(')').toString();
+        }
+    }
+}
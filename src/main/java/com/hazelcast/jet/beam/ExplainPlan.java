@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Description of the Jet DAG a Beam pipeline has been translated into, as
+ * it will be submitted: which transforms have been fused into single
+ * vertices, their local parallelism and cooperativeness, and for each edge
+ * the PCollection it carries, how it's routed and the coder used on it.
+ * Can be rendered as Graphviz DOT or as JSON.
+ */
+public class ExplainPlan {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<VertexInfo> vertices = new ArrayList<>();
+    private final List<EdgeInfo> edges = new ArrayList<>();
+
+    ExplainPlan() {
+    }
+
+    void addVertex(String name, int localParallelism, Boolean cooperative) {
+        vertices.add(new VertexInfo(name, localParallelism, cooperative));
+    }
+
+    void addEdge(
+            String source,
+            int sourceOrdinal,
+            String destination,
+            int destinationOrdinal,
+            String pCollection,
+            boolean distributed,
+            String routing,
+            String coder
+    ) {
+        edges.add(new EdgeInfo(source, sourceOrdinal, destination, destinationOrdinal, pCollection, distributed, routing, coder));
+    }
+
+    public String toDot() {
+        StringBuilder sb = new StringBuilder("digraph DAG {\n");
+        for (VertexInfo vertex : vertices) {
+            sb.append("\t").append(quote(vertex.name))
+              .append(" [label=").append(quote(vertex.name + "\nparallelism=" + vertex.localParallelism
+                    + (vertex.cooperative == null ? "" : vertex.cooperative ? ", cooperative" : ", non-cooperative")))
+              .append(vertex.name.contains(" + ") ? ", style=bold" : "")
+              .append("];\n");
+        }
+        for (EdgeInfo edge : edges) {
+            sb.append("\t").append(quote(edge.source)).append(" -> ").append(quote(edge.destination))
+              .append(" [label=").append(quote(edge.pCollection + "\n" + edge.routing + (edge.distributed ? "-distributed" : "-local")
+                    + "\n" + edge.coder))
+              .append(edge.distributed ? ", style=bold" : "")
+              .append("];\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    public String toJson() {
+        List<Map<String, Object>> vertexList = new ArrayList<>();
+        for (VertexInfo vertex : vertices) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", vertex.name);
+            map.put("localParallelism", vertex.localParallelism);
+            map.put("cooperative", vertex.cooperative);
+            vertexList.add(map);
+        }
+        List<Map<String, Object>> edgeList = new ArrayList<>();
+        for (EdgeInfo edge : edges) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("source", edge.source);
+            map.put("sourceOrdinal", edge.sourceOrdinal);
+            map.put("destination", edge.destination);
+            map.put("destinationOrdinal", edge.destinationOrdinal);
+            map.put("pCollection", edge.pCollection);
+            map.put("distributed", edge.distributed);
+            map.put("routing", edge.routing);
+            map.put("coder", edge.coder);
+            edgeList.add(map);
+        }
+        Map<String, Object> plan = new LinkedHashMap<>();
+        plan.put("vertices", Collections.unmodifiableList(vertexList));
+        plan.put("edges", Collections.unmodifiableList(edgeList));
+        try {
+            return MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(plan);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    private static class VertexInfo {
+        private final String name;
+        private final int localParallelism;
+        private final Boolean cooperative; // null if not known
+
+        VertexInfo(String name, int localParallelism, Boolean cooperative) {
+            this.name = name;
+            this.localParallelism = localParallelism;
+            this.cooperative = cooperative;
+        }
+    }
+
+    private static class EdgeInfo {
+        private final String source;
+        private final int sourceOrdinal;
+        private final String destination;
+        private final int destinationOrdinal;
+        private final String pCollection;
+        private final boolean distributed;
+        private final String routing;
+        private final String coder;
+
+        EdgeInfo(
+                String source,
+                int sourceOrdinal,
+                String destination,
+                int destinationOrdinal,
+                String pCollection,
+                boolean distributed,
+                String routing,
+                String coder
+        ) {
+            this.source = source;
+            this.sourceOrdinal = sourceOrdinal;
+            this.destination = destination;
+            this.destinationOrdinal = destinationOrdinal;
+            this.pCollection = pCollection;
+            this.distributed = distributed;
+            this.routing = routing;
+            this.coder = coder;
+        }
+    }
+}
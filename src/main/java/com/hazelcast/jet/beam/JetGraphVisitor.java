@@ -22,6 +22,7 @@ import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.runners.AppliedPTransform;
 import org.apache.beam.sdk.runners.TransformHierarchy;
 import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PValue;
 
 import java.util.function.Function;
@@ -47,7 +48,7 @@ class JetGraphVisitor extends Pipeline.PipelineVisitor.Defaults {
         PTransform<?, ?> transform = node.getTransform();
         if (transform != null) {
             JetTransformTranslator<?> translator = translatorProvider.apply(transform);
-            if (translator != null) {
+            if (translator != null && translator.canTranslate(node.toAppliedPTransform(getPipeline()))) {
                 translate(node, translator);
                 return CompositeBehavior.DO_NOT_ENTER_TRANSFORM;
             }
@@ -78,13 +79,19 @@ class JetGraphVisitor extends Pipeline.PipelineVisitor.Defaults {
 
     @Override
     public void visitValue(PValue value, TransformHierarchy.Node producer) {
-        // do nothing here
+        if (value instanceof PCollection) {
+            translationContext.getDagBuilder().registerCollectionName(Utils.getTupleTagId(value), value.getName());
+        }
     }
 
     DAG getDAG() {
         return translationContext.getDagBuilder().getDag();
     }
 
+    ExplainPlan getExplainPlan() {
+        return translationContext.getDagBuilder().explain();
+    }
+
     private <T extends PTransform<?, ?>> void translate(
             TransformHierarchy.Node node,
             JetTransformTranslator<?> translator
@@ -21,6 +21,8 @@ import org.apache.beam.sdk.options.Description;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.options.Validation;
 
+import java.util.List;
+
 public interface JetPipelineOptions extends PipelineOptions {
 
     @Description("Name of Jet group")
@@ -34,6 +36,11 @@ public interface JetPipelineOptions extends PipelineOptions {
     Integer getJetLocalParallelism();
     void setJetLocalParallelism(Integer localParallelism);
 
+    @Description("Local parallelism overrides for individual transforms, as a list of <regex>=<parallelism> items; "
+            + "the first regex matching the full name of a transform applies")
+    List<String> getJetTransformLocalParallelism();
+    void setJetTransformLocalParallelism(List<String> transformLocalParallelism);
+
     @Description("Specifies if the Runner should start its own Jet cluster")
     @Validation.Required
     @Default.Boolean(true)
@@ -46,4 +53,113 @@ public interface JetPipelineOptions extends PipelineOptions {
     Integer getJetClusterMemberCount();
     void setJetClusterMemberCount(Integer clusterMemberCount);
 
+    @Description("Regexes matching the full names of ParDo transforms whose DoFns only use the CPU, "
+            + "never block, and so can run on Jet's cooperative threads")
+    List<String> getJetCooperativeTransforms();
+    void setJetCooperativeTransforms(List<String> cooperativeTransforms);
+
+    @Description("Capacity of the concurrent queues of Jet edges, uses Jet's default if not set")
+    Integer getJetEdgeQueueSize();
+    void setJetEdgeQueueSize(Integer queueSize);
+
+    @Description("Packet size limit of distributed Jet edges, in bytes, uses Jet's default if not set")
+    Integer getJetEdgePacketSizeLimit();
+    void setJetEdgePacketSizeLimit(Integer packetSizeLimit);
+
+    @Description("Receive window multiplier of distributed Jet edges, uses Jet's default if not set")
+    Integer getJetEdgeReceiveWindowMultiplier();
+    void setJetEdgeReceiveWindowMultiplier(Integer receiveWindowMultiplier);
+
+    @Description("Maximum number of elements packed into a single frame on distributed edges, "
+            + "elements aren't packed if not set")
+    Integer getJetEdgeBatchSize();
+    void setJetEdgeBatchSize(Integer batchSize);
+
+    @Description("Maximum time in milliseconds a frame on distributed edges is kept open for more elements, "
+            + "10 if not set")
+    Integer getJetEdgeBatchDelayMillis();
+    void setJetEdgeBatchDelayMillis(Integer batchDelayMillis);
+
+    @Description("Edge config overrides for individual PCollections, as a list of "
+            + "<regex>=<property>:<value>[;<property>:<value>...] items, where the properties are queueSize, "
+            + "packetSizeLimit, receiveWindowMultiplier, batchSize and batchDelayMillis; the first regex matching "
+            + "the name of a PCollection applies")
+    List<String> getJetPCollectionEdgeConfig();
+    void setJetPCollectionEdgeConfig(List<String> pCollectionEdgeConfig);
+
+    @Description("Regexes matching the names of keyed PCollections whose items should be compressed "
+            + "when sent over distributed edges")
+    List<String> getJetCompressedPCollections();
+    void setJetCompressedPCollections(List<String> compressedPCollections);
+
+    @Description("Size in bytes of the encoded elements below which they aren't compressed on distributed edges, "
+            + "even if compression is enabled for their PCollection")
+    @Default.Integer(512)
+    Integer getJetEdgeCompressionThreshold();
+    void setJetEdgeCompressionThreshold(Integer compressionThreshold);
+
+    @Description("Specifies if translated DAGs should be cached in the submitting JVM and reused when the same "
+            + "pipeline, with the same DoFns, sources and Create elements, is submitted again with the same options")
+    @Default.Boolean(false)
+    Boolean getJetDagCacheEnabled();
+    void setJetDagCacheEnabled(Boolean dagCacheEnabled);
+
+    @Description("Specifies if chains of stateless transforms should be fused into single Jet vertices")
+    @Default.Boolean(true)
+    Boolean getJetFusionEnabled();
+    void setJetFusionEnabled(Boolean fusionEnabled);
+
+    @Description("Specifies if keyed processors should keep the encoded keys of their per-key state off-heap")
+    @Default.Boolean(false)
+    Boolean getJetOffHeapKeys();
+    void setJetOffHeapKeys(Boolean offHeapKeys);
+
+    @Description("Specifies if GroupByKeys firing each window only once, with the default trigger, non-merging windows "
+            + "and no allowed lateness, should group the encoded values without decoding them")
+    @Default.Boolean(true)
+    Boolean getJetEncodedGroupByKeyEnabled();
+    void setJetEncodedGroupByKeyEnabled(Boolean encodedGroupByKeyEnabled);
+
+    @Description("Size in bytes of the encoded values of a GroupByKey output element above which they are sent in "
+            + "chunks, which the consuming transforms decode lazily, 0 to never split them")
+    @Default.Integer(1 << 20)
+    Integer getJetGroupByKeyChunkSize();
+    void setJetGroupByKeyChunkSize(Integer groupByKeyChunkSize);
+
+    @Description("Maximum number of keys per window a lifted Combine.PerKey pre-aggregates on each processor "
+            + "before it sends the accumulators on to be merged")
+    @Default.Integer(100_000)
+    Integer getJetCombineMaxAccumulators();
+    void setJetCombineMaxAccumulators(Integer combineMaxAccumulators);
+
+    @Description("Maximum number of elements processed by a ParDo in a single bundle, before its DoFn's "
+            + "@FinishBundle gets called")
+    @Default.Integer(1000)
+    Integer getJetMaxBundleSize();
+    void setJetMaxBundleSize(Integer maxBundleSize);
+
+    @Description("Maximum time in milliseconds a ParDo keeps a bundle open; bundles are also finished when a "
+            + "watermark arrives and when the input is complete")
+    @Default.Integer(1000)
+    Integer getJetMaxBundleTimeMillis();
+    void setJetMaxBundleTimeMillis(Integer maxBundleTimeMillis);
+
+    @Description("Maximum number of output elements a ParDo buffers before it starts pushing them to the outbox "
+            + "from within the DoFn's output calls; while over it, the ParDo takes no input until the outbox takes them")
+    @Default.Integer(10000)
+    Integer getJetOutputBufferMaxElements();
+    void setJetOutputBufferMaxElements(Integer outputBufferMaxElements);
+
+    @Description("Maximum size in bytes of the encoded output elements a ParDo buffers, with the same effect "
+            + "as the element limit; the step reports the buffered elements and bytes as the bufferedElements "
+            + "and bufferedBytes gauges, the peak as peakBufferedBytes")
+    @Default.Long(32L << 20)
+    Long getJetOutputBufferMaxBytes();
+    void setJetOutputBufferMaxBytes(Long outputBufferMaxBytes);
+
+    @Description("Path prefix of files the explain plan of the translated DAG gets written to, as <prefix>.dot "
+            + "and <prefix>.json, before submitting the job, also when the DAG comes from the cache")
+    String getJetExplainPlanFile();
+    void setJetExplainPlanFile(String explainPlanFile);
+
 }
@@ -24,21 +24,33 @@ import com.hazelcast.jet.Job;
 import com.hazelcast.jet.beam.metrics.JetMetricsContainer;
 import com.hazelcast.jet.core.DAG;
 import com.hazelcast.jet.server.JetBootstrap;
+import org.apache.beam.runners.core.construction.PTransformMatchers;
+import org.apache.beam.runners.core.construction.PTransformTranslation;
+import org.apache.beam.runners.core.construction.SplittableParDo;
+import org.apache.beam.runners.core.construction.SplittableParDoNaiveBounded;
 import org.apache.beam.runners.core.construction.UnconsumedReads;
 import org.apache.beam.runners.core.metrics.MetricUpdates;
 import org.apache.beam.sdk.Pipeline;
 import org.apache.beam.sdk.PipelineResult;
 import org.apache.beam.sdk.PipelineRunner;
 import org.apache.beam.sdk.options.PipelineOptions;
+import org.apache.beam.sdk.runners.PTransformMatcher;
 import org.apache.beam.sdk.runners.PTransformOverride;
+import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.reflect.DoFnSignatures;
+import org.apache.beam.sdk.values.PCollection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
@@ -74,9 +86,7 @@ public class JetRunner extends PipelineRunner<PipelineResult> {
     @Override
     public PipelineResult run(Pipeline pipeline) {
         try {
-            normalize(pipeline);
-            DAG dag = translate(pipeline);
-            return run(dag);
+            return run(getDag(pipeline));
         } catch (UnsupportedOperationException uoe) {
             LOG.error("Failed running pipeline!", uoe);
             return new FailedRunningPipelineResults(uoe);
@@ -93,15 +103,57 @@ public class JetRunner extends PipelineRunner<PipelineResult> {
             return translator;
         };
     }
+
+    /**
+     * Translates the pipeline without running it and returns the description
+     * of the resulting DAG.
+     */
+    public ExplainPlan explain(Pipeline pipeline) {
+        normalize(pipeline);
+        JetGraphVisitor graphVisitor = new JetGraphVisitor(options, translatorProvider);
+        pipeline.traverseTopologically(graphVisitor);
+        return graphVisitor.getExplainPlan();
+    }
+
+    /**
+     * Returns the DAG of the pipeline, translated or taken from the cache,
+     * and writes its explain plan if it's been asked for.
+     */
+    DAG getDag(Pipeline pipeline) {
+        DAGCache.Translation translation = options.getJetDagCacheEnabled() ?
+                DAGCache.get(pipeline, options, () -> normalizeAndTranslate(pipeline)) :
+                normalizeAndTranslate(pipeline);
+        if (translation.getExplainPlan() != null) {
+            writeExplainPlan(translation.getExplainPlan(), options.getJetExplainPlanFile());
+        }
+        return translation.getDag();
+    }
+
+    private DAGCache.Translation normalizeAndTranslate(Pipeline pipeline) {
+        normalize(pipeline);
+        return translate(pipeline);
+    }
+
     private void normalize(Pipeline pipeline) {
         pipeline.replaceAll(getDefaultOverrides());
         UnconsumedReads.ensureAllReadsConsumed(pipeline);
     }
 
-    private DAG translate(Pipeline pipeline) {
+    private DAGCache.Translation translate(Pipeline pipeline) {
         JetGraphVisitor graphVisitor = new JetGraphVisitor(options, translatorProvider);
         pipeline.traverseTopologically(graphVisitor);
-        return graphVisitor.getDAG();
+        DAG dag = graphVisitor.getDAG();
+        ExplainPlan explainPlan = options.getJetExplainPlanFile() == null ? null : graphVisitor.getExplainPlan();
+        return new DAGCache.Translation(dag, explainPlan);
+    }
+
+    private static void writeExplainPlan(ExplainPlan plan, String pathPrefix) {
+        try {
+            Files.write(Paths.get(pathPrefix + ".dot"), plan.toDot().getBytes(StandardCharsets.UTF_8));
+            Files.write(Paths.get(pathPrefix + ".json"), plan.toJson().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOG.warn("Failed writing explain plan to " + pathPrefix, e);
+        }
     }
 
     private JetPipelineResult run(DAG dag) {
@@ -154,8 +206,27 @@ public class JetRunner extends PipelineRunner<PipelineResult> {
     }
 
     private static List<PTransformOverride> getDefaultOverrides() {
-        //return Collections.singletonList(JavaReadViaImpulse.boundedOverride()); //todo: needed once we start using GreedyPipelineFuser
-        return Collections.emptyList();
+        //JavaReadViaImpulse.boundedOverride() //todo: needed once we start using GreedyPipelineFuser
+        return Arrays.asList(
+                // splits the initial restrictions, the pieces then get spread over all processors by the keyed edge
+                PTransformOverride.of(boundedSplittableParDo(), new SplittableParDo.OverrideFactory()),
+                // processes each restriction, checkpoints included, on the processor which has received it
+                PTransformOverride.of(boundedSplittableProcessKeyed(), new SplittableParDoNaiveBounded.OverrideFactory())
+        );
+    }
+
+    private static PTransformMatcher boundedSplittableParDo() {
+        return application -> PTransformMatchers.splittableParDo().matches(application)
+                && isBoundedPerElement(((ParDo.MultiOutput<?, ?>) application.getTransform()).getFn());
+    }
+
+    private static PTransformMatcher boundedSplittableProcessKeyed() {
+        return application -> PTransformMatchers.urnEqualTo(PTransformTranslation.SPLITTABLE_PROCESS_KEYED_URN).matches(application)
+                && isBoundedPerElement(((SplittableParDo.ProcessKeyedElements<?, ?, ?>) application.getTransform()).getFn());
+    }
+
+    private static boolean isBoundedPerElement(DoFn<?, ?> doFn) {
+        return DoFnSignatures.signatureForDoFn(doFn).isBoundedPerElement() == PCollection.IsBounded.BOUNDED;
     }
 
     private static JetPipelineOptions validate(JetPipelineOptions options) {
@@ -171,6 +242,19 @@ public class JetRunner extends PipelineRunner<PipelineResult> {
             throw new IllegalArgumentException("Jet node local parallelism must be >1 or -1");
         }
 
+        if (options.getJetCombineMaxAccumulators() < 1) {
+            throw new IllegalArgumentException("Max combine accumulators must be >0");
+        }
+        if (options.getJetMaxBundleSize() < 1) {
+            throw new IllegalArgumentException("Max bundle size must be >0");
+        }
+        if (options.getJetMaxBundleTimeMillis() < 1) {
+            throw new IllegalArgumentException("Max bundle time must be >0");
+        }
+        if (options.getJetOutputBufferMaxElements() < 1 || options.getJetOutputBufferMaxBytes() < 1) {
+            throw new IllegalArgumentException("Output buffer limits must be >0");
+        }
+
         return options;
     }
 }
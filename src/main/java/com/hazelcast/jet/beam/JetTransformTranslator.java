@@ -24,6 +24,15 @@ import org.apache.beam.sdk.transforms.PTransform;
 
 interface JetTransformTranslator<T extends PTransform> {
 
+    /**
+     * Returns false if this particular application of the transform can't be
+     * handled by the translator. Composite transforms are then expanded and
+     * their parts translated instead.
+     */
+    default boolean canTranslate(AppliedPTransform<?, ?, ?> appliedTransform) {
+        return true;
+    }
+
     Vertex translate(Pipeline pipeline, AppliedPTransform<?, ?, ?> appliedTransform, TransformHierarchy.Node node, JetTranslationContext context);
 
 }
@@ -18,9 +18,14 @@ package com.hazelcast.jet.beam;
 
 import com.hazelcast.jet.beam.processors.AssignWindowP;
 import com.hazelcast.jet.beam.processors.BoundedSourceP;
+import com.hazelcast.jet.beam.processors.CreateP;
+import com.hazelcast.jet.beam.processors.EncodedGroupByKeyP;
 import com.hazelcast.jet.beam.processors.FlattenP;
+import com.hazelcast.jet.beam.processors.GroupIntoBatchesP;
 import com.hazelcast.jet.beam.processors.ImpulseP;
 import com.hazelcast.jet.beam.processors.ParDoP;
+import com.hazelcast.jet.beam.processors.PartialCombineP;
+import com.hazelcast.jet.beam.processors.ReshuffleP;
 import com.hazelcast.jet.beam.processors.StatefulParDoP;
 import com.hazelcast.jet.beam.processors.UnboundedSourceP;
 import com.hazelcast.jet.beam.processors.ViewP;
@@ -29,21 +34,30 @@ import com.hazelcast.jet.core.Processor;
 import com.hazelcast.jet.core.ProcessorMetaSupplier;
 import com.hazelcast.jet.core.Vertex;
 import com.hazelcast.jet.function.SupplierEx;
+import org.apache.beam.runners.core.SystemReduceFn;
 import org.apache.beam.runners.core.construction.CreatePCollectionViewTranslation;
 import org.apache.beam.runners.core.construction.PTransformTranslation;
 import org.apache.beam.runners.core.construction.ParDoTranslation;
 import org.apache.beam.runners.core.construction.ReadTranslation;
 import org.apache.beam.runners.core.construction.SerializablePipelineOptions;
 import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.CannotProvideCoderException;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.io.BoundedSource;
 import org.apache.beam.sdk.io.UnboundedSource;
 import org.apache.beam.sdk.runners.AppliedPTransform;
 import org.apache.beam.sdk.runners.TransformHierarchy.Node;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Create;
 import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.GroupIntoBatches;
 import org.apache.beam.sdk.transforms.DoFnSchemaInformation;
 import org.apache.beam.sdk.transforms.PTransform;
+import org.apache.beam.sdk.transforms.Reshuffle;
 import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.DefaultTrigger;
+import org.apache.beam.sdk.util.AppliedCombineFn;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.util.WindowedValue.WindowedValueCoder;
 import org.apache.beam.sdk.values.KV;
@@ -55,8 +69,12 @@ import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.PValue;
 import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.WindowingStrategy;
+import org.joda.time.Duration;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -76,12 +94,31 @@ class JetTransformTranslators {
         TRANSLATORS.put(PTransformTranslation.CREATE_VIEW_TRANSFORM_URN, new CreateViewTranslator());
         TRANSLATORS.put(PTransformTranslation.PAR_DO_TRANSFORM_URN, new ParDoTranslator());
         TRANSLATORS.put(PTransformTranslation.GROUP_BY_KEY_TRANSFORM_URN, new GroupByKeyTranslator());
+        TRANSLATORS.put(PTransformTranslation.COMBINE_PER_KEY_TRANSFORM_URN, new CombinePerKeyTranslator());
         TRANSLATORS.put(PTransformTranslation.FLATTEN_TRANSFORM_URN, new FlattenTranslator());
         TRANSLATORS.put(PTransformTranslation.ASSIGN_WINDOWS_TRANSFORM_URN, new WindowTranslator());
         TRANSLATORS.put(PTransformTranslation.IMPULSE_TRANSFORM_URN, new ImpulseTranslator());
     }
 
+    /**
+     * A map from a Transform class to the translator, for composite
+     * transforms which have no URN of their own, but for which we have a
+     * native implementation. Reshuffle has a URN, but this Beam version
+     * doesn't map the transform to it.
+     */
+    private static final Map<Class<?>, JetTransformTranslator> CLASS_TRANSLATORS = new HashMap<>();
+
+    static {
+        CLASS_TRANSLATORS.put(GroupIntoBatches.class, new GroupIntoBatchesTranslator());
+        CLASS_TRANSLATORS.put(Create.Values.class, new CreateValuesTranslator());
+        CLASS_TRANSLATORS.put(Reshuffle.class, new ReshuffleTranslator());
+    }
+
     static JetTransformTranslator<?> getTranslator(PTransform<?, ?> transform) {
+        JetTransformTranslator<?> classTranslator = CLASS_TRANSLATORS.get(transform.getClass());
+        if (classTranslator != null) {
+            return classTranslator;
+        }
         String urn = PTransformTranslation.urnForTransformOrNull(transform);
         return urn == null ? null : TRANSLATORS.get(urn);
     }
@@ -105,6 +142,7 @@ class JetTransformTranslators {
             );
 
             Vertex vertex = dagBuilder.addVertex(vertexId, processorSupplier);
+            dagBuilder.registerNonCooperativeVertex(vertex); // readers may block
 
             String outputEdgeId = Utils.getTupleTagId(output.getValue());
             dagBuilder.registerCollectionOfEdge(outputEdgeId, output.getKey().getId());
@@ -165,7 +203,8 @@ class JetTransformTranslators {
             String transformName = appliedTransform.getFullName();
             DAGBuilder dagBuilder = context.getDagBuilder();
             String stepId = transformName.contains("/") ? transformName.substring(0, transformName.indexOf('/')) : transformName;
-            String vertexId = dagBuilder.newVertexId(transformName) + (usesStateOrTimers ? " - STATEFUL" : "");
+            String vertexId = dagBuilder.newVertexId(transformName, usesStateOrTimers ? " - STATEFUL" : "");
+            boolean cooperative = dagBuilder.isCooperativeTransform(transformName);
             SerializablePipelineOptions pipelineOptions = context.getOptions();
             Coder inputValueCoder = ((PCollection) Utils.getInput(appliedTransform)).getCoder();
             Coder inputCoder = Utils.getCoder((PCollection) Utils.getInput(appliedTransform));
@@ -188,7 +227,8 @@ class JetTransformTranslators {
                             outputCoders,
                             inputValueCoder,
                             outputValueCoders,
-                            sideInputs
+                            sideInputs,
+                            cooperative
                     ) :
                     new ParDoP.Supplier(
                             stepId,
@@ -204,10 +244,16 @@ class JetTransformTranslators {
                             outputCoders,
                             inputValueCoder,
                             outputValueCoders,
-                            sideInputs
+                            sideInputs,
+                            cooperative
                     );
 
-            Vertex vertex = dagBuilder.addVertex(vertexId, processorSupplier);
+            Vertex vertex = usesStateOrTimers || !sideInputs.isEmpty() ?
+                    dagBuilder.addVertex(vertexId, processorSupplier) :
+                    dagBuilder.addFusableVertex(vertexId, processorSupplier);
+            if (!cooperative) {
+                dagBuilder.registerNonCooperativeVertex(vertex);
+            }
             dagBuilder.registerConstructionListeners((DAGBuilder.WiringListener) processorSupplier);
 
             PValue mainInput = Utils.getMainInput(pipeline, node);
@@ -247,7 +293,24 @@ class JetTransformTranslators {
 
             DAGBuilder dagBuilder = context.getDagBuilder();
             String vertexId = dagBuilder.newVertexId(transformName);
-            Vertex vertex = dagBuilder.addVertex(vertexId, WindowGroupP.supplier(context.getOptions(), inputCoder, outputCoder, windowingStrategy, vertexId));
+            JetPipelineOptions options = context.getOptions().get().as(JetPipelineOptions.class);
+            SupplierEx<Processor> processorSupplier;
+            if (groupsEncodedValues(options, windowingStrategy, inputCoder, outputCoder)) {
+                processorSupplier = EncodedGroupByKeyP.supplier(
+                        inputCoder,
+                        (WindowedValue.FullWindowedValueCoder) outputCoder,
+                        windowingStrategy,
+                        options.getJetOffHeapKeys(),
+                        options.getJetGroupByKeyChunkSize(),
+                        vertexId
+                );
+            } else {
+                processorSupplier = WindowGroupP.supplier(context.getOptions(), inputCoder, outputCoder, windowingStrategy, vertexId);
+            }
+            Vertex vertex = dagBuilder.addVertex(vertexId, processorSupplier);
+            dagBuilder.registerSideEffectFreeVertex(vertex);
+            dagBuilder.registerKeyPreservingVertex(vertex, Utils.getKeyCoder(inputCoder));
+            registerIfChunking(dagBuilder, vertex, options, outputCoder);
 
             dagBuilder.registerEdgeEndPoint(Utils.getTupleTagId(input), vertex);
 
@@ -256,6 +319,255 @@ class JetTransformTranslators {
             dagBuilder.registerEdgeStartPoint(outputEdgeId, vertex, outputCoder);
             return vertex;
         }
+
+        /**
+         * Values can be grouped without decoding them when each window fires
+         * exactly once, at the end of the window, so no trigger state has to
+         * be kept and the output pane is always the only, on-time one.
+         */
+        private static boolean groupsEncodedValues(
+                JetPipelineOptions options,
+                WindowingStrategy<?, ?> windowingStrategy,
+                Coder inputCoder,
+                Coder outputCoder
+        ) {
+            return options.getJetEncodedGroupByKeyEnabled()
+                    && windowingStrategy.getWindowFn().isNonMerging()
+                    && windowingStrategy.getTrigger() instanceof DefaultTrigger
+                    && windowingStrategy.getAllowedLateness().getMillis() == 0
+                    && KeyedFrameGrouping.canGroup(inputCoder, outputCoder);
+        }
+    }
+
+    /**
+     * Grouping vertices split the iterable values of their output elements
+     * into chunks when they get too big (see {@link KeyedFrameGrouping}),
+     * the DAG has to know for their consumers to put them back together.
+     */
+    private static void registerIfChunking(DAGBuilder dagBuilder, Vertex vertex, JetPipelineOptions options, Coder outputCoder) {
+        if (options.getJetGroupByKeyChunkSize() > 0 && KeyedFrameGrouping.isChunkable(outputCoder)) {
+            dagBuilder.registerChunkingVertex(vertex);
+        }
+    }
+
+    /**
+     * Translates Combine.PerKey into a local pre-aggregation stage followed
+     * by a shuffle of the accumulators and a stage merging them, instead of
+     * shuffling all the input values for a GroupByKey. Only applied when the
+     * result can't depend on how the input gets split between the two stages.
+     */
+    private static class CombinePerKeyTranslator<K, InputT, AccumT, OutputT>
+            implements JetTransformTranslator<PTransform<PCollection<KV<K, InputT>>, PCollection<KV<K, OutputT>>>> {
+
+        @Override
+        public boolean canTranslate(AppliedPTransform<?, ?, ?> appliedTransform) {
+            if (!(appliedTransform.getTransform() instanceof Combine.PerKey)) {
+                return false;
+            }
+            Combine.PerKey<K, InputT, OutputT> transform = (Combine.PerKey<K, InputT, OutputT>) appliedTransform.getTransform();
+            if (!(transform.getFn() instanceof Combine.CombineFn) || !transform.getSideInputs().isEmpty()) {
+                return false;
+            }
+            PCollection<KV<K, InputT>> input = (PCollection<KV<K, InputT>>) Utils.getInput(appliedTransform);
+            WindowingStrategy<?, ?> windowingStrategy = input.getWindowingStrategy();
+            if (!windowingStrategy.getWindowFn().isNonMerging() || !(windowingStrategy.getTrigger() instanceof DefaultTrigger)) {
+                return false;
+            }
+            return getAccumulatorCoder(transform, input) != null;
+        }
+
+        @Override
+        public Vertex translate(Pipeline pipeline, AppliedPTransform<?, ?, ?> appliedTransform, Node node, JetTranslationContext context) {
+            String transformName = appliedTransform.getFullName();
+            Combine.PerKey<K, InputT, OutputT> transform = (Combine.PerKey<K, InputT, OutputT>) appliedTransform.getTransform();
+            Combine.CombineFn<InputT, AccumT, OutputT> combineFn = (Combine.CombineFn<InputT, AccumT, OutputT>) transform.getFn();
+
+            PCollection<KV<K, InputT>> input = (PCollection<KV<K, InputT>>) Utils.getInput(appliedTransform);
+            Coder inputCoder = Utils.getCoder(input);
+            Coder<K> keyCoder = ((KvCoder<K, InputT>) input.getCoder()).getKeyCoder();
+            Coder<AccumT> accumulatorCoder = getAccumulatorCoder(transform, input);
+            WindowingStrategy<?, ?> windowingStrategy = input.getWindowingStrategy();
+            WindowedValueCoder<KV<K, AccumT>> accumulationCoder = WindowedValue.FullWindowedValueCoder.of(
+                    KvCoder.of(keyCoder, accumulatorCoder),
+                    windowingStrategy.getWindowFn().windowCoder()
+            );
+            Map.Entry<TupleTag<?>, PValue> output = Utils.getOutput(appliedTransform);
+            Coder outputCoder = Utils.getCoder((PCollection) output.getValue());
+
+            JetPipelineOptions options = context.getOptions().get().as(JetPipelineOptions.class);
+
+            DAGBuilder dagBuilder = context.getDagBuilder();
+            String accumulateVertexId = dagBuilder.newVertexId(transformName + "/Accumulate");
+            Vertex accumulateVertex = dagBuilder.addFusableVertex(
+                    accumulateVertexId,
+                    PartialCombineP.supplier(
+                            inputCoder,
+                            accumulationCoder,
+                            combineFn,
+                            windowingStrategy,
+                            options.getJetCombineMaxAccumulators(),
+                            accumulateVertexId
+                    )
+            );
+            dagBuilder.registerSideEffectFreeVertex(accumulateVertex);
+            dagBuilder.registerLocalInputVertex(accumulateVertex);
+            dagBuilder.registerEdgeEndPoint(Utils.getTupleTagId(input), accumulateVertex);
+
+            String combineVertexId = dagBuilder.newVertexId(transformName + "/Combine");
+            SystemReduceFn<K, AccumT, AccumT, OutputT, BoundedWindow> reduceFn = SystemReduceFn.combining(
+                    keyCoder,
+                    AppliedCombineFn.withAccumulatorCoder(new MergeAccumulatorsFn<>(combineFn), accumulatorCoder)
+            );
+            Vertex combineVertex = dagBuilder.addVertex(
+                    combineVertexId,
+                    WindowGroupP.supplier(context.getOptions(), accumulationCoder, outputCoder, windowingStrategy, reduceFn, combineVertexId)
+            );
+            dagBuilder.registerSideEffectFreeVertex(combineVertex);
+            dagBuilder.registerKeyPreservingVertex(combineVertex, keyCoder);
+            registerIfChunking(dagBuilder, combineVertex, options, outputCoder);
+
+            String accumulationsEdgeId = accumulateVertexId;
+            dagBuilder.registerCollectionOfEdge(accumulationsEdgeId, accumulationsEdgeId);
+            dagBuilder.registerEdgeStartPoint(accumulationsEdgeId, accumulateVertex, accumulationCoder);
+            dagBuilder.registerEdgeEndPoint(accumulationsEdgeId, combineVertex);
+
+            String outputEdgeId = Utils.getTupleTagId(output.getValue());
+            dagBuilder.registerCollectionOfEdge(outputEdgeId, output.getKey().getId());
+            dagBuilder.registerEdgeStartPoint(outputEdgeId, combineVertex, outputCoder);
+            return combineVertex;
+        }
+
+        private Coder<AccumT> getAccumulatorCoder(Combine.PerKey<K, InputT, OutputT> transform, PCollection<KV<K, InputT>> input) {
+            Combine.CombineFn<InputT, AccumT, OutputT> combineFn = (Combine.CombineFn<InputT, AccumT, OutputT>) transform.getFn();
+            try {
+                Coder<InputT> inputValueCoder = ((KvCoder<K, InputT>) input.getCoder()).getValueCoder();
+                return combineFn.getAccumulatorCoder(input.getPipeline().getCoderRegistry(), inputValueCoder);
+            } catch (CannotProvideCoderException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Combine function used by the second stage of a lifted Combine.PerKey,
+     * its inputs are accumulators produced by the first stage.
+     */
+    private static class MergeAccumulatorsFn<InputT, AccumT, OutputT> extends Combine.CombineFn<AccumT, AccumT, OutputT> {
+
+        private final Combine.CombineFn<InputT, AccumT, OutputT> combineFn;
+
+        MergeAccumulatorsFn(Combine.CombineFn<InputT, AccumT, OutputT> combineFn) {
+            this.combineFn = combineFn;
+        }
+
+        @Override
+        public AccumT createAccumulator() {
+            return combineFn.createAccumulator();
+        }
+
+        @Override
+        public AccumT addInput(AccumT accumulator, AccumT input) {
+            return combineFn.mergeAccumulators(Arrays.asList(accumulator, input));
+        }
+
+        @Override
+        public AccumT mergeAccumulators(Iterable<AccumT> accumulators) {
+            return combineFn.mergeAccumulators(accumulators);
+        }
+
+        @Override
+        public OutputT extractOutput(AccumT accumulator) {
+            return combineFn.extractOutput(accumulator);
+        }
+
+        @Override
+        public AccumT compact(AccumT accumulator) {
+            return combineFn.compact(accumulator);
+        }
+    }
+
+    private static class ReshuffleTranslator<K, V> implements JetTransformTranslator<PTransform<PCollection<KV<K, V>>, PCollection<KV<K, V>>>> {
+
+        @Override
+        public Vertex translate(Pipeline pipeline, AppliedPTransform<?, ?, ?> appliedTransform, Node node, JetTranslationContext context) {
+            PCollection<KV<K, V>> input = (PCollection<KV<K, V>>) Utils.getInput(appliedTransform);
+            Map.Entry<TupleTag<?>, PValue> output = Utils.getOutput(appliedTransform);
+            Coder outputCoder = Utils.getCoder((PCollection) output.getValue());
+
+            DAGBuilder dagBuilder = context.getDagBuilder();
+            String vertexId = dagBuilder.newVertexId(appliedTransform.getFullName());
+            Vertex vertex = dagBuilder.addVertex(vertexId, ReshuffleP.supplier(outputCoder, vertexId));
+            dagBuilder.registerSideEffectFreeVertex(vertex);
+            dagBuilder.registerKeyPreservingVertex(vertex, Utils.getKeyCoder(outputCoder));
+
+            dagBuilder.registerEdgeEndPoint(Utils.getTupleTagId(input), vertex);
+
+            String outputEdgeId = Utils.getTupleTagId(output.getValue());
+            dagBuilder.registerCollectionOfEdge(outputEdgeId, output.getKey().getId());
+            dagBuilder.registerEdgeStartPoint(outputEdgeId, vertex, outputCoder);
+            return vertex;
+        }
+    }
+
+    static class GroupIntoBatchesTranslator<K, V> implements JetTransformTranslator<PTransform<PCollection<KV<K, V>>, PCollection<KV<K, Iterable<V>>>>> {
+
+        @Override
+        public boolean canTranslate(AppliedPTransform<?, ?, ?> appliedTransform) {
+            PCollection<?> input = (PCollection<?>) Utils.getInput(appliedTransform);
+            PCollection<?> output = (PCollection<?>) Utils.getOutput(appliedTransform).getValue();
+            return input.getCoder() instanceof KvCoder
+                    && KeyedFrameGrouping.canGroup(Utils.getCoder(input), Utils.getCoder(output))
+                    && getBatchSize((GroupIntoBatches<?, ?>) appliedTransform.getTransform()) > 0;
+        }
+
+        @Override
+        public Vertex translate(Pipeline pipeline, AppliedPTransform<?, ?, ?> appliedTransform, Node node, JetTranslationContext context) {
+            PCollection<KV<K, V>> input = (PCollection<KV<K, V>>) Utils.getInput(appliedTransform);
+            Coder inputCoder = Utils.getCoder(input);
+            Map.Entry<TupleTag<?>, PValue> output = Utils.getOutput(appliedTransform);
+            Coder outputCoder = Utils.getCoder((PCollection) output.getValue());
+            long batchSize = getBatchSize((GroupIntoBatches<?, ?>) appliedTransform.getTransform());
+            Duration allowedLateness = input.getWindowingStrategy().getAllowedLateness();
+
+            DAGBuilder dagBuilder = context.getDagBuilder();
+            String vertexId = dagBuilder.newVertexId(appliedTransform.getFullName());
+            Vertex vertex = dagBuilder.addVertex(
+                    vertexId,
+                    GroupIntoBatchesP.supplier(
+                            inputCoder,
+                            (WindowedValue.FullWindowedValueCoder) outputCoder,
+                            batchSize,
+                            allowedLateness,
+                            context.getOptions().get().as(JetPipelineOptions.class).getJetOffHeapKeys(),
+                            vertexId
+                    )
+            );
+            dagBuilder.registerSideEffectFreeVertex(vertex);
+            dagBuilder.registerKeyPreservingVertex(vertex, Utils.getKeyCoder(inputCoder));
+
+            dagBuilder.registerEdgeEndPoint(Utils.getTupleTagId(input), vertex);
+
+            String outputEdgeId = Utils.getTupleTagId(output.getValue());
+            dagBuilder.registerCollectionOfEdge(outputEdgeId, output.getKey().getId());
+            dagBuilder.registerEdgeStartPoint(outputEdgeId, vertex, outputCoder);
+            return vertex;
+        }
+
+        /**
+         * GroupIntoBatches doesn't expose its batch size, returns -1 if it
+         * can't be read, in which case the transform gets expanded as usual.
+         * The field is private to the Beam version we build with, a test
+         * checks it's still there.
+         */
+        static long getBatchSize(GroupIntoBatches<?, ?> transform) {
+            try {
+                Field field = GroupIntoBatches.class.getDeclaredField("batchSize");
+                field.setAccessible(true);
+                return field.getLong(transform);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return -1;
+            }
+        }
     }
 
     private static class CreateViewTranslator<T> implements JetTransformTranslator<PTransform<PCollection<T>, PCollection<T>>> {
@@ -278,6 +590,7 @@ class JetTransformTranslators {
             Coder outputCoder = Utils.getCoder((PCollection) output.getValue());
 
             Vertex vertex = dagBuilder.addVertex(vertexId, ViewP.supplier(inputCoder, outputCoder, input.getWindowingStrategy(), vertexId));
+            dagBuilder.registerSideEffectFreeVertex(vertex);
 
             dagBuilder.registerEdgeEndPoint(Utils.getTupleTagId(input), vertex);
 
@@ -305,7 +618,8 @@ class JetTransformTranslators {
             DAGBuilder dagBuilder = context.getDagBuilder();
             String vertexId = dagBuilder.newVertexId(appliedTransform.getFullName());
             FlattenP.Supplier processorSupplier = new FlattenP.Supplier(inputCoders, outputCoder, vertexId);
-            Vertex vertex = dagBuilder.addVertex(vertexId, processorSupplier);
+            Vertex vertex = dagBuilder.addFusableVertex(vertexId, processorSupplier);
+            dagBuilder.registerSideEffectFreeVertex(vertex);
             dagBuilder.registerConstructionListeners(processorSupplier);
 
             for (PValue value : mainInputs) {
@@ -335,7 +649,8 @@ class JetTransformTranslators {
             DAGBuilder dagBuilder = context.getDagBuilder();
             String vertexId = dagBuilder.newVertexId(transformName);
 
-            Vertex vertex = dagBuilder.addVertex(vertexId, AssignWindowP.supplier(inputCoder, outputCoder, windowingStrategy, vertexId));
+            Vertex vertex = dagBuilder.addFusableVertex(vertexId, AssignWindowP.supplier(inputCoder, outputCoder, windowingStrategy, vertexId));
+            dagBuilder.registerSideEffectFreeVertex(vertex);
             dagBuilder.registerEdgeEndPoint(Utils.getTupleTagId(input), vertex);
 
             String outputEdgeId = Utils.getTupleTagId(output.getValue());
@@ -345,6 +660,30 @@ class JetTransformTranslators {
         }
     }
 
+    private static class CreateValuesTranslator<T> implements JetTransformTranslator<PTransform<PBegin, PCollection<T>>> {
+
+        @Override
+        public Vertex translate(Pipeline pipeline, AppliedPTransform<?, ?, ?> appliedTransform, Node node, JetTranslationContext context) {
+            Create.Values<T> transform = (Create.Values<T>) appliedTransform.getTransform();
+            Map.Entry<TupleTag<?>, PValue> output = Utils.getOutput(appliedTransform);
+            Coder outputCoder = Utils.getCoder((PCollection) output.getValue());
+
+            List<byte[]> encodedElements = new ArrayList<>();
+            for (T element : transform.getElements()) {
+                encodedElements.add(Utils.encode(WindowedValue.valueInGlobalWindow(element), outputCoder));
+            }
+
+            DAGBuilder dagBuilder = context.getDagBuilder();
+            String vertexId = dagBuilder.newVertexId(appliedTransform.getFullName());
+            Vertex vertex = dagBuilder.addFusableVertex(vertexId, CreateP.supplier(encodedElements, vertexId));
+
+            String outputEdgeId = Utils.getTupleTagId(output.getValue());
+            dagBuilder.registerCollectionOfEdge(outputEdgeId, output.getKey().getId());
+            dagBuilder.registerEdgeStartPoint(outputEdgeId, vertex, outputCoder);
+            return vertex;
+        }
+    }
+
     private static class ImpulseTranslator implements JetTransformTranslator<PTransform<PBegin, PCollection<byte[]>>> {
         @Override
         public Vertex translate(Pipeline pipeline, AppliedPTransform<?, ?, ?> appliedTransform, Node node, JetTranslationContext context) {
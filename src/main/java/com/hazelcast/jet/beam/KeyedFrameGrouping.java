@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.joda.time.Instant;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static com.hazelcast.jet.impl.util.ExceptionUtil.rethrow;
+
+/**
+ * Grouping of the values of keyed frames (see {@link Utils#encode}) by key
+ * and window without decoding them. Only the timestamp, windows and pane
+ * of the frames get decoded, their values are copied, as they are, into a
+ * buffer of their group, and the frame of a group's {@code KV<K,
+ * Iterable<V>>} is made of the header and key of its first frame, the
+ * window and the timestamp of the group and the element count followed by
+ * the buffer, which is how an {@link IterableCoder} encodes its elements.
+ *
+ * <p>Groups whose values take more than a given number of bytes are split
+ * into chunks, so that a hot key doesn't need a single huge array: each
+ * chunk goes out as a chunk frame, with the header and key of the group,
+ * flagged as a chunk, and a payload of the count and the values of the
+ * chunk. The frame of the element itself comes last and only has the
+ * values after the last chunk. Consumers keep the chunk frames of a key
+ * until its element comes, whose iterable then decodes the values of all
+ * the frames lazily, as it's iterated (see {@link #decodeChunked}).
+ */
+public final class KeyedFrameGrouping {
+
+    private static final int INITIAL_GROUP_CAPACITY = 64;
+
+    private static final CompactWindowedValueCoder.ValueWriter<Group> GROUP_WRITER = (group, out) -> {
+        CodecBuffers.OutputBuffer buffer = (CodecBuffers.OutputBuffer) out;
+        buffer.writeInt(group.count);
+        group.values.copyTo(buffer);
+    };
+
+    private KeyedFrameGrouping() {
+    }
+
+    /**
+     * Returns true if the values of elements of the given input coder can be
+     * grouped into elements of the given output coder without decoding them:
+     * both have to be full windowed value coders of KVs, with the same key
+     * and window coders, the values of the output being iterables of the
+     * values of the input.
+     */
+    public static boolean canGroup(Coder inputCoder, Coder outputCoder) {
+        if (!(inputCoder instanceof WindowedValue.FullWindowedValueCoder) || !isChunkable(outputCoder)) {
+            return false;
+        }
+        WindowedValue.FullWindowedValueCoder<?> fullInputCoder = (WindowedValue.FullWindowedValueCoder<?>) inputCoder;
+        WindowedValue.FullWindowedValueCoder<?> fullOutputCoder = (WindowedValue.FullWindowedValueCoder<?>) outputCoder;
+        if (!(fullInputCoder.getValueCoder() instanceof KvCoder)) {
+            return false;
+        }
+        KvCoder<?, ?> inputKvCoder = (KvCoder<?, ?>) fullInputCoder.getValueCoder();
+        KvCoder<?, ?> outputKvCoder = (KvCoder<?, ?>) fullOutputCoder.getValueCoder();
+        return inputKvCoder.getKeyCoder().equals(outputKvCoder.getKeyCoder())
+                && inputKvCoder.getValueCoder().equals(((IterableCoder<?>) outputKvCoder.getValueCoder()).getElemCoder())
+                && fullInputCoder.getWindowCoder().equals(fullOutputCoder.getWindowCoder());
+    }
+
+    /**
+     * Returns true if elements of the given coder can be split into chunk
+     * frames: it has to be a full windowed value coder of KVs with iterable
+     * values.
+     */
+    public static boolean isChunkable(Coder coder) {
+        if (!(coder instanceof WindowedValue.FullWindowedValueCoder)) {
+            return false;
+        }
+        Coder<?> valueCoder = ((WindowedValue.FullWindowedValueCoder<?>) coder).getValueCoder();
+        return valueCoder instanceof KvCoder && ((KvCoder<?, ?>) valueCoder).getValueCoder() instanceof IterableCoder;
+    }
+
+    /**
+     * Encodes a grouped element of a coder for which {@link #isChunkable}
+     * holds into its keyed frame, preceded by chunk frames if its values
+     * take more than the given number of bytes. Chunking is disabled by a
+     * chunk size of zero.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> List<byte[]> encodeChunked(
+            @Nonnull WindowedValue<KV<K, Iterable<V>>> value,
+            @Nonnull Coder outputCoder,
+            int chunkSize
+    ) {
+        WindowedValue.FullWindowedValueCoder<KV<K, Iterable<V>>> fullCoder =
+                (WindowedValue.FullWindowedValueCoder<KV<K, Iterable<V>>>) outputCoder;
+        KvCoder<K, Iterable<V>> kvCoder = (KvCoder<K, Iterable<V>>) fullCoder.getValueCoder();
+        Codecs.Codec<V> elementCodec = Codecs.forCoder(((IterableCoder<V>) kvCoder.getValueCoder()).getElemCoder());
+        K key = value.getValue().getKey();
+        Group group = new Group(Utils.getKeyedFrame(null, key, kvCoder.getKeyCoder()), chunkSize);
+        try {
+            for (V element : value.getValue().getValue()) {
+                elementCodec.encode(element, group.values, false);
+                group.added();
+            }
+        } catch (IOException e) {
+            throw rethrow(e);
+        }
+        return group.toKeyedFrames(value.getTimestamp(), value.getWindows(), value.getPane(), fullCoder.getWindowCoder());
+    }
+
+    /**
+     * Decodes the element of a keyed frame preceded by the given chunk
+     * frames of its key. Its iterable decodes the values of the chunks and
+     * of the frame lazily, each time it's iterated, holding on to the
+     * encoded frames only.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> WindowedValue<KV<K, Iterable<V>>> decodeChunked(
+            @Nonnull List<byte[]> chunkFrames,
+            @Nonnull byte[] keyedFrame,
+            @Nonnull Coder coder
+    ) {
+        WindowedValue.FullWindowedValueCoder<KV<K, Iterable<V>>> fullCoder =
+                (WindowedValue.FullWindowedValueCoder<KV<K, Iterable<V>>>) coder;
+        KvCoder<K, Iterable<V>> kvCoder = (KvCoder<K, Iterable<V>>) fullCoder.getValueCoder();
+        Codecs.KeyedWindowedValueCodec<K, Iterable<V>> codec =
+                (Codecs.KeyedWindowedValueCodec<K, Iterable<V>>) Codecs.forCoder(coder);
+        Codecs.Codec<V> elementCodec = Codecs.forCoder(((IterableCoder<V>) kvCoder.getValueCoder()).getElemCoder());
+
+        int segmentCount = chunkFrames.size() + 1;
+        byte[][] segments = new byte[segmentCount][];
+        int[] offsets = new int[segmentCount];
+        int[] counts = new int[segmentCount];
+        CodecBuffers.InputBuffer buffer = CodecBuffers.input(keyedFrame, 0, 0);
+        try {
+            for (int i = 0; i < chunkFrames.size(); i++) {
+                wrapPayload(chunkFrames.get(i), buffer);
+                readSegment(buffer, segments, offsets, counts, i);
+            }
+            buffer.wrap(keyedFrame, Utils.KEYED_FRAME_HEADER_SIZE, Utils.getKeyLength(keyedFrame));
+            K key = codec.decodeKey(buffer);
+            wrapPayload(keyedFrame, buffer);
+            WindowedValue<KV<K, Iterable<V>>> windowing = codec.decodeWindowing(buffer);
+            readSegment(buffer, segments, offsets, counts, segmentCount - 1);
+            Iterable<V> values = new ChunkedIterable<>(segments, offsets, counts, elementCodec);
+            return windowing.withValue(KV.of(key, values));
+        } catch (IOException e) {
+            throw rethrow(e);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Sets the buffer to read the payload of a keyed frame, decompressed if
+     * it's compressed.
+     */
+    private static void wrapPayload(byte[] keyedFrame, CodecBuffers.InputBuffer buffer) {
+        int offset = Utils.KEYED_FRAME_HEADER_SIZE + Utils.getKeyLength(keyedFrame);
+        byte[] payload = keyedFrame;
+        if (Utils.isPayloadCompressed(keyedFrame)) {
+            payload = Utils.decompressPayload(keyedFrame, offset);
+            offset = 0;
+        }
+        buffer.wrap(payload, offset, payload.length - offset);
+    }
+
+    private static void readSegment(CodecBuffers.InputBuffer buffer, byte[][] segments, int[] offsets, int[] counts, int i)
+            throws IOException {
+        counts[i] = buffer.readInt();
+        segments[i] = buffer.array();
+        offsets[i] = buffer.position();
+    }
+
+    /**
+     * Reads the windowing of keyed frames and locates their encoded values.
+     * Not thread safe.
+     */
+    public static final class FrameReader {
+
+        private final Codecs.KeyedWindowedValueCodec<?, ?> codec;
+
+        private byte[] valueBytes;
+        private int valueOffset;
+
+        /**
+         * Creates a reader of frames of the given input coder, for which
+         * {@link #canGroup} must hold.
+         */
+        public FrameReader(@Nonnull Coder inputCoder) {
+            this.codec = (Codecs.KeyedWindowedValueCodec<?, ?>) Codecs.of(inputCoder);
+        }
+
+        /**
+         * Decodes the timestamp, windows and pane of a keyed frame, returned
+         * as a windowed value without a value. The frame's encoded value is
+         * then the one {@link Group#add} copies, until the next frame is read.
+         */
+        public WindowedValue<?> read(@Nonnull byte[] keyedFrame) {
+            CodecBuffers.InputBuffer buffer = CodecBuffers.input(keyedFrame, 0, 0);
+            try {
+                wrapPayload(keyedFrame, buffer);
+                WindowedValue<?> windowing = codec.decodeWindowing(buffer);
+                valueBytes = buffer.array();
+                valueOffset = buffer.position();
+                return windowing;
+            } catch (IOException e) {
+                throw rethrow(e);
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    /**
+     * The encoded values of a key in a window, with the timestamp of their
+     * output. Not thread safe.
+     */
+    public static final class Group {
+
+        private final byte[] keyHeader;
+        private final int chunkSize;
+        private final CodecBuffers.OutputBuffer values = new CodecBuffers.OutputBuffer(INITIAL_GROUP_CAPACITY);
+        private int count;
+        private int size;
+        private List<byte[]> chunkFrames;
+        private Instant timestamp;
+
+        /**
+         * Creates an empty group of the key of the given keyed frame, whose
+         * values get split into chunks of the given size in bytes, unless
+         * it's zero.
+         */
+        public Group(@Nonnull byte[] keyedFrame, int chunkSize) {
+            this.keyHeader = Utils.copyKeyHeader(keyedFrame);
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * Adds the value of the frame last read by the given reader, which
+         * goes to the output at the given timestamp, combined with those of
+         * the values already in the group.
+         */
+        public void add(@Nonnull FrameReader reader, @Nonnull Instant outputTimestamp, @Nonnull TimestampCombiner combiner) {
+            add(reader);
+            timestamp = timestamp == null ? outputTimestamp : combiner.combine(timestamp, outputTimestamp);
+        }
+
+        /**
+         * Adds the value of the frame last read by the given reader, for
+         * groups whose output timestamp is given when they are encoded.
+         */
+        public void add(@Nonnull FrameReader reader) {
+            values.write(reader.valueBytes, reader.valueOffset, reader.valueBytes.length - reader.valueOffset);
+            added();
+        }
+
+        /**
+         * Returns the number of values added to the group.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the keyed frames of the group's {@code KV<K, Iterable<V>>},
+         * as the only firing of the given window: its chunk frames, if any,
+         * followed by the frame of the element.
+         */
+        public List<byte[]> toKeyedFrames(@Nonnull BoundedWindow window, @Nonnull Coder<? extends BoundedWindow> windowCoder) {
+            return toKeyedFrames(timestamp, Collections.singleton(window), PaneInfo.ON_TIME_AND_ONLY_FIRING, windowCoder);
+        }
+
+        private void added() {
+            count++;
+            size++;
+            if (chunkSize > 0 && values.size() >= chunkSize) {
+                CodecBuffers.OutputBuffer buffer = CodecBuffers.output();
+                buffer.write(keyHeader, 0, keyHeader.length);
+                buffer.writeInt(count);
+                values.copyTo(buffer);
+                byte[] chunkFrame = buffer.toByteArray();
+                Utils.markChunkFrame(chunkFrame);
+                if (chunkFrames == null) {
+                    chunkFrames = new ArrayList<>();
+                }
+                chunkFrames.add(chunkFrame);
+                values.reset();
+                count = 0;
+            }
+        }
+
+        /**
+         * Returns the keyed frames of the group's {@code KV<K, Iterable<V>>}
+         * with the given timestamp, windows and pane: its chunk frames, if
+         * any, followed by the frame of the element.
+         */
+        public List<byte[]> toKeyedFrames(
+                @Nonnull Instant timestamp,
+                @Nonnull Collection<? extends BoundedWindow> windows,
+                @Nonnull PaneInfo pane,
+                @Nonnull Coder<? extends BoundedWindow> windowCoder
+        ) {
+            List<byte[]> frames = chunkFrames == null ? new ArrayList<>(1) : chunkFrames;
+            try {
+                CodecBuffers.OutputBuffer buffer = CodecBuffers.output();
+                buffer.write(keyHeader, 0, keyHeader.length);
+                CompactWindowedValueCoder.encode(WindowedValue.of(this, timestamp, windows, pane), GROUP_WRITER, windowCoder, buffer);
+                frames.add(buffer.toByteArray());
+            } catch (IOException e) {
+                throw rethrow(e);
+            }
+            return frames;
+        }
+    }
+
+    /**
+     * Iterable of the values encoded in segments of arrays, decoding them
+     * each time it's iterated. Each iterator has a buffer of its own, so
+     * iterating doesn't interfere with other decoding going on in the
+     * thread.
+     */
+    private static final class ChunkedIterable<V> implements Iterable<V> {
+
+        private final byte[][] segments;
+        private final int[] offsets;
+        private final int[] counts;
+        private final Codecs.Codec<V> codec;
+
+        ChunkedIterable(byte[][] segments, int[] offsets, int[] counts, Codecs.Codec<V> codec) {
+            this.segments = segments;
+            this.offsets = offsets;
+            this.counts = counts;
+            this.codec = codec;
+        }
+
+        @Nonnull
+        @Override
+        public Iterator<V> iterator() {
+            return new Iterator<V>() {
+                private final CodecBuffers.InputBuffer buffer = new CodecBuffers.InputBuffer();
+                private int segment = -1;
+                private int remaining;
+
+                @Override
+                public boolean hasNext() {
+                    while (remaining == 0 && segment + 1 < segments.length) {
+                        segment++;
+                        remaining = counts[segment];
+                        buffer.wrap(segments[segment], offsets[segment], segments[segment].length - offsets[segment]);
+                    }
+                    return remaining > 0;
+                }
+
+                @Override
+                public V next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    remaining--;
+                    try {
+                        return codec.decode(buffer, false);
+                    } catch (IOException e) {
+                        throw rethrow(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("[");
+            for (V value : this) {
+                sb.append(sb.length() > 1 ? ", " : "").append(value);
+            }
+            return sb.append(']').toString();
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.hazelcast.jet.beam;
 
+import com.hazelcast.util.HashUtil;
 import org.apache.beam.runners.core.construction.ParDoTranslation;
 import org.apache.beam.runners.core.construction.TransformInputs;
 import org.apache.beam.sdk.Pipeline;
@@ -28,9 +29,9 @@ import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.PTransform;
 import org.apache.beam.sdk.transforms.ParDo;
 import org.apache.beam.sdk.transforms.reflect.DoFnSignatures;
-import org.apache.beam.sdk.util.CoderUtils;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.util.WindowedValue.WindowedValueCoder;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.PValue;
@@ -60,6 +61,12 @@ import static org.apache.beam.vendor.guava.v20_0.com.google.common.base.Precondi
 /** Various common methods used by the Jet based runner. */
 public class Utils {
 
+    static final int KEYED_FRAME_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int COMPRESSED_PAYLOAD_FLAG = 0x80000000; // in the key length field of keyed frames
+    private static final int BATCH_FLAG = 0x40000000; // in the key length field of keyed frames
+    private static final int CHUNK_FLAG = 0x20000000; // in the key length field of keyed frames
+    private static final int KEY_LENGTH_MASK = ~(COMPRESSED_PAYLOAD_FLAG | BATCH_FLAG | CHUNK_FLAG);
+
     public static String getTupleTagId(PValue value) {
         Map<TupleTag<?>, PValue> expansion = value.expand();
         return Iterables.getOnlyElement(expansion.keySet()).getId();
@@ -116,6 +123,17 @@ public class Utils {
         return false;
     }
 
+    /**
+     * Returns the coder of the keys of a keyed value coder, as checked by
+     * {@link #isKeyedValueCoder(Coder)}, null for any other coder.
+     */
+    static Coder getKeyCoder(Coder coder) {
+        if (coder instanceof WindowedValue.WindowedValueCoder) {
+            coder = ((WindowedValue.WindowedValueCoder) coder).getValueCoder();
+        }
+        return coder instanceof KvCoder ? ((KvCoder) coder).getKeyCoder() : null;
+    }
+
     static Coder getCoder(PCollection pCollection) {
         if (pCollection.getWindowingStrategy() == null) {
             return pCollection.getCoder();
@@ -124,6 +142,12 @@ public class Utils {
         }
     }
 
+    /**
+     * Returns the coder of the windowed values of a PCollection. Values
+     * encoded for Jet edges through {@link #encode} don't use it as it is:
+     * they are written in the compact format of {@link
+     * CompactWindowedValueCoder}, which takes its value and window coders.
+     */
     static <T> WindowedValueCoder<T> getWindowedValueCoder(PCollection<T> pCollection) {
         return WindowedValue.FullWindowedValueCoder.of(pCollection.getCoder(), pCollection.getWindowingStrategy().getWindowFn().windowCoder());
     }
@@ -171,7 +195,8 @@ public class Utils {
         try {
             DoFn<?, ?> doFn = ParDoTranslation.getDoFn(appliedTransform);
             if (DoFnSignatures.signatureForDoFn(doFn).processElement().isSplittable()) {
-                throw new IllegalStateException("Not expected to directly translate splittable DoFn, should have been overridden: " + doFn); //todo
+                // bounded ones get expanded by the runner's overrides
+                throw new UnsupportedOperationException("Unbounded splittable DoFns are currently not supported: " + doFn);
             }
             return doFn;
         } catch (IOException e) {
@@ -240,22 +265,328 @@ public class Utils {
         }
     }
 
+    /**
+     * Encodes a value with the given coder. Keyed windowed values (see {@link
+     * #isKeyedValueCoder(Coder)}) are encoded into a frame which has the
+     * encoded key and its hash as a header, ahead of the encoded windowed
+     * value:
+     * <pre>
+     *   | key hash (4 bytes) | key length (4 bytes) | key | windowed value |
+     * </pre>
+     * This way keyed edges can be partitioned and keyed processors can look
+     * up their per-key state without decoding the items. When the windowed
+     * value is in the compact format, the payload leaves out the key, it's
+     * in the header already, and has the value of the KV in the nested form,
+     * so processors grouping values can take them out as they are (see
+     * {@link KeyedFrameGrouping}).
+     */
     public static <T> byte[] encode(T value, Coder<T> coder) {
         try {
-            return CoderUtils.encodeToByteArray(coder, value);
+            CodecBuffers.OutputBuffer buffer = CodecBuffers.output();
+            if (coder instanceof WindowedValueCoder && isKeyedValueCoder(coder)) {
+                encodeKeyedFrame((WindowedValue<KV<?, ?>>) value, (WindowedValueCoder) coder, buffer);
+            } else {
+                encodeItem(value, coder, buffer);
+            }
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static void encodeKeyedFrame(
+            WindowedValue<KV<?, ?>> value,
+            WindowedValueCoder coder,
+            CodecBuffers.OutputBuffer buffer
+    ) throws IOException {
+        Codecs.Codec codec = Codecs.forCoder(coder);
+        if (codec instanceof Codecs.KeyedWindowedValueCodec) {
+            Codecs.KeyedWindowedValueCodec keyedCodec = (Codecs.KeyedWindowedValueCodec) codec;
+            buffer.skip(KEYED_FRAME_HEADER_SIZE);
+            keyedCodec.encodeKey(value.getValue().getKey(), buffer);
+            fillKeyHeader(buffer);
+            keyedCodec.encodePayload(value, buffer);
+        } else {
+            encodeKeyHeader(value.getValue().getKey(), getKeyCoder(coder), buffer);
+            encodeItem(value, coder, buffer);
+        }
+    }
+
+    private static void encodeKeyHeader(Object key, Coder keyCoder, CodecBuffers.OutputBuffer buffer) throws IOException {
+        buffer.skip(KEYED_FRAME_HEADER_SIZE);
+        Codecs.forCoder(keyCoder).encode(key, buffer, true);
+        fillKeyHeader(buffer);
+    }
+
+    /**
+     * Fills in the header of a keyed frame, which was skipped, once its key
+     * has been written.
+     */
+    private static void fillKeyHeader(CodecBuffers.OutputBuffer buffer) {
+        int keyLength = buffer.size() - KEYED_FRAME_HEADER_SIZE;
+        buffer.setInt(0, buffer.hash(KEYED_FRAME_HEADER_SIZE, keyLength));
+        buffer.setInt(Integer.BYTES, keyLength);
+    }
+
+    /**
+     * Items go through the codecs specialised for their coders, windowed
+     * values in the compact format of {@link CompactWindowedValueCoder},
+     * whatever the full coder of their PCollection is.
+     */
+    private static void encodeItem(Object value, Coder coder, CodecBuffers.OutputBuffer buffer) throws IOException {
+        Codecs.forCoder(coder).encode(value, buffer, true);
+    }
+
+    private static Object decodeItem(Coder coder, CodecBuffers.InputBuffer buffer) throws IOException {
+        return Codecs.forCoder(coder).decode(buffer, true);
+    }
+
+    /**
+     * Decodes an item received by a processor. Items passed between fused
+     * processors are not encoded, those are returned as they are.
+     */
+    public static <T> WindowedValue<T> decodeWindowedValue(Object item, Coder coder) {
+        if (item instanceof WindowedValue) {
+            return (WindowedValue<T>) item;
+        }
+        byte[] bytes = (byte[]) item;
+        if (isKeyedValueCoder(coder)) {
+            return decodeKeyedFrame(bytes, coder);
+        }
+        CodecBuffers.InputBuffer buffer = CodecBuffers.input(bytes, 0, bytes.length);
+        try {
+            return (WindowedValue<T>) decodeItem(coder, buffer);
         } catch (IOException e) {
             throw rethrow(e);
+        } finally {
+            buffer.release();
         }
     }
 
-    public static <T> WindowedValue<T> decodeWindowedValue(byte[] item, Coder coder) {
+    private static <T> WindowedValue<T> decodeKeyedFrame(byte[] bytes, Coder coder) {
+        int keyLength = getKeyLength(bytes);
+        int offset = KEYED_FRAME_HEADER_SIZE + keyLength;
+        byte[] payload = bytes;
+        if (isPayloadCompressed(bytes)) {
+            payload = decompressPayload(bytes, offset);
+            offset = 0;
+        }
+        Codecs.Codec codec = Codecs.forCoder(coder);
+        CodecBuffers.InputBuffer buffer = CodecBuffers.input(payload, offset, payload.length - offset);
         try {
-            return (WindowedValue<T>) CoderUtils.decodeFromByteArray(coder, item);
+            if (codec instanceof Codecs.KeyedWindowedValueCodec) {
+                Codecs.KeyedWindowedValueCodec keyedCodec = (Codecs.KeyedWindowedValueCodec) codec;
+                buffer.wrap(bytes, KEYED_FRAME_HEADER_SIZE, keyLength);
+                Object key = keyedCodec.decodeKey(buffer);
+                buffer.wrap(payload, offset, payload.length - offset);
+                return keyedCodec.decodePayload(key, buffer);
+            }
+            return (WindowedValue<T>) decodeItem(coder, buffer);
         } catch (IOException e) {
             throw rethrow(e);
+        } finally {
+            buffer.release();
         }
     }
 
+    /**
+     * Returns true if items of a PCollection with the given coder have to be
+     * encoded when emitted to a Jet edge. Only keyed PCollections travel on
+     * distributed edges (see {@link DAGBuilder}), they always get encoded
+     * into keyed frames, which are needed for partitioning them. All other
+     * edges are local, so the windowed values are passed over them as they
+     * are and the coder work and byte array allocations are saved.
+     */
+    public static boolean isEncodedOnEdges(Coder coder) {
+        return isKeyedValueCoder(coder);
+    }
+
+    /**
+     * Returns the encoded key of an item received by a keyed processor. When
+     * the item is a keyed frame (see {@link #encode(Object, Coder)}), the key
+     * and its hash are just copied out of its header, otherwise (the item
+     * comes from a fused processor) the already decoded key gets encoded.
+     */
+    public static <K> ByteArrayKey getEncodedKey(Object item, K key, Coder<K> keyCoder) {
+        if (item instanceof byte[]) {
+            byte[] bytes = (byte[]) item;
+            int from = KEYED_FRAME_HEADER_SIZE;
+            return new ByteArrayKey(Arrays.copyOfRange(bytes, from, from + getKeyLength(bytes)), getKeyHash(bytes));
+        }
+        return new ByteArrayKey(encode(key, keyCoder));
+    }
+
+    /**
+     * Returns the keyed frame of an item received by a keyed processor, to
+     * look up its per-key state with (see {@link ByteKeyMap}). Items coming
+     * from fused processors aren't encoded, for those a frame with only the
+     * key gets encoded.
+     */
+    public static <K> byte[] getKeyedFrame(Object item, K key, Coder<K> keyCoder) {
+        if (item instanceof byte[]) {
+            return (byte[]) item;
+        }
+        try {
+            CodecBuffers.OutputBuffer buffer = CodecBuffers.output();
+            encodeKeyHeader(key, keyCoder, buffer);
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Returns the hash of the key of a keyed frame, as written in its header.
+     */
+    static int getKeyHash(byte[] keyedFrame) {
+        return readInt(keyedFrame, 0);
+    }
+
+    static int getKeyLength(byte[] keyedFrame) {
+        return readInt(keyedFrame, Integer.BYTES) & KEY_LENGTH_MASK;
+    }
+
+    /**
+     * Returns a copy of the header and the key of a keyed frame, without any
+     * flags, to start new frames of the same key with.
+     */
+    static byte[] copyKeyHeader(byte[] keyedFrame) {
+        int keyLength = getKeyLength(keyedFrame);
+        byte[] keyHeader = Arrays.copyOf(keyedFrame, KEYED_FRAME_HEADER_SIZE + keyLength);
+        writeInt(keyHeader, Integer.BYTES, keyLength);
+        return keyHeader;
+    }
+
+    /**
+     * Returns the partition a keyed frame belongs to, based on the key hash
+     * in its header.
+     */
+    public static int getPartition(byte[] keyedFrame, int partitionCount) {
+        return (getKeyHash(keyedFrame) & Integer.MAX_VALUE) % partitionCount;
+    }
+
+    /**
+     * Packs keyed frames of the same partition into a single batch frame,
+     * which has the header of the first one, with no key and flagged as a
+     * batch, followed by the number of frames and the length prefixed
+     * frames themselves:
+     * <pre>
+     *   | key hash (4 bytes) | flags (4 bytes) | count (4 bytes) | length (4 bytes) | frame | length | frame | ...
+     * </pre>
+     * Batch frames are partitioned like the frames in them, so they get to
+     * the same processor the frames would have got to one by one.
+     */
+    public static byte[] packKeyedFrames(List<byte[]> keyedFrames) {
+        int length = KEYED_FRAME_HEADER_SIZE + Integer.BYTES;
+        for (byte[] frame : keyedFrames) {
+            length += Integer.BYTES + frame.length;
+        }
+        byte[] batch = new byte[length];
+        writeInt(batch, 0, getKeyHash(keyedFrames.get(0)));
+        writeInt(batch, Integer.BYTES, BATCH_FLAG);
+        writeInt(batch, KEYED_FRAME_HEADER_SIZE, keyedFrames.size());
+        int offset = KEYED_FRAME_HEADER_SIZE + Integer.BYTES;
+        for (byte[] frame : keyedFrames) {
+            writeInt(batch, offset, frame.length);
+            System.arraycopy(frame, 0, batch, offset + Integer.BYTES, frame.length);
+            offset += Integer.BYTES + frame.length;
+        }
+        return batch;
+    }
+
+    public static boolean isBatchFrame(byte[] keyedFrame) {
+        return (readInt(keyedFrame, Integer.BYTES) & BATCH_FLAG) != 0;
+    }
+
+    /**
+     * Returns the keyed frames packed into a batch frame by {@link
+     * #packKeyedFrames(List)}.
+     */
+    public static byte[][] unpackKeyedFrames(byte[] batchFrame) {
+        byte[][] frames = new byte[readInt(batchFrame, KEYED_FRAME_HEADER_SIZE)][];
+        int offset = KEYED_FRAME_HEADER_SIZE + Integer.BYTES;
+        for (int i = 0; i < frames.length; i++) {
+            int length = readInt(batchFrame, offset);
+            offset += Integer.BYTES;
+            frames[i] = Arrays.copyOfRange(batchFrame, offset, offset + length);
+            offset += length;
+        }
+        return frames;
+    }
+
+    /**
+     * Tells if a keyed frame is a chunk of the values of a grouped element,
+     * to be followed by the frame of the element itself (see {@link
+     * KeyedFrameGrouping}).
+     */
+    public static boolean isChunkFrame(byte[] keyedFrame) {
+        return (readInt(keyedFrame, Integer.BYTES) & CHUNK_FLAG) != 0;
+    }
+
+    static void markChunkFrame(byte[] keyedFrame) {
+        writeInt(keyedFrame, Integer.BYTES, readInt(keyedFrame, Integer.BYTES) | CHUNK_FLAG);
+    }
+
+    static boolean isPayloadCompressed(byte[] keyedFrame) {
+        return (readInt(keyedFrame, Integer.BYTES) & COMPRESSED_PAYLOAD_FLAG) != 0;
+    }
+
+    /**
+     * Compresses the payload of a keyed frame (see {@link #encode(Object,
+     * Coder)}) if it's at least {@code threshold} bytes long, using {@link
+     * BlockCompressor}. The header and the key are left as they are, so the
+     * frame can still be partitioned and its key looked up without
+     * decompressing it. A flag in the key length field marks the payload as
+     * compressed, it's then preceded by its uncompressed length. Returns the
+     * frame itself if it's not worth compressing.
+     */
+    public static byte[] compressKeyedFrame(byte[] keyedFrame, int threshold) {
+        int payloadOffset = KEYED_FRAME_HEADER_SIZE + getKeyLength(keyedFrame);
+        int payloadLength = keyedFrame.length - payloadOffset;
+        if (payloadLength < threshold || isPayloadCompressed(keyedFrame)) {
+            return keyedFrame;
+        }
+        int compressedOffset = payloadOffset + Integer.BYTES;
+        byte[] buffer = CodecBuffers.scratch(compressedOffset + BlockCompressor.maxCompressedLength(payloadLength));
+        int compressedLength = BlockCompressor.compress(keyedFrame, payloadOffset, payloadLength, buffer, compressedOffset);
+        if (compressedOffset + compressedLength >= keyedFrame.length) {
+            return keyedFrame;
+        }
+        System.arraycopy(keyedFrame, 0, buffer, 0, payloadOffset);
+        writeInt(buffer, Integer.BYTES, readInt(keyedFrame, Integer.BYTES) | COMPRESSED_PAYLOAD_FLAG);
+        writeInt(buffer, payloadOffset, payloadLength);
+        return Arrays.copyOf(buffer, compressedOffset + compressedLength);
+    }
+
+    /**
+     * Returns the uncompressed payload of a keyed frame, the payload of which
+     * starts at the given offset and is compressed.
+     */
+    static byte[] decompressPayload(byte[] keyedFrame, int payloadOffset) {
+        int compressedOffset = payloadOffset + Integer.BYTES;
+        byte[] payload = new byte[readInt(keyedFrame, payloadOffset)];
+        BlockCompressor.decompress(keyedFrame, compressedOffset, keyedFrame.length - compressedOffset, payload);
+        return payload;
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24
+                | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8
+                | bytes[offset + 3] & 0xFF;
+    }
+
+    static int hash(byte[] bytes, int offset, int length) {
+        return HashUtil.MurmurHash3_x86_32(bytes, offset, length);
+    }
+
     public static WindowedValue.FullWindowedValueCoder deriveIterableValueCoder(WindowedValue.FullWindowedValueCoder elementCoder) {
         return WindowedValue.FullWindowedValueCoder.of(
                 ListCoder.of(elementCoder.getValueCoder()),
@@ -274,6 +605,11 @@ public class Utils {
             this.value = value;
         }
 
+        ByteArrayKey(@Nonnull byte[] value, int hash) {
+            this.value = value;
+            this.hash = hash;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) {
@@ -289,7 +625,7 @@ public class Utils {
         @Override
         public int hashCode() {
             if (hash == 0) {
-                hash = Arrays.hashCode(value);
+                hash = Utils.hash(value, 0, value.length);
             }
             return hash;
         }
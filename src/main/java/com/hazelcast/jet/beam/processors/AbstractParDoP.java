@@ -17,6 +17,7 @@
 package com.hazelcast.jet.beam.processors;
 
 import com.hazelcast.jet.beam.DAGBuilder;
+import com.hazelcast.jet.beam.JetPipelineOptions;
 import com.hazelcast.jet.beam.Utils;
 import com.hazelcast.jet.beam.metrics.JetMetricsContainer;
 import com.hazelcast.jet.core.Edge;
@@ -33,12 +34,16 @@ import org.apache.beam.runners.core.SideInputHandler;
 import org.apache.beam.runners.core.SideInputReader;
 import org.apache.beam.runners.core.construction.SerializablePipelineOptions;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.metrics.Gauge;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricsContainer;
 import org.apache.beam.sdk.metrics.MetricsEnvironment;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.DoFnSchemaInformation;
 import org.apache.beam.sdk.transforms.reflect.DoFnInvoker;
 import org.apache.beam.sdk.transforms.reflect.DoFnInvokers;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
 import org.apache.beam.sdk.util.WindowedValue;
 import org.apache.beam.sdk.values.PCollectionView;
 import org.apache.beam.sdk.values.TupleTag;
@@ -57,6 +62,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -75,6 +81,7 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
     private final Coder<InputT> inputValueCoder;
     private final Map<TupleTag<?>, Coder<?>> outputValueCoders;
     private final Map<Integer, PCollectionView<?>> ordinalToSideInput;
+    private final boolean cooperative;
     private final String ownerId;
     private final String stepId;
 
@@ -89,6 +96,12 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
     private SideInputReader sideInputReader;
     private Outbox outbox;
 
+    private int maxBundleSize;
+    private long maxBundleTimeNanos;
+    private boolean bundleStarted;
+    private int bundleSize;
+    private long bundleStartNanos;
+
     AbstractParDoP(
             DoFn<InputT, OutputT> doFn,
             WindowingStrategy<?, ?> windowingStrategy,
@@ -102,6 +115,7 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
             Coder<InputT> inputValueCoder,
             Map<TupleTag<?>, Coder<?>> outputValueCoders,
             Map<Integer, PCollectionView<?>> ordinalToSideInput,
+            boolean cooperative,
             String ownerId,
             String stepId
     ) {
@@ -123,6 +137,7 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
         this.inputValueCoder = inputValueCoder;
         this.outputValueCoders = outputValueCoders;
         this.ordinalToSideInput = ordinalToSideInput;
+        this.cooperative = cooperative;
         this.ownerId = ownerId;
         this.stepId = stepId;
     }
@@ -131,8 +146,11 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
     public void init(@Nonnull Outbox outbox, @Nonnull Context context) {
         this.outbox = outbox;
         metricsContainer = new JetMetricsContainer(stepId, ownerId, context);
-        MetricsEnvironment.setCurrentContainer(metricsContainer);
-        assert !isCooperative(); //todo: previous line is correct only if the processor is non-cooperative
+        useMetricsContainer();
+
+        JetPipelineOptions options = pipelineOptions.get().as(JetPipelineOptions.class);
+        maxBundleSize = options.getJetMaxBundleSize();
+        maxBundleTimeNanos = TimeUnit.MILLISECONDS.toNanos(options.getJetMaxBundleTimeMillis());
 
         doFnInvoker = DoFnInvokers.invokerFor(doFn);
         doFnInvoker.invokeSetup();
@@ -145,7 +163,14 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
             sideInputReader = sideInputHandler;
         }
 
-        outputManager = new JetOutputManager(outbox, outputCoders, outputCollToOrdinals);
+        outputManager = new JetOutputManager(
+                outbox,
+                outputCoders,
+                outputCollToOrdinals,
+                options.getJetOutputBufferMaxElements(),
+                options.getJetOutputBufferMaxBytes(),
+                metricsContainer
+        );
 
         doFnRunner = getDoFnRunner(
                 pipelineOptions.get(),
@@ -174,20 +199,29 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
             DoFnSchemaInformation doFnSchemaInformation
     );
 
+    /**
+     * Non-cooperative by default, because the DoFn might do blocking I/O.
+     * DoFns the user has declared CPU-only (see {@link
+     * com.hazelcast.jet.beam.JetPipelineOptions#getJetCooperativeTransforms()})
+     * share Jet's cooperative threads, which is why the metrics container
+     * has to be re-established on each call.
+     */
     @Override
     public boolean isCooperative() {
-        return false; //todo: re-examine later, we should be non-cooperative for doFns that do I/O, can be cooperative for others
+        return cooperative;
     }
 
     @Override
     public void close() {
+        useMetricsContainer();
         doFnInvoker.invokeTeardown();
     }
 
     @Override
     public void process(int ordinal, @Nonnull Inbox inbox) {
-        if (!outputManager.tryFlush()) {
-            // don't process more items until outputManager is empty
+        startCall();
+        if (!outputManager.tryFlushToBudget()) {
+            // don't process more items until the output is within its budget, Jet calls again with the same inbox
             return;
         }
         PCollectionView<?> sideInputView = ordinalToSideInput.get(ordinal);
@@ -203,31 +237,76 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
     }
 
     private void processSideInput(PCollectionView<?> sideInputView, Inbox inbox) {
-        for (byte[] value; (value = (byte[]) inbox.poll()) != null; ) {
+        for (Object value; (value = inbox.poll()) != null; ) {
             Coder<?> sideInputCoder = sideInputCoders.get(sideInputView);
             WindowedValue<Iterable<?>> windowedValue = Utils.decodeWindowedValue(value, sideInputCoder);
             sideInputHandler.addSideInputValue(sideInputView, windowedValue);
         }
     }
 
+    /**
+     * Processes the items of the inbox in the current bundle, or in new ones
+     * if they don't fit. A bundle isn't finished when the inbox is drained,
+     * it can span several calls, until either the max bundle size or the max
+     * bundle time is reached, or a watermark arrives, or the input completes.
+     */
     private void processNonBufferedRegularItems(Inbox inbox) {
-        startRunnerBundle(doFnRunner);
-        for (byte[] value; (value = (byte[]) inbox.poll()) != null; ) {
+        for (Object value; (value = inbox.poll()) != null; ) {
+            if (!bundleStarted) {
+                startBundle();
+            }
             WindowedValue<InputT> windowedValue = Utils.decodeWindowedValue(value, inputCoder);
-            processElementWithRunner(doFnRunner, windowedValue);
-            if (!outputManager.tryFlush()) {
+            processElementWithRunner(doFnRunner, value, windowedValue);
+            if (++bundleSize >= maxBundleSize || isBundleExpired()) {
+                finishBundle();
+            }
+            // finishBundle can also add items to outputManager, they will be flushed in tryProcess() or complete()
+            if (!outputManager.tryFlushToBudget()) {
                 break;
             }
         }
+    }
+
+    private void startBundle() {
+        startRunnerBundle(doFnRunner);
+        bundleStarted = true;
+        bundleSize = 0;
+        bundleStartNanos = System.nanoTime();
+    }
+
+    private void finishBundle() {
         finishRunnerBundle(doFnRunner);
-        // finishBundle can also add items to outputManager, they will be flushed in tryProcess() or complete()
+        bundleStarted = false;
+    }
+
+    private boolean isBundleExpired() {
+        return System.nanoTime() - bundleStartNanos >= maxBundleTimeNanos;
+    }
+
+    /**
+     * Finishes the current bundle, if there is one, and flushes its output,
+     * returns false if the output didn't fit into the outbox, in which case
+     * it has to be called again.
+     */
+    boolean tryFinishBundle() {
+        if (!outputManager.tryFlush()) {
+            return false;
+        }
+        if (bundleStarted) {
+            finishBundle();
+        }
+        return outputManager.tryFlush();
     }
 
     protected void startRunnerBundle(DoFnRunner<InputT, OutputT> runner) {
         runner.startBundle();
     }
 
-    protected void processElementWithRunner(DoFnRunner<InputT, OutputT> runner, WindowedValue<InputT> windowedValue) {
+    /**
+     * Processes an element, the item it was received as is also given, in
+     * case it's an encoded keyed frame.
+     */
+    protected void processElementWithRunner(DoFnRunner<InputT, OutputT> runner, Object item, WindowedValue<InputT> windowedValue) {
         runner.processElement(windowedValue);
     }
 
@@ -236,19 +315,24 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
     }
 
     private void processBufferedRegularItems(Inbox inbox) {
-        for (byte[] value; (value = (byte[]) inbox.poll()) != null; ) {
+        for (Object value; (value = inbox.poll()) != null; ) {
             bufferedItems.add(value);
         }
     }
 
     @Override
     public boolean tryProcess() {
-        return outputManager.tryFlush();
+        startCall();
+        if (!outputManager.tryFlush()) {
+            return false;
+        }
+        return !bundleStarted || !isBundleExpired() || tryFinishBundle();
     }
 
     @Override
     public boolean tryProcessWatermark(@Nonnull Watermark watermark) {
-        return outbox.offer(watermark);
+        startCall();
+        return tryFinishBundle() && flushTimers(watermark.timestamp()) && outbox.offer(watermark);
     }
 
     @Override
@@ -256,11 +340,15 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
         if (ordinalToSideInput.get(ordinal) == null) {
             return true; // ignore non-side-input edges
         }
+        startCall();
         completedSideInputs.add(ordinal);
         if (completedSideInputs.size() != ordinalToSideInput.size()) {
             // there are more side inputs to complete
             return true;
         }
+        if (!outputManager.tryFlush()) {
+            return false;
+        }
         processNonBufferedRegularItems(bufferedItems);
         if (bufferedItems.isEmpty()) {
             bufferedItems = null;
@@ -271,67 +359,203 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
 
     @Override
     public boolean complete() {
-        boolean successful = outputManager.tryFlush();
+        startCall();
+        boolean successful = tryFinishBundle() && flushTimers(BoundedWindow.TIMESTAMP_MAX_VALUE.getMillis());
         if (successful) {
             metricsContainer.flush();
-            MetricsEnvironment.setCurrentContainer(null);  //todo: this is correct only as long as the processor is non-cooperative
+            MetricsEnvironment.setCurrentContainer(null);
         }
         return successful;
     }
 
     /**
-     * An output manager that stores the output in an ArrayList, one for each
+     * Fires the timers which are due at the given input watermark, returns
+     * false if their output didn't fit into the outbox, in which case it
+     * has to be called again.
+     */
+    protected boolean flushTimers(long watermark) {
+        return true;
+    }
+
+    /**
+     * To be called first thing each time this processor is called into.
+     */
+    private void startCall() {
+        useMetricsContainer();
+        outputManager.reset();
+    }
+
+    /**
+     * Makes the metrics container of this processor the current one. Needs to
+     * be done each time this processor is called into, because fused and
+     * cooperative processors share their thread with other processors.
+     */
+    void useMetricsContainer() {
+        MetricsEnvironment.setCurrentContainer(metricsContainer);
+    }
+
+    /**
+     * An output manager that stores the output in a queue, one for each
      * output ordinal, and a way to drain to outbox ({@link #tryFlush()}).
+     *
+     * <p>The queues are bounded by a budget of elements and of bytes (only
+     * items which are encoded count towards the latter). When an output
+     * exceeds it, as many items as the outbox accepts are drained right
+     * away. Once the outbox has refused an item, nothing more is offered to
+     * it until the processor is called again ({@link #reset()}), as Jet
+     * requires. While the output is over the budget the processor takes no
+     * more input ({@link #tryFlushToBudget()}), it returns and Jet calls it
+     * again once the outbox has room. So the budget can only be exceeded by
+     * the outputs of a single DoFn invocation.
+     *
+     * <p>The number and the size of the buffered items are reported as the
+     * bufferedElements and bufferedBytes gauges, the highest size as
+     * peakBufferedBytes. The gauges are updated when the buffer is flushed.
      */
     static class JetOutputManager implements DoFnRunners.OutputManager {
 
         private final Outbox outbox;
         private final Map<TupleTag<?>, Coder<?>> outputCoders;
         private final Map<TupleTag<?>, int[]> outputCollToOrdinals;
-        private final List<Object>[] outputBuckets;
-
-        // the flush position to continue flushing to outbox
-        private int currentBucket, currentItem;
+        private final Deque<Object>[] outputBuckets;
+        private final boolean encodeOutput;
+        private final int maxBufferedElements;
+        private final long maxBufferedBytes;
+        private final Gauge bufferedElementsGauge;
+        private final Gauge bufferedBytesGauge;
+        private final Gauge peakBufferedBytesGauge;
+
+        // the bucket to continue flushing to outbox from, its head is the item the outbox last refused
+        private int currentBucket;
+        private int bufferedElements;
+        private long bufferedBytes;
+        private long peakBufferedBytes;
+        private long reportedBufferedElements = -1;
+        private long reportedBufferedBytes = -1;
+        private long reportedPeakBufferedBytes = -1;
+        private boolean refused; // by the outbox, in the current call of the processor
 
         @SuppressWarnings("unchecked")
-        JetOutputManager(Outbox outbox, Map<TupleTag<?>, Coder<?>> outputCoders, Map<TupleTag<?>, int[]> outputCollToOrdinals) {
+        JetOutputManager(
+                Outbox outbox,
+                Map<TupleTag<?>, Coder<?>> outputCoders,
+                Map<TupleTag<?>, int[]> outputCollToOrdinals,
+                int maxBufferedElements,
+                long maxBufferedBytes,
+                MetricsContainer metricsContainer
+        ) {
             this.outbox = outbox;
             this.outputCoders = outputCoders;
             this.outputCollToOrdinals = outputCollToOrdinals;
             assert !outputCollToOrdinals.isEmpty();
             int maxOrdinal = outputCollToOrdinals.values().stream().flatMapToInt(IntStream::of).max().orElse(-1);
-            outputBuckets = new List[maxOrdinal + 1];
-            Arrays.setAll(outputBuckets, i -> new ArrayList<>());
+            outputBuckets = new Deque[maxOrdinal + 1];
+            Arrays.setAll(outputBuckets, i -> new ArrayDeque<>());
+            encodeOutput = !FusedP.isFusedOutbox(outbox);
+            this.maxBufferedElements = maxBufferedElements;
+            this.maxBufferedBytes = maxBufferedBytes;
+            this.bufferedElementsGauge = metricsContainer.getGauge(MetricName.named(JetOutputManager.class, "bufferedElements"));
+            this.bufferedBytesGauge = metricsContainer.getGauge(MetricName.named(JetOutputManager.class, "bufferedBytes"));
+            this.peakBufferedBytesGauge = metricsContainer.getGauge(MetricName.named(JetOutputManager.class, "peakBufferedBytes"));
+        }
+
+        /**
+         * Allows offering to the outbox again, to be called each time the
+         * processor is called into.
+         */
+        void reset() {
+            refused = false;
         }
 
         @Override
         public <T> void output(TupleTag<T> tag, WindowedValue<T> outputValue) {
-            assert currentBucket == 0 && currentItem == 0 : "adding output while flushing";
+            int[] ordinals = outputCollToOrdinals.get(tag);
+            if (ordinals.length == 0) {
+                return; // no consumers, no need to encode it
+            }
             Coder coder = outputCoders.get(tag);
-            byte[] output = Utils.encode(outputValue, coder);
-            for (int ordinal : outputCollToOrdinals.get(tag)) {
+            Object output = encodeOutput && Utils.isEncodedOnEdges(coder) ? Utils.encode(outputValue, coder) : outputValue;
+            for (int ordinal : ordinals) {
                 outputBuckets[ordinal].add(output);
+                bufferedElements++;
+                bufferedBytes += sizeOf(output);
+            }
+            if (bufferedBytes > peakBufferedBytes) {
+                peakBufferedBytes = bufferedBytes;
+            }
+            if (isOverBudget()) {
+                drain();
             }
         }
 
+        /**
+         * Offers the buffered items to the outbox, returns true if all of
+         * them have been taken.
+         */
         @CheckReturnValue
         boolean tryFlush() {
-            for (; currentBucket < outputBuckets.length; currentBucket++) {
-                List<Object> bucket = outputBuckets[currentBucket];
-                for (; currentItem < bucket.size(); currentItem++) {
-                    if (!outbox.offer(currentBucket, bucket.get(currentItem))) {
-                        return false;
-                    }
-                }
-                bucket.clear();
-                currentItem = 0;
+            drain();
+            reportGauges();
+            return bufferedElements == 0;
+        }
+
+        /**
+         * Offers the buffered items to the outbox, returns true if the ones
+         * it didn't take are within the budget, so more input can be
+         * processed.
+         */
+        @CheckReturnValue
+        boolean tryFlushToBudget() {
+            drain();
+            reportGauges();
+            return !isOverBudget();
+        }
+
+        private void reportGauges() {
+            if (bufferedElements != reportedBufferedElements) {
+                bufferedElementsGauge.set(bufferedElements);
+                reportedBufferedElements = bufferedElements;
+            }
+            if (bufferedBytes != reportedBufferedBytes) {
+                bufferedBytesGauge.set(bufferedBytes);
+                reportedBufferedBytes = bufferedBytes;
             }
-            currentBucket = 0;
-            int sum = 0;
-            for (List<Object> outputBucket : outputBuckets) {
-                sum += outputBucket.size();
+            if (peakBufferedBytes != reportedPeakBufferedBytes) {
+                peakBufferedBytesGauge.set(peakBufferedBytes);
+                reportedPeakBufferedBytes = peakBufferedBytes;
             }
-            return sum == 0;
+        }
+
+        private boolean isOverBudget() {
+            return bufferedElements > maxBufferedElements || bufferedBytes > maxBufferedBytes;
+        }
+
+        /**
+         * Offers the buffered items to the outbox until it refuses one, unless
+         * it has refused one already in the current call.
+         */
+        private void drain() {
+            for (int emptyBuckets = 0; !refused && bufferedElements > 0 && emptyBuckets < outputBuckets.length; ) {
+                Deque<Object> bucket = outputBuckets[currentBucket];
+                Object item = bucket.peek();
+                if (item == null) {
+                    currentBucket = (currentBucket + 1) % outputBuckets.length;
+                    emptyBuckets++;
+                    continue;
+                }
+                if (!outbox.offer(currentBucket, item)) {
+                    refused = true;
+                    break;
+                }
+                bucket.remove();
+                bufferedElements--;
+                bufferedBytes -= sizeOf(item);
+                emptyBuckets = 0;
+            }
+        }
+
+        private static int sizeOf(Object item) {
+            return item instanceof byte[] ? ((byte[]) item).length : 0;
         }
     }
 
@@ -352,6 +576,7 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
         private final Coder<InputT> inputValueCoder;
         private final Map<TupleTag<?>, Coder<?>> outputValueCoders;
         private final List<PCollectionView<?>> sideInputs;
+        private final boolean cooperative;
 
         private final Map<Integer, PCollectionView<?>> ordinalToSideInput = new HashMap<>();
 
@@ -369,7 +594,8 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
                 Map<TupleTag<?>, Coder<?>> outputCoders,
                 Coder<InputT> inputValueCoder,
                 Map<TupleTag<?>, Coder<?>> outputValueCoders,
-                List<PCollectionView<?>> sideInputs
+                List<PCollectionView<?>> sideInputs,
+                boolean cooperative
         ) {
             this.stepId = stepId;
             this.ownerId = ownerId;
@@ -385,6 +611,7 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
             this.inputValueCoder = inputValueCoder;
             this.outputValueCoders = outputValueCoders;
             this.sideInputs = sideInputs;
+            this.cooperative = cooperative;
         }
 
         @Override
@@ -405,6 +632,7 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
                     inputValueCoder,
                     Collections.unmodifiableMap(outputValueCoders),
                     Collections.unmodifiableMap(ordinalToSideInput),
+                    cooperative,
                     ownerId,
                     stepId
             );
@@ -423,6 +651,7 @@ abstract class AbstractParDoP<InputT, OutputT> implements Processor {
                 Coder<InputT> inputValueCoder,
                 Map<TupleTag<?>, Coder<?>> outputValueCoders,
                 Map<Integer, PCollectionView<?>> ordinalToSideInput,
+                boolean cooperative,
                 String ownerId,
                 String stepId
         );
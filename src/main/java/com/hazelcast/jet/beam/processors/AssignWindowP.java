@@ -42,10 +42,13 @@ public class AssignWindowP<T> extends AbstractProcessor {
     @SuppressWarnings({"FieldCanBeLocal", "unused"})
     private final String ownerId; //do not remove, useful for debugging
 
-    private final ResettableSingletonTraverser<byte[]> traverser = new ResettableSingletonTraverser<>();
-    private final FlatMapper<byte[], byte[]> flatMapper;
+    private final ResettableSingletonTraverser<Object> traverser = new ResettableSingletonTraverser<>();
+    private final FlatMapper<Object, Object> flatMapper;
     private final WindowAssignContext<T> windowAssignContext;
 
+    private final Coder outputCoder;
+    private boolean encodeOutput;
+
     private AssignWindowP(
             Coder inputCoder,
             Coder outputCoder,
@@ -53,6 +56,7 @@ public class AssignWindowP<T> extends AbstractProcessor {
             String ownerId
     ) {
         this.ownerId = ownerId;
+        this.outputCoder = outputCoder;
 
         windowAssignContext = new WindowAssignContext<>(windowingStrategy.getWindowFn());
 
@@ -66,15 +70,19 @@ public class AssignWindowP<T> extends AbstractProcessor {
                 throw new RuntimeException(e);
             }
             WindowedValue<T> outputValue = WindowedValue.of(inputValue.getValue(), inputValue.getTimestamp(), windows, inputValue.getPane());
-            traverser.accept(Utils.encode(outputValue, outputCoder));
+            traverser.accept(encodeOutput ? Utils.encode(outputValue, outputCoder) : outputValue);
             return traverser;
         });
     }
 
-    @SuppressWarnings("unchecked")
+    @Override
+    protected void init(@Nonnull Context context) {
+        encodeOutput = !FusedP.isFusedOutbox(getOutbox()) && Utils.isEncodedOnEdges(outputCoder);
+    }
+
     @Override
     protected boolean tryProcess(int ordinal, @Nonnull Object item) {
-        return flatMapper.tryProcess((byte[]) item);
+        return flatMapper.tryProcess(item);
     }
 
     public static <T> SupplierEx<Processor> supplier(
@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.Inbox;
+import com.hazelcast.jet.core.Outbox;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.Watermark;
+import com.hazelcast.jet.function.SupplierEx;
+
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jet {@link Processor} which wraps another one and packs the keyed frames
+ * it emits to some of its outbound edges into batch frames, one per
+ * destination partition, so that the per-item serialization and queueing
+ * overhead of distributed edges gets paid once per batch instead of once
+ * per element. A batch is emitted when it's full, when it has been open for
+ * longer than its time limit, before any watermark and when the wrapped
+ * processor completes. The consumers of the batched edges are wrapped in
+ * {@link UnbatchingP}.
+ */
+public class BatchingP implements Processor {
+
+    private static final int DEFAULT_PARTITION_COUNT = 271;
+
+    private final Processor delegate;
+    private final Map<Integer, Settings> settingsOfOrdinals;
+
+    private RetainingOutbox retainingOutbox;
+    private BatchingOutbox outbox;
+    private boolean delegateCompleted;
+
+    private BatchingP(Processor delegate, Map<Integer, Settings> settingsOfOrdinals) {
+        this.delegate = delegate;
+        this.settingsOfOrdinals = settingsOfOrdinals;
+    }
+
+    @Override
+    public boolean isCooperative() {
+        return delegate.isCooperative();
+    }
+
+    @Override
+    public void init(@Nonnull Outbox outbox, @Nonnull Context context) throws Exception {
+        int partitionCount = context.jetInstance() == null ?
+                DEFAULT_PARTITION_COUNT :
+                context.jetInstance().getHazelcastInstance().getPartitionService().getPartitions().size();
+        // batches get offered from several places within a single call
+        this.retainingOutbox = new RetainingOutbox(outbox);
+        this.outbox = new BatchingOutbox(retainingOutbox, partitionCount);
+        delegate.init(this.outbox, context);
+    }
+
+    @Override
+    public void process(int ordinal, @Nonnull Inbox inbox) {
+        retainingOutbox.reset();
+        delegate.process(ordinal, inbox);
+        outbox.flushExpired();
+    }
+
+    @Override
+    public boolean tryProcessWatermark(@Nonnull Watermark watermark) {
+        retainingOutbox.reset();
+        return delegate.tryProcessWatermark(watermark);
+    }
+
+    @Override
+    public boolean tryProcess() {
+        retainingOutbox.reset();
+        boolean done = delegate.tryProcess();
+        outbox.flushExpired();
+        return done && retainingOutbox.tryFlush();
+    }
+
+    @Override
+    public boolean completeEdge(int ordinal) {
+        retainingOutbox.reset();
+        return delegate.completeEdge(ordinal);
+    }
+
+    @Override
+    public boolean complete() {
+        retainingOutbox.reset();
+        if (!delegateCompleted) {
+            delegateCompleted = delegate.complete();
+            if (!delegateCompleted) {
+                outbox.flushExpired();
+                return false;
+            }
+        }
+        return outbox.flushAll() && retainingOutbox.tryFlush();
+    }
+
+    @Override
+    public boolean saveToSnapshot() {
+        retainingOutbox.reset();
+        return outbox.flushAll() && retainingOutbox.tryFlush() && delegate.saveToSnapshot();
+    }
+
+    @Override
+    public void restoreFromSnapshot(@Nonnull Inbox inbox) {
+        retainingOutbox.reset();
+        delegate.restoreFromSnapshot(inbox);
+    }
+
+    @Override
+    public boolean finishSnapshotRestore() {
+        retainingOutbox.reset();
+        return delegate.finishSnapshotRestore();
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+
+    /**
+     * Returns a supplier of processors which batch the items the processors
+     * provided by the given supplier emit to the ordinals of the given map.
+     * The map can still be filled in after this call, until the supplier
+     * gets serialized.
+     */
+    public static SupplierEx<Processor> supplier(
+            SupplierEx<Processor> delegateSupplier,
+            Map<Integer, Settings> settingsOfOrdinals
+    ) {
+        return () -> new BatchingP(delegateSupplier.getEx(), settingsOfOrdinals);
+    }
+
+    /**
+     * Batching settings of an outbound edge.
+     */
+    public static final class Settings implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxElements;
+        private final long maxDelayNanos;
+
+        public Settings(int maxElements, int maxDelayMillis) {
+            this.maxElements = maxElements;
+            this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        }
+    }
+
+    /**
+     * Outbox buffering the items offered to the batched ordinals and
+     * offering the ones for the other ordinals right away. Full batches
+     * which the underlying outbox doesn't take yet are queued; while any is
+     * queued, no new items are accepted.
+     */
+    private class BatchingOutbox implements Outbox {
+
+        private final Outbox outbox;
+        private final int partitionCount;
+        private final int[] allPlainOrdinals;
+        private final int[] allBatchedOrdinals;
+        private final Map<Integer, Batch[]> batchesOfOrdinals = new HashMap<>();
+        private final Deque<Batch> fullBatches = new ArrayDeque<>();
+        private final long minDelayNanos;
+
+        private int openBatchCount;
+        private long oldestBatchStart;
+
+        BatchingOutbox(Outbox outbox, int partitionCount) {
+            this.outbox = outbox;
+            this.partitionCount = partitionCount;
+            int[] allOrdinals = new int[outbox.bucketCount()];
+            Arrays.setAll(allOrdinals, i -> i);
+            this.allPlainOrdinals = Arrays.stream(allOrdinals).filter(o -> !isBatched(o)).toArray();
+            this.allBatchedOrdinals = Arrays.stream(allOrdinals).filter(BatchingP.this::isBatched).toArray();
+            this.minDelayNanos = settingsOfOrdinals.values().stream().mapToLong(s -> s.maxDelayNanos).min().orElse(0);
+        }
+
+        @Override
+        public int bucketCount() {
+            return outbox.bucketCount();
+        }
+
+        @Override
+        public boolean offer(int ordinal, @Nonnull Object item) {
+            if (ordinal == -1) {
+                return offer(allPlainOrdinals, allBatchedOrdinals, item);
+            }
+            if (!flushFull()) {
+                return false;
+            }
+            if (item instanceof Watermark && !flushAll()) {
+                return false;
+            }
+            if (!isBatched(ordinal) || !(item instanceof byte[])) {
+                return outbox.offer(ordinal, item);
+            }
+            add(ordinal, (byte[]) item);
+            flushFull();
+            return true;
+        }
+
+        @Override
+        public boolean offer(@Nonnull int[] ordinals, @Nonnull Object item) {
+            return offer(
+                    Arrays.stream(ordinals).filter(o -> !isBatched(o)).toArray(),
+                    Arrays.stream(ordinals).filter(BatchingP.this::isBatched).toArray(),
+                    item
+            );
+        }
+
+        private boolean offer(int[] plain, int[] batched, Object item) {
+            if (!flushFull()) {
+                return false;
+            }
+            if (item instanceof Watermark && !flushAll()) {
+                return false; // items emitted before a watermark must not be overtaken by it
+            }
+            if (batched.length == 0 || !(item instanceof byte[])) {
+                return outbox.offer(batched.length == 0 ? plain : allOrdinals(plain, batched), item);
+            }
+            if (plain.length > 0 && !outbox.offer(plain, item)) {
+                return false;
+            }
+            for (int ordinal : batched) {
+                add(ordinal, (byte[]) item);
+            }
+            flushFull();
+            return true;
+        }
+
+        private void add(int ordinal, byte[] frame) {
+            Batch[] batches = batchesOfOrdinals.computeIfAbsent(ordinal, o -> new Batch[partitionCount]);
+            int partition = Utils.getPartition(frame, partitionCount);
+            Batch batch = batches[partition];
+            if (batch == null) {
+                batch = batches[partition] = new Batch(ordinal, settingsOfOrdinals.get(ordinal));
+            }
+            if (batch.frames.isEmpty()) {
+                batch.start = System.nanoTime();
+                if (openBatchCount++ == 0 || batch.start < oldestBatchStart) {
+                    oldestBatchStart = batch.start;
+                }
+            }
+            batch.frames.add(frame);
+            if (batch.frames.size() >= batch.settings.maxElements) {
+                close(batch);
+            }
+        }
+
+        private void close(Batch batch) {
+            fullBatches.add(batch.copy());
+            batch.frames.clear();
+            openBatchCount--;
+        }
+
+        private boolean flushFull() {
+            for (Batch batch; (batch = fullBatches.peek()) != null; fullBatches.remove()) {
+                if (!outbox.offer(batch.ordinal, batch.packed())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Closes the batches which have been open longer than their time
+         * limit. They are only checked if the oldest batch has timed out.
+         */
+        void flushExpired() {
+            if (openBatchCount == 0) {
+                flushFull();
+                return;
+            }
+            long now = System.nanoTime();
+            if (now - oldestBatchStart < minDelayNanos) {
+                flushFull();
+                return;
+            }
+            oldestBatchStart = Long.MAX_VALUE;
+            for (Batch[] batches : batchesOfOrdinals.values()) {
+                for (Batch batch : batches) {
+                    if (batch == null || batch.frames.isEmpty()) {
+                        continue;
+                    }
+                    if (now - batch.start >= batch.settings.maxDelayNanos) {
+                        close(batch);
+                    } else {
+                        oldestBatchStart = Math.min(oldestBatchStart, batch.start);
+                    }
+                }
+            }
+            flushFull();
+        }
+
+        boolean flushAll() {
+            if (openBatchCount > 0) {
+                for (Batch[] batches : batchesOfOrdinals.values()) {
+                    for (Batch batch : batches) {
+                        if (batch != null && !batch.frames.isEmpty()) {
+                            close(batch);
+                        }
+                    }
+                }
+            }
+            return flushFull();
+        }
+
+        private int[] allOrdinals(int[] plain, int[] batched) {
+            int[] ordinals = Arrays.copyOf(plain, plain.length + batched.length);
+            System.arraycopy(batched, 0, ordinals, plain.length, batched.length);
+            return ordinals;
+        }
+
+        @Override
+        public boolean offerToSnapshot(@Nonnull Object key, @Nonnull Object value) {
+            return outbox.offerToSnapshot(key, value);
+        }
+
+        @Override
+        public boolean hasUnfinishedItem() {
+            return outbox.hasUnfinishedItem() || !fullBatches.isEmpty();
+        }
+    }
+
+    private boolean isBatched(int ordinal) {
+        return settingsOfOrdinals.containsKey(ordinal);
+    }
+
+    private static final class Batch {
+
+        private final int ordinal;
+        private final Settings settings;
+        private final List<byte[]> frames;
+
+        private long start;
+        private Object packed;
+
+        Batch(int ordinal, Settings settings) {
+            this(ordinal, settings, new ArrayList<>());
+        }
+
+        private Batch(int ordinal, Settings settings, List<byte[]> frames) {
+            this.ordinal = ordinal;
+            this.settings = settings;
+            this.frames = frames;
+        }
+
+        Batch copy() {
+            return new Batch(ordinal, settings, new ArrayList<>(frames));
+        }
+
+        /**
+         * Single frames are sent as they are, there's nothing to amortise.
+         */
+        Object packed() {
+            if (packed == null) {
+                packed = frames.size() == 1 ? frames.get(0) : Utils.packKeyedFrames(frames);
+            }
+            return packed;
+        }
+    }
+}
@@ -75,7 +75,7 @@ public class BoundedSourceP<T> extends AbstractProcessor implements Traverser {
             if (!currentReader.advance()) {
                 nextShard();
             }
-            return outputCoder == null ? res : Utils.encode(res, outputCoder); //todo: this is not nice, have done this only as a quick fix for BoundedSourcePTest
+            return outputCoder == null || !Utils.isEncodedOnEdges(outputCoder) ? res : Utils.encode(res, outputCoder);
         } catch (IOException e) {
             throw ExceptionUtil.rethrow(e);
         }
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.Inbox;
+import com.hazelcast.jet.core.Outbox;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.Watermark;
+import com.hazelcast.jet.function.SupplierEx;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Jet {@link Processor} which wraps another one and compresses the keyed
+ * frames it emits to some of its outbound edges, the distributed ones the
+ * compression has been enabled for. Consumers need no counterpart, keyed
+ * frames are marked as compressed and get decompressed when decoded.
+ */
+public class CompressingP implements Processor {
+
+    private final Processor delegate;
+    private final Set<Integer> compressedOrdinals;
+    private final int threshold;
+
+    private CompressingP(Processor delegate, Set<Integer> compressedOrdinals, int threshold) {
+        this.delegate = delegate;
+        this.compressedOrdinals = compressedOrdinals;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public boolean isCooperative() {
+        return delegate.isCooperative();
+    }
+
+    @Override
+    public void init(@Nonnull Outbox outbox, @Nonnull Context context) throws Exception {
+        delegate.init(new CompressingOutbox(outbox), context);
+    }
+
+    @Override
+    public void process(int ordinal, @Nonnull Inbox inbox) {
+        delegate.process(ordinal, inbox);
+    }
+
+    @Override
+    public boolean tryProcessWatermark(@Nonnull Watermark watermark) {
+        return delegate.tryProcessWatermark(watermark);
+    }
+
+    @Override
+    public boolean tryProcess() {
+        return delegate.tryProcess();
+    }
+
+    @Override
+    public boolean completeEdge(int ordinal) {
+        return delegate.completeEdge(ordinal);
+    }
+
+    @Override
+    public boolean complete() {
+        return delegate.complete();
+    }
+
+    @Override
+    public boolean saveToSnapshot() {
+        return delegate.saveToSnapshot();
+    }
+
+    @Override
+    public void restoreFromSnapshot(@Nonnull Inbox inbox) {
+        delegate.restoreFromSnapshot(inbox);
+    }
+
+    @Override
+    public boolean finishSnapshotRestore() {
+        return delegate.finishSnapshotRestore();
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+
+    /**
+     * Returns a supplier of processors which compress the items the
+     * processors provided by the given supplier emit to the given ordinals.
+     * The set of ordinals can still be filled in after this call, until the
+     * supplier gets serialized.
+     */
+    public static SupplierEx<Processor> supplier(
+            SupplierEx<Processor> delegateSupplier,
+            Set<Integer> compressedOrdinals,
+            int threshold
+    ) {
+        return () -> new CompressingP(delegateSupplier.getEx(), compressedOrdinals, threshold);
+    }
+
+    /**
+     * Outbox splitting each offer into one of the original item to the
+     * uncompressed ordinals and one of its compressed form to the compressed
+     * ones. Callers keep offering the same item until it's accepted, so the
+     * part already done is remembered and not repeated.
+     */
+    private class CompressingOutbox implements Outbox {
+
+        private final Outbox outbox;
+        private final int[] allPlainOrdinals;
+        private final int[] allCompressedOrdinals;
+
+        private Object pendingItem;
+        private boolean plainOfferDone;
+
+        private Object lastItem;
+        private Object lastCompressedItem;
+
+        CompressingOutbox(Outbox outbox) {
+            this.outbox = outbox;
+            int[] allOrdinals = new int[outbox.bucketCount()];
+            Arrays.setAll(allOrdinals, i -> i);
+            this.allPlainOrdinals = Arrays.stream(allOrdinals).filter(o -> !isCompressed(o)).toArray();
+            this.allCompressedOrdinals = Arrays.stream(allOrdinals).filter(CompressingP.this::isCompressed).toArray();
+        }
+
+        @Override
+        public int bucketCount() {
+            return outbox.bucketCount();
+        }
+
+        @Override
+        public boolean offer(int ordinal, @Nonnull Object item) {
+            if (!(item instanceof byte[])) {
+                return outbox.offer(ordinal, item);
+            }
+            if (ordinal == -1) {
+                return offer(allPlainOrdinals, allCompressedOrdinals, item);
+            }
+            return outbox.offer(ordinal, isCompressed(ordinal) ? compressed(item) : item);
+        }
+
+        @Override
+        public boolean offer(@Nonnull int[] ordinals, @Nonnull Object item) {
+            if (!(item instanceof byte[])) {
+                return outbox.offer(ordinals, item);
+            }
+            return offer(
+                    Arrays.stream(ordinals).filter(o -> !isCompressed(o)).toArray(),
+                    Arrays.stream(ordinals).filter(CompressingP.this::isCompressed).toArray(),
+                    item
+            );
+        }
+
+        private boolean offer(int[] plain, int[] compressed, Object item) {
+            if (item != pendingItem) {
+                pendingItem = item;
+                plainOfferDone = plain.length == 0;
+            }
+            if (!plainOfferDone) {
+                if (!outbox.offer(plain, item)) {
+                    return false;
+                }
+                plainOfferDone = true;
+            }
+            if (compressed.length > 0 && !outbox.offer(compressed, compressed(item))) {
+                return false;
+            }
+            pendingItem = null;
+            return true;
+        }
+
+        private Object compressed(Object item) {
+            if (item != lastItem) {
+                lastItem = item;
+                lastCompressedItem = Utils.compressKeyedFrame((byte[]) item, threshold);
+            }
+            return lastCompressedItem;
+        }
+
+        @Override
+        public boolean offerToSnapshot(@Nonnull Object key, @Nonnull Object value) {
+            return outbox.offerToSnapshot(key, value);
+        }
+
+        @Override
+        public boolean hasUnfinishedItem() {
+            return outbox.hasUnfinishedItem();
+        }
+    }
+
+    private boolean isCompressed(int ordinal) {
+        return compressedOrdinals.contains(ordinal);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.Traversers;
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.function.SupplierEx;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Jet {@link com.hazelcast.jet.core.Processor} implementation for Beam's
+ * Create.Values transform. The elements are encoded once, when the pipeline
+ * is being translated, and are shipped to the cluster together with the
+ * processor supplier. Each processor emits its round-robin share of them
+ * as they are, without any splitting or re-encoding.
+ */
+public class CreateP extends AbstractProcessor {
+
+    private final List<byte[]> encodedElements;
+    @SuppressWarnings({"FieldCanBeLocal", "unused"})
+    private final String ownerId; //do not remove it, very useful for debugging
+
+    private Traverser<byte[]> traverser;
+
+    private CreateP(List<byte[]> encodedElements, String ownerId) {
+        this.encodedElements = encodedElements;
+        this.ownerId = ownerId;
+    }
+
+    @Override
+    protected void init(@Nonnull Context context) {
+        traverser = Traversers.traverseIterable(
+                Utils.roundRobinSubList(encodedElements, context.globalProcessorIndex(), context.totalParallelism())
+        );
+    }
+
+    @Override
+    public boolean complete() {
+        return emitFromTraverser(traverser);
+    }
+
+    public static SupplierEx<Processor> supplier(List<byte[]> encodedElements, String ownerId) {
+        return () -> new CreateP(encodedElements, ownerId);
+    }
+}
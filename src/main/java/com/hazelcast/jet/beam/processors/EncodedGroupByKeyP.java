@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.Traversers;
+import com.hazelcast.jet.beam.ByteKeyMap;
+import com.hazelcast.jet.beam.KeyedFrameGrouping;
+import com.hazelcast.jet.beam.KeyedFrameGrouping.Group;
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.Watermark;
+import com.hazelcast.jet.function.SupplierEx;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.apache.beam.sdk.transforms.windowing.WindowFn;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.joda.time.Instant;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jet {@link com.hazelcast.jet.core.Processor} implementation for Beam's
+ * GroupByKey, used instead of {@link WindowGroupP} when the windowing
+ * strategy of the input fires each window exactly once: it has the default
+ * trigger, no merging windows and no allowed lateness. The values are
+ * never decoded, they are kept and emitted in their encoded form (see
+ * {@link KeyedFrameGrouping}), only the key and the windowing of the
+ * input elements are looked at.
+ *
+ * <p>The groups of a window are emitted once the watermark has passed its
+ * end, or when the input is complete, those of hot keys split into chunks.
+ * Elements of windows which have already been passed by the watermark are
+ * late, they get dropped.
+ */
+public class EncodedGroupByKeyP extends AbstractProcessor {
+
+    private final Coder inputCoder;
+    private final Coder<? extends BoundedWindow> windowCoder;
+    private final WindowFn<?, BoundedWindow> windowFn;
+    private final TimestampCombiner timestampCombiner;
+    private final boolean offHeapKeys;
+    private final int chunkSize;
+    private final KeyedFrameGrouping.FrameReader frameReader;
+    @SuppressWarnings({"FieldCanBeLocal", "unused"})
+    private final String ownerId; //do not remove, useful for debugging
+
+    private final Map<BoundedWindow, ByteKeyMap<Group>> groups = new HashMap<>();
+    private Instant watermark = BoundedWindow.TIMESTAMP_MIN_VALUE;
+    private Traverser<Object> firingTraverser;
+
+    @SuppressWarnings("unchecked")
+    private EncodedGroupByKeyP(
+            Coder inputCoder,
+            WindowedValue.FullWindowedValueCoder outputCoder,
+            WindowingStrategy<?, ?> windowingStrategy,
+            boolean offHeapKeys,
+            int chunkSize,
+            String ownerId
+    ) {
+        this.inputCoder = inputCoder;
+        this.windowCoder = outputCoder.getWindowCoder();
+        this.windowFn = (WindowFn<?, BoundedWindow>) windowingStrategy.getWindowFn();
+        this.timestampCombiner = windowingStrategy.getTimestampCombiner();
+        this.offHeapKeys = offHeapKeys;
+        this.chunkSize = chunkSize;
+        this.frameReader = new KeyedFrameGrouping.FrameReader(inputCoder);
+        this.ownerId = ownerId;
+    }
+
+    @Override
+    protected boolean tryProcess(int ordinal, @Nonnull Object item) {
+        byte[] keyedFrame = item instanceof byte[] ? (byte[]) item : Utils.encode((WindowedValue) item, inputCoder);
+        WindowedValue<?> windowing = frameReader.read(keyedFrame);
+        for (BoundedWindow window : windowing.getWindows()) {
+            if (window.maxTimestamp().isBefore(watermark)) {
+                continue; // late, the window has already fired
+            }
+            ByteKeyMap<Group> groupsOfWindow = groups.computeIfAbsent(window, w -> new ByteKeyMap<>(offHeapKeys));
+            Group group = groupsOfWindow.get(keyedFrame);
+            if (group == null) {
+                group = new Group(keyedFrame, chunkSize);
+                groupsOfWindow.put(keyedFrame, group);
+            }
+            Instant outputTimestamp = timestampCombiner.assign(window, windowFn.getOutputTime(windowing.getTimestamp(), window));
+            group.add(frameReader, outputTimestamp, timestampCombiner);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryProcessWatermark(@Nonnull Watermark watermark) {
+        if (firingTraverser == null) {
+            this.watermark = new Instant(watermark.timestamp());
+            firingTraverser = fire().append(watermark);
+        }
+        if (!emitFromTraverser(firingTraverser)) {
+            return false;
+        }
+        firingTraverser = null;
+        return true;
+    }
+
+    @Override
+    public boolean complete() {
+        if (firingTraverser == null) {
+            watermark = BoundedWindow.TIMESTAMP_MAX_VALUE;
+            firingTraverser = fire();
+        }
+        return emitFromTraverser(firingTraverser);
+    }
+
+    /**
+     * Removes the windows the watermark has passed and returns the frames of
+     * their groups, which are encoded as they are traversed.
+     */
+    private Traverser<Object> fire() {
+        List<Map.Entry<BoundedWindow, ByteKeyMap<Group>>> fired = new ArrayList<>();
+        for (Iterator<Map.Entry<BoundedWindow, ByteKeyMap<Group>>> it = groups.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<BoundedWindow, ByteKeyMap<Group>> entry = it.next();
+            if (entry.getKey().maxTimestamp().isBefore(watermark)) {
+                fired.add(entry);
+                it.remove();
+            }
+        }
+        return Traversers.traverseIterable(fired)
+                .flatMap(entry -> Traversers.traverseIterable(entry.getValue().values())
+                        .flatMap(group -> Traversers.traverseIterable(group.toKeyedFrames(entry.getKey(), windowCoder))));
+    }
+
+    public static SupplierEx<Processor> supplier(
+            Coder inputCoder,
+            WindowedValue.FullWindowedValueCoder outputCoder,
+            WindowingStrategy<?, ?> windowingStrategy,
+            boolean offHeapKeys,
+            int chunkSize,
+            String ownerId
+    ) {
+        return () -> new EncodedGroupByKeyP(inputCoder, outputCoder, windowingStrategy, offHeapKeys, chunkSize, ownerId);
+    }
+}
@@ -37,17 +37,24 @@ public class FlattenP extends AbstractProcessor {
     @SuppressWarnings("FieldCanBeLocal") //do not remove, useful for debugging
     private final String ownerId;
 
+    private boolean encodeOutput;
+
     private FlattenP(Map<Integer, Coder> inputOrdinalCoders, Coder outputCoder, String ownerId) {
         this.inputOrdinalCoders = inputOrdinalCoders;
         this.outputCoder = outputCoder;
         this.ownerId = ownerId;
     }
 
+    @Override
+    protected void init(@Nonnull Context context) {
+        encodeOutput = !FusedP.isFusedOutbox(getOutbox()) && Utils.isEncodedOnEdges(outputCoder);
+    }
+
     @Override
     protected boolean tryProcess(int ordinal, @Nonnull Object item) {
         Coder inputCoder = inputOrdinalCoders.get(ordinal);
-        WindowedValue<Object> windowedValue = Utils.decodeWindowedValue((byte[]) item, inputCoder);
-        return tryEmit(Utils.encode(windowedValue, outputCoder));
+        WindowedValue<Object> windowedValue = Utils.decodeWindowedValue(item, inputCoder);
+        return tryEmit(encodeOutput ? Utils.encode(windowedValue, outputCoder) : windowedValue);
     }
 
     public static final class Supplier implements SupplierEx<Processor>, DAGBuilder.WiringListener {
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.core.Inbox;
+import com.hazelcast.jet.core.Outbox;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.Watermark;
+import com.hazelcast.jet.function.SupplierEx;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Jet {@link Processor} which runs a chain of other processors (each
+ * originally meant for a vertex of its own) in a single Jet vertex. The
+ * processors of the chain are connected by in-memory queues instead of Jet
+ * edges, so items passed between them don't need to be encoded and don't go
+ * through Jet's concurrent queues.
+ *
+ * <p>Only the first processor of the chain is connected to the inbound edges
+ * of the vertex and only the last one to its outbound edges. All the others
+ * have exactly one input and one output, both being internal.
+ */
+public class FusedP implements Processor {
+
+    private static final int CHAIN_QUEUE_CAPACITY = 1024;
+
+    private final Processor[] members;
+    private final ChainQueue[] queues;
+
+    private RetainingOutbox outbox;
+    private int completedMembers;
+    private boolean inputEdgeCompleted;
+
+    private FusedP(List<Processor> members) {
+        if (members.size() < 2) {
+            throw new IllegalArgumentException("At least two processors are needed for fusion");
+        }
+        this.members = members.toArray(new Processor[0]);
+        this.queues = new ChainQueue[this.members.length - 1];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ChainQueue();
+        }
+    }
+
+    /**
+     * Returns true if the outbox belongs to a processor which is not the last
+     * one in a fused chain. Items emitted into such an outbox are consumed by
+     * a processor running in the same thread, so they don't need to be encoded.
+     */
+    public static boolean isFusedOutbox(Outbox outbox) {
+        return outbox instanceof ChainQueue;
+    }
+
+    @Override
+    public boolean isCooperative() {
+        for (Processor member : members) {
+            if (!member.isCooperative()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void init(@Nonnull Outbox outbox, @Nonnull Context context) throws Exception {
+        // the last member can get called several times in one call of this processor
+        this.outbox = new RetainingOutbox(outbox);
+        for (int i = 0; i < members.length; i++) {
+            members[i].init(i < queues.length ? queues[i] : this.outbox, context);
+        }
+    }
+
+    @Override
+    public void process(int ordinal, @Nonnull Inbox inbox) {
+        outbox.reset();
+        drainChain();
+        if (queues[0].isFull()) {
+            return;
+        }
+        members[0].process(ordinal, inbox);
+        drainChain();
+    }
+
+    @Override
+    public boolean tryProcess() {
+        outbox.reset();
+        boolean done = outbox.tryFlush();
+        for (int i = 0; i < members.length; i++) {
+            done &= members[i].tryProcess();
+            if (i < queues.length) {
+                drainQueue(i);
+            }
+        }
+        return done && isChainEmpty();
+    }
+
+    @Override
+    public boolean tryProcessWatermark(@Nonnull Watermark watermark) {
+        outbox.reset();
+        drainChain();
+        boolean accepted = members[0].tryProcessWatermark(watermark);
+        drainChain();
+        return accepted;
+    }
+
+    @Override
+    public boolean completeEdge(int ordinal) {
+        outbox.reset();
+        boolean done = members[0].completeEdge(ordinal);
+        drainChain();
+        return done;
+    }
+
+    @Override
+    public boolean complete() {
+        outbox.reset();
+        while (completedMembers < members.length) {
+            int i = completedMembers;
+            if (i > 0) {
+                drainChain();
+                if (!queues[i - 1].isDrained()) {
+                    return false;
+                }
+                if (!inputEdgeCompleted) {
+                    if (!members[i].completeEdge(0)) {
+                        return false;
+                    }
+                    inputEdgeCompleted = true;
+                }
+            }
+            boolean done = members[i].complete();
+            drainChain();
+            if (!done) {
+                return false;
+            }
+            completedMembers++;
+            inputEdgeCompleted = false;
+        }
+        return outbox.tryFlush();
+    }
+
+    @Override
+    public void close() throws Exception {
+        Exception firstError = null;
+        for (Processor member : members) {
+            try {
+                member.close();
+            } catch (Exception e) {
+                if (firstError == null) {
+                    firstError = e;
+                }
+            }
+        }
+        if (firstError != null) {
+            throw firstError;
+        }
+    }
+
+    private void drainChain() {
+        for (int i = 0; i < queues.length; i++) {
+            drainQueue(i);
+        }
+    }
+
+    /**
+     * Feeds the items accumulated in the i-th internal queue into the
+     * processor following it, taking care to only hand over watermarks once
+     * all preceding items have been consumed.
+     */
+    private void drainQueue(int i) {
+        ChainQueue queue = queues[i];
+        Processor consumer = members[i + 1];
+        while (true) {
+            if (!queue.isEmpty()) {
+                consumer.process(0, queue);
+                if (!queue.isEmpty()) {
+                    return;
+                }
+            }
+            Watermark watermark = queue.peekWatermark();
+            if (watermark == null || !consumer.tryProcessWatermark(watermark)) {
+                return;
+            }
+            queue.removeWatermark();
+        }
+    }
+
+    private boolean isChainEmpty() {
+        for (ChainQueue queue : queues) {
+            if (!queue.isDrained()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a supplier of processors which run the processors provided by
+     * the given suppliers as a single fused chain.
+     */
+    public static SupplierEx<Processor> supplier(List<SupplierEx<Processor>> memberSuppliers) {
+        return () -> {
+            List<Processor> members = new ArrayList<>(memberSuppliers.size());
+            for (SupplierEx<Processor> memberSupplier : memberSuppliers) {
+                members.add(memberSupplier.getEx());
+            }
+            return new FusedP(members);
+        };
+    }
+
+    /**
+     * Bounded queue connecting two processors of the chain: it's the outbox
+     * of the upstream processor and the inbox of the downstream one. When seen
+     * as an inbox it ends right before the first watermark in it, watermarks
+     * are handed over separately.
+     */
+    private static class ChainQueue implements Inbox, Outbox {
+
+        private final Deque<Object> items = new ArrayDeque<>();
+
+        boolean isFull() {
+            return items.size() >= CHAIN_QUEUE_CAPACITY;
+        }
+
+        boolean isDrained() {
+            return items.isEmpty();
+        }
+
+        Watermark peekWatermark() {
+            Object item = items.peek();
+            return item instanceof Watermark ? (Watermark) item : null;
+        }
+
+        void removeWatermark() {
+            items.remove();
+        }
+
+        @Override
+        public int bucketCount() {
+            return 1;
+        }
+
+        @Override
+        public boolean offer(int ordinal, @Nonnull Object item) {
+            if (isFull()) {
+                return false;
+            }
+            items.add(item);
+            return true;
+        }
+
+        @Override
+        public boolean offer(@Nonnull int[] ordinals, @Nonnull Object item) {
+            return offer(0, item);
+        }
+
+        @Override
+        public boolean offerToSnapshot(@Nonnull Object key, @Nonnull Object value) {
+            throw new UnsupportedOperationException("Snapshotting is not supported by fused processors");
+        }
+
+        @Override
+        public boolean hasUnfinishedItem() {
+            return false;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            Object item = items.peek();
+            return item == null || item instanceof Watermark;
+        }
+
+        @Override
+        public Object peek() {
+            Object item = items.peek();
+            return item instanceof Watermark ? null : item;
+        }
+
+        @Override
+        public Object poll() {
+            return isEmpty() ? null : items.poll();
+        }
+
+        @Override
+        public void remove() {
+            if (isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            items.remove();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.Traversers;
+import com.hazelcast.jet.beam.ByteKeyMap;
+import com.hazelcast.jet.beam.KeyedFrameGrouping;
+import com.hazelcast.jet.beam.KeyedFrameGrouping.Group;
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.Watermark;
+import com.hazelcast.jet.function.SupplierEx;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Jet {@link com.hazelcast.jet.core.Processor} implementation for Beam's
+ * GroupIntoBatches transform. Keeps the encoded values of each key and
+ * window in a buffer of their batch, without decoding them (see {@link
+ * KeyedFrameGrouping}), and emits the batch either when it reaches the
+ * configured size or when the watermark passes the end of the window
+ * (plus the allowed lateness), which is when the generic, timer based
+ * implementation would flush it too. The values only get decoded by the
+ * consumers of the batches.
+ */
+public class GroupIntoBatchesP extends AbstractProcessor {
+
+    private final Coder inputCoder;
+    private final Coder<? extends BoundedWindow> windowCoder;
+    private final long batchSize;
+    private final Duration allowedLateness;
+    private final boolean offHeapKeys;
+    private final KeyedFrameGrouping.FrameReader frameReader;
+    @SuppressWarnings({"FieldCanBeLocal", "unused"})
+    private final String ownerId; //do not remove, useful for debugging
+
+    private final Map<BoundedWindow, ByteKeyMap<Group>> batches = new HashMap<>();
+    private final TreeMap<Instant, List<BoundedWindow>> windowsByDeadline = new TreeMap<>();
+    private Traverser<Object> fullBatchTraverser;
+    private Traverser<Object> watermarkTraverser;
+
+    private GroupIntoBatchesP(
+            Coder inputCoder,
+            WindowedValue.FullWindowedValueCoder outputCoder,
+            long batchSize,
+            Duration allowedLateness,
+            boolean offHeapKeys,
+            String ownerId
+    ) {
+        this.inputCoder = inputCoder;
+        this.windowCoder = outputCoder.getWindowCoder();
+        this.batchSize = batchSize;
+        this.allowedLateness = allowedLateness;
+        this.offHeapKeys = offHeapKeys;
+        this.frameReader = new KeyedFrameGrouping.FrameReader(inputCoder);
+        this.ownerId = ownerId;
+    }
+
+    @Override
+    protected boolean tryProcess(int ordinal, @Nonnull Object item) {
+        if (!emitPendingFullBatches()) {
+            return false;
+        }
+
+        byte[] keyedFrame = item instanceof byte[] ? (byte[]) item : Utils.encode((WindowedValue) item, inputCoder);
+        WindowedValue<?> windowing = frameReader.read(keyedFrame);
+        List<Object> fullBatches = null;
+        for (BoundedWindow window : windowing.getWindows()) {
+            ByteKeyMap<Group> batchesOfWindow = batches.computeIfAbsent(window, this::newWindow);
+            Group batch = batchesOfWindow.get(keyedFrame);
+            if (batch == null) {
+                batch = new Group(keyedFrame, 0);
+                batchesOfWindow.put(keyedFrame, batch);
+            }
+            batch.add(frameReader);
+            if (batch.size() >= batchSize) {
+                batchesOfWindow.put(keyedFrame, new Group(keyedFrame, 0));
+                if (fullBatches == null) {
+                    fullBatches = new ArrayList<>();
+                }
+                fullBatches.addAll(
+                        batch.toKeyedFrames(windowing.getTimestamp(), Collections.singleton(window), windowing.getPane(), windowCoder)
+                );
+            }
+        }
+
+        if (fullBatches != null) {
+            fullBatchTraverser = Traversers.traverseIterable(fullBatches);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryProcessWatermark(@Nonnull Watermark watermark) {
+        if (!emitPendingFullBatches()) {
+            return false;
+        }
+        if (watermarkTraverser == null) {
+            // same condition as for firing the end-of-window timer, it has to be strictly before the watermark
+            watermarkTraverser = flushExpired(new Instant(watermark.timestamp()).minus(1)).append(watermark);
+        }
+        if (!emitFromTraverser(watermarkTraverser)) {
+            return false;
+        }
+        watermarkTraverser = null;
+        return true;
+    }
+
+    @Override
+    public boolean complete() {
+        if (!emitPendingFullBatches()) {
+            return false;
+        }
+        if (watermarkTraverser == null) {
+            watermarkTraverser = flushExpired(BoundedWindow.TIMESTAMP_MAX_VALUE);
+        }
+        return emitFromTraverser(watermarkTraverser);
+    }
+
+    private ByteKeyMap<Group> newWindow(BoundedWindow window) {
+        windowsByDeadline.computeIfAbsent(deadlineOf(window), d -> new ArrayList<>()).add(window);
+        return new ByteKeyMap<>(offHeapKeys);
+    }
+
+    private Instant deadlineOf(BoundedWindow window) {
+        Instant maxTimestamp = window.maxTimestamp();
+        if (maxTimestamp.isAfter(BoundedWindow.TIMESTAMP_MAX_VALUE.minus(allowedLateness))) {
+            return BoundedWindow.TIMESTAMP_MAX_VALUE;
+        }
+        return maxTimestamp.plus(allowedLateness);
+    }
+
+    private boolean emitPendingFullBatches() {
+        if (fullBatchTraverser != null) {
+            if (!emitFromTraverser(fullBatchTraverser)) {
+                return false;
+            }
+            fullBatchTraverser = null;
+        }
+        return true;
+    }
+
+    private Traverser<Object> flushExpired(Instant upTo) {
+        List<Object> encodedBatches = new ArrayList<>();
+        Iterator<Map.Entry<Instant, List<BoundedWindow>>> iterator = windowsByDeadline.headMap(upTo, true).entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Instant, List<BoundedWindow>> entry = iterator.next();
+            Instant deadline = entry.getKey();
+            for (BoundedWindow window : entry.getValue()) {
+                for (Group batch : batches.remove(window).values()) {
+                    if (batch.size() > 0) { // the key's last batch has been full
+                        encodedBatches.addAll(
+                                batch.toKeyedFrames(deadline, Collections.singleton(window), PaneInfo.NO_FIRING, windowCoder)
+                        );
+                    }
+                }
+            }
+            iterator.remove();
+        }
+        return Traversers.traverseIterable(encodedBatches);
+    }
+
+    public static SupplierEx<Processor> supplier(
+            Coder inputCoder,
+            WindowedValue.FullWindowedValueCoder outputCoder,
+            long batchSize,
+            Duration allowedLateness,
+            boolean offHeapKeys,
+            String ownerId
+    ) {
+        return () -> new GroupIntoBatchesP(inputCoder, outputCoder, batchSize, allowedLateness, offHeapKeys, ownerId);
+    }
+}
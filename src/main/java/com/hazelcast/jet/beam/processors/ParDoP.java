@@ -55,6 +55,7 @@ public class ParDoP<InputT, OutputT> extends AbstractParDoP<InputT, OutputT> { /
             Coder<InputT> inputValueCoder,
             Map<TupleTag<?>, Coder<?>> outputValueCoders,
             Map<Integer, PCollectionView<?>> ordinalToSideInput,
+            boolean cooperative,
             String ownerId,
             String stepId
     ) {
@@ -71,6 +72,7 @@ public class ParDoP<InputT, OutputT> extends AbstractParDoP<InputT, OutputT> { /
                 inputValueCoder,
                 outputValueCoders,
                 ordinalToSideInput,
+                cooperative,
                 ownerId,
                 stepId
         );
@@ -124,7 +126,8 @@ public class ParDoP<InputT, OutputT> extends AbstractParDoP<InputT, OutputT> { /
                 Map<TupleTag<?>, Coder<?>> outputCoders,
                 Coder<InputT> inputValueCoder,
                 Map<TupleTag<?>, Coder<?>> outputValueCoders,
-                List<PCollectionView<?>> sideInputs
+                List<PCollectionView<?>> sideInputs,
+                boolean cooperative
         ) {
             super(
                     stepId,
@@ -140,7 +143,8 @@ public class ParDoP<InputT, OutputT> extends AbstractParDoP<InputT, OutputT> { /
                     outputCoders,
                     inputValueCoder,
                     outputValueCoders,
-                    sideInputs
+                    sideInputs,
+                    cooperative
             );
         }
 
@@ -158,6 +162,7 @@ public class ParDoP<InputT, OutputT> extends AbstractParDoP<InputT, OutputT> { /
                 Coder<InputT> inputValueCoder,
                 Map<TupleTag<?>, Coder<?>> outputValueCoders,
                 Map<Integer, PCollectionView<?>> ordinalToSideInput,
+                boolean cooperative,
                 String ownerId,
                 String stepId
         ) {
@@ -174,6 +179,7 @@ public class ParDoP<InputT, OutputT> extends AbstractParDoP<InputT, OutputT> { /
                     inputValueCoder,
                     outputValueCoders,
                     ordinalToSideInput,
+                    cooperative,
                     ownerId,
                     stepId
             );
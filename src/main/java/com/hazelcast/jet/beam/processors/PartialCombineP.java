@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.Traversers;
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.beam.Utils.ByteArrayKey;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.Watermark;
+import com.hazelcast.jet.function.SupplierEx;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.transforms.Combine.CombineFn;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.transforms.windowing.TimestampCombiner;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.joda.time.Instant;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jet {@link com.hazelcast.jet.core.Processor} implementation for the first,
+ * local stage of a lifted Beam Combine.PerKey. It pre-aggregates its input
+ * into one accumulator per key and window and only emits the accumulators,
+ * which then get shuffled to a {@link WindowGroupP} merging them.
+ *
+ * <p>Accumulators are emitted when the input is complete, before forwarding
+ * watermarks and whenever too many keys are being accumulated.
+ *
+ * @param <K> key type of the input {@link KV} values
+ * @param <InputT> value type of the input {@link KV} values
+ * @param <AccumT> type of the accumulators
+ */
+public class PartialCombineP<K, InputT, AccumT> extends AbstractProcessor {
+
+    private final Coder inputCoder;
+    private final Coder outputCoder;
+    private final Coder<K> keyCoder;
+    private final CombineFn<InputT, AccumT, ?> combineFn;
+    private final TimestampCombiner timestampCombiner;
+    private final int maxAccumulators;
+    @SuppressWarnings({"FieldCanBeLocal", "unused"})
+    private final String ownerId; //do not remove, useful for debugging
+
+    private final Map<BoundedWindow, Map<ByteArrayKey, Accumulation>> accumulations = new HashMap<>();
+    private int accumulationCount;
+    private Traverser<Object> flushTraverser;
+    private Traverser<Object> watermarkTraverser;
+
+    private PartialCombineP(
+            Coder inputCoder,
+            WindowedValue.WindowedValueCoder<KV<K, AccumT>> outputCoder,
+            CombineFn<InputT, AccumT, ?> combineFn,
+            WindowingStrategy<?, ?> windowingStrategy,
+            int maxAccumulators,
+            String ownerId
+    ) {
+        this.inputCoder = inputCoder;
+        this.outputCoder = outputCoder;
+        this.keyCoder = ((KvCoder<K, AccumT>) outputCoder.getValueCoder()).getKeyCoder();
+        this.combineFn = combineFn;
+        this.timestampCombiner = windowingStrategy.getTimestampCombiner();
+        this.maxAccumulators = maxAccumulators;
+        this.ownerId = ownerId;
+    }
+
+    @Override
+    protected boolean tryProcess(int ordinal, @Nonnull Object item) {
+        if (!emitPendingFlush()) {
+            return false;
+        }
+
+        WindowedValue<KV<K, InputT>> windowedValue = Utils.decodeWindowedValue(item, inputCoder);
+        KV<K, InputT> kv = windowedValue.getValue();
+        ByteArrayKey keyBytes = Utils.getEncodedKey(item, kv.getKey(), keyCoder);
+        for (BoundedWindow window : windowedValue.getWindows()) {
+            Accumulation accumulation = accumulations
+                    .computeIfAbsent(window, w -> new HashMap<>())
+                    .computeIfAbsent(keyBytes, k -> {
+                        accumulationCount++;
+                        return new Accumulation(kv.getKey(), window);
+                    });
+            accumulation.add(kv.getValue(), windowedValue.getTimestamp());
+        }
+
+        if (accumulationCount >= maxAccumulators) {
+            flushTraverser = flush();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryProcessWatermark(@Nonnull Watermark watermark) {
+        if (!emitPendingFlush()) {
+            return false;
+        }
+        if (watermarkTraverser == null) {
+            watermarkTraverser = flush().append(watermark);
+        }
+        if (!emitFromTraverser(watermarkTraverser)) {
+            return false;
+        }
+        watermarkTraverser = null;
+        return true;
+    }
+
+    @Override
+    public boolean complete() {
+        if (flushTraverser == null) {
+            // if there is a pending flush, it has already taken all the accumulations
+            flushTraverser = flush();
+        }
+        return emitFromTraverser(flushTraverser);
+    }
+
+    private boolean emitPendingFlush() {
+        if (flushTraverser != null) {
+            if (!emitFromTraverser(flushTraverser)) {
+                return false;
+            }
+            flushTraverser = null;
+        }
+        return true;
+    }
+
+    private Traverser<Object> flush() {
+        List<Object> encodedAccumulations = new ArrayList<>(accumulationCount);
+        for (Map<ByteArrayKey, Accumulation> accumulationsOfWindow : accumulations.values()) {
+            for (Accumulation accumulation : accumulationsOfWindow.values()) {
+                encodedAccumulations.add(Utils.encode(accumulation.toWindowedValue(), outputCoder));
+            }
+        }
+        accumulations.clear();
+        accumulationCount = 0;
+        return Traversers.traverseIterable(encodedAccumulations);
+    }
+
+    public static <K, InputT, AccumT> SupplierEx<Processor> supplier(
+            Coder inputCoder,
+            WindowedValue.WindowedValueCoder<KV<K, AccumT>> outputCoder,
+            CombineFn<InputT, AccumT, ?> combineFn,
+            WindowingStrategy<?, ?> windowingStrategy,
+            int maxAccumulators,
+            String ownerId
+    ) {
+        return () -> new PartialCombineP<>(inputCoder, outputCoder, combineFn, windowingStrategy, maxAccumulators, ownerId);
+    }
+
+    private class Accumulation {
+        private final K key;
+        private final BoundedWindow window;
+        private AccumT accumulator;
+        private Instant timestamp;
+
+        Accumulation(K key, BoundedWindow window) {
+            this.key = key;
+            this.window = window;
+            this.accumulator = combineFn.createAccumulator();
+        }
+
+        void add(InputT input, Instant inputTimestamp) {
+            accumulator = combineFn.addInput(accumulator, input);
+            timestamp = timestamp == null ? inputTimestamp : timestampCombiner.combine(timestamp, inputTimestamp);
+        }
+
+        WindowedValue<KV<K, AccumT>> toWindowedValue() {
+            return WindowedValue.of(
+                    KV.of(key, combineFn.compact(accumulator)),
+                    timestamp,
+                    Collections.singleton(window),
+                    PaneInfo.NO_FIRING
+            );
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.AbstractProcessor;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.function.SupplierEx;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.util.WindowedValue;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Jet {@link com.hazelcast.jet.core.Processor} implementation for Beam's
+ * Reshuffle transform. The actual redistribution of the data is done by the
+ * distributed, partitioned edge leading into the processor; the processor
+ * itself just forwards the encoded elements (and watermarks) as they come,
+ * without buffering them or waiting for any trigger. Elements which arrive
+ * decoded, like the ones a chunked GroupByKey output is put back together
+ * into (see {@link UnchunkingP}), are encoded into keyed frames again, the
+ * partitioned edges leaving the processor need those.
+ */
+public class ReshuffleP extends AbstractProcessor {
+
+    private final Coder outputCoder;
+    @SuppressWarnings({"FieldCanBeLocal", "unused"})
+    private final String ownerId; //do not remove, useful for debugging
+
+    private Object pendingItem; // the outbox has to be offered the same item again after refusing it
+
+    private ReshuffleP(Coder outputCoder, String ownerId) {
+        this.outputCoder = outputCoder;
+        this.ownerId = ownerId;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected boolean tryProcess(int ordinal, @Nonnull Object item) {
+        if (pendingItem == null) {
+            pendingItem = item instanceof byte[] ? item : Utils.encode((WindowedValue) item, outputCoder);
+        }
+        if (!tryEmit(pendingItem)) {
+            return false;
+        }
+        pendingItem = null;
+        return true;
+    }
+
+    public static SupplierEx<Processor> supplier(Coder outputCoder, String ownerId) {
+        return () -> new ReshuffleP(outputCoder, ownerId);
+    }
+}
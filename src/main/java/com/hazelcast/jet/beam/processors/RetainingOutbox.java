@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.core.Outbox;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Outbox wrapper for processors which offer items from more than one place
+ * within a single call, like the ones wrapping or chaining others. Once
+ * Jet's outbox refuses an item, it must not be offered anything else until
+ * the processor has returned, and then it has to get the same item again.
+ * This outbox takes the refused item over instead, offers it again first in
+ * the following calls and refuses all the others until it's accepted.
+ *
+ * <p>{@link #reset()} has to be called each time the processor is called
+ * into, {@link #tryFlush()} before it reports being done.
+ */
+class RetainingOutbox implements Outbox {
+
+    private final Outbox outbox;
+
+    private Object pendingItem;
+    private int pendingOrdinal;
+    private int[] pendingOrdinals;
+    private boolean refused;
+
+    RetainingOutbox(Outbox outbox) {
+        this.outbox = outbox;
+    }
+
+    /**
+     * Allows offering to the underlying outbox again, to be called when the
+     * processor gets called.
+     */
+    void reset() {
+        refused = false;
+    }
+
+    /**
+     * Offers the retained item again, returns true if there is none left.
+     */
+    boolean tryFlush() {
+        if (pendingItem == null) {
+            return true;
+        }
+        if (refused) {
+            return false;
+        }
+        boolean accepted = pendingOrdinals == null ?
+                outbox.offer(pendingOrdinal, pendingItem) :
+                outbox.offer(pendingOrdinals, pendingItem);
+        if (!accepted) {
+            refused = true;
+            return false;
+        }
+        pendingItem = null;
+        pendingOrdinals = null;
+        return true;
+    }
+
+    @Override
+    public int bucketCount() {
+        return outbox.bucketCount();
+    }
+
+    @Override
+    public boolean offer(int ordinal, @Nonnull Object item) {
+        if (!tryFlush() || refused) {
+            return false;
+        }
+        if (!outbox.offer(ordinal, item)) {
+            refused = true;
+            pendingItem = item;
+            pendingOrdinal = ordinal;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(@Nonnull int[] ordinals, @Nonnull Object item) {
+        if (!tryFlush() || refused) {
+            return false;
+        }
+        if (!outbox.offer(ordinals, item)) {
+            refused = true;
+            pendingItem = item;
+            pendingOrdinals = ordinals.clone();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offerToSnapshot(@Nonnull Object key, @Nonnull Object value) {
+        if (!tryFlush() || refused) {
+            return false;
+        }
+        if (!outbox.offerToSnapshot(key, value)) {
+            refused = true; // the caller offers the same entry again
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hasUnfinishedItem() {
+        return pendingItem != null || outbox.hasUnfinishedItem();
+    }
+}
@@ -16,8 +16,10 @@
 
 package com.hazelcast.jet.beam.processors;
 
+import com.hazelcast.jet.beam.ByteKeyMap;
+import com.hazelcast.jet.beam.JetPipelineOptions;
+import com.hazelcast.jet.beam.Utils;
 import com.hazelcast.jet.core.Processor;
-import com.hazelcast.jet.core.Watermark;
 import org.apache.beam.runners.core.DoFnRunner;
 import org.apache.beam.runners.core.DoFnRunners;
 import org.apache.beam.runners.core.InMemoryStateInternals;
@@ -30,6 +32,7 @@ import org.apache.beam.runners.core.StepContext;
 import org.apache.beam.runners.core.TimerInternals;
 import org.apache.beam.runners.core.construction.SerializablePipelineOptions;
 import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.options.PipelineOptions;
 import org.apache.beam.sdk.transforms.DoFn;
 import org.apache.beam.sdk.transforms.DoFnSchemaInformation;
@@ -41,8 +44,6 @@ import org.apache.beam.sdk.values.TupleTag;
 import org.apache.beam.sdk.values.WindowingStrategy;
 import org.joda.time.Instant;
 
-import javax.annotation.Nonnull;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -52,6 +53,8 @@ import java.util.Set;
  */
 public class StatefulParDoP<OutputT> extends AbstractParDoP<KV<?, ?>, OutputT> { // todo: unify with ParDoP?
 
+    private final Coder<Object> keyCoder;
+
     private KeyedStepContext keyedStepContext;
     private InMemoryTimerInternals timerInternals;
 
@@ -68,6 +71,7 @@ public class StatefulParDoP<OutputT> extends AbstractParDoP<KV<?, ?>, OutputT> {
             Coder<KV<?, ?>> inputValueCoder,
             Map<TupleTag<?>, Coder<?>> outputValueCoders,
             Map<Integer, PCollectionView<?>> ordinalToSideInput,
+            boolean cooperative,
             String ownerId,
             String stepId
     ) {
@@ -84,9 +88,11 @@ public class StatefulParDoP<OutputT> extends AbstractParDoP<KV<?, ?>, OutputT> {
                 inputValueCoder,
                 outputValueCoders,
                 ordinalToSideInput,
+                cooperative,
                 ownerId,
                 stepId
         );
+        this.keyCoder = ((KvCoder<Object, ?>) (Coder) inputValueCoder).getKeyCoder();
     }
 
     @Override
@@ -103,7 +109,7 @@ public class StatefulParDoP<OutputT> extends AbstractParDoP<KV<?, ?>, OutputT> {
             DoFnSchemaInformation doFnSchemaInformation
     ) {
         timerInternals = new InMemoryTimerInternals();
-        keyedStepContext = new KeyedStepContext(timerInternals);
+        keyedStepContext = new KeyedStepContext(timerInternals, pipelineOptions.as(JetPipelineOptions.class).getJetOffHeapKeys());
         return DoFnRunners.simpleRunner(
                 pipelineOptions,
                 doFn,
@@ -133,25 +139,16 @@ public class StatefulParDoP<OutputT> extends AbstractParDoP<KV<?, ?>, OutputT> {
     }
 
     @Override
-    protected void processElementWithRunner(DoFnRunner<KV<?, ?>, OutputT> runner, WindowedValue<KV<?, ?>> windowedValue) {
+    protected void processElementWithRunner(DoFnRunner<KV<?, ?>, OutputT> runner, Object item, WindowedValue<KV<?, ?>> windowedValue) {
         KV<?, ?> kv = windowedValue.getValue();
         Object key = kv.getKey();
-        keyedStepContext.setKey(key);
-
-        super.processElementWithRunner(runner, windowedValue);
-    }
+        keyedStepContext.setKey(key, Utils.getKeyedFrame(item, key, keyCoder));
 
-    @Override
-    public boolean tryProcessWatermark(@Nonnull Watermark watermark) {
-        return flushTimers(watermark.timestamp()) && super.tryProcessWatermark(watermark);
+        super.processElementWithRunner(runner, item, windowedValue);
     }
 
     @Override
-    public boolean complete() {
-        return flushTimers(BoundedWindow.TIMESTAMP_MAX_VALUE.getMillis()) && super.complete();
-    }
-
-    private boolean flushTimers(long watermark) {
+    protected boolean flushTimers(long watermark) {
         if (timerInternals.currentInputWatermarkTime().isBefore(watermark)) {
             try {
                 Instant watermarkInstant = new Instant(watermark);
@@ -221,7 +218,8 @@ public class StatefulParDoP<OutputT> extends AbstractParDoP<KV<?, ?>, OutputT> {
                 Map<TupleTag<?>, Coder<?>> outputCoders,
                 Coder<KV<?, ?>> inputValueCoder,
                 Map<TupleTag<?>, Coder<?>> outputValueCoders,
-                List<PCollectionView<?>> sideInputs
+                List<PCollectionView<?>> sideInputs,
+                boolean cooperative
         ) {
             super(
                     stepId,
@@ -237,7 +235,8 @@ public class StatefulParDoP<OutputT> extends AbstractParDoP<KV<?, ?>, OutputT> {
                     outputCoders,
                     inputValueCoder,
                     outputValueCoders,
-                    sideInputs
+                    sideInputs,
+                    cooperative
             );
         }
 
@@ -255,6 +254,7 @@ public class StatefulParDoP<OutputT> extends AbstractParDoP<KV<?, ?>, OutputT> {
                 Coder<KV<?, ?>> inputValueCoder,
                 Map<TupleTag<?>, Coder<?>> outputValueCoders,
                 Map<Integer, PCollectionView<?>> ordinalToSideInput,
+                boolean cooperative,
                 String ownerId,
                 String stepId
         ) {
@@ -271,6 +271,7 @@ public class StatefulParDoP<OutputT> extends AbstractParDoP<KV<?, ?>, OutputT> {
                     inputValueCoder,
                     outputValueCoders,
                     ordinalToSideInput,
+                    cooperative,
                     ownerId,
                     stepId
             );
@@ -279,18 +280,22 @@ public class StatefulParDoP<OutputT> extends AbstractParDoP<KV<?, ?>, OutputT> {
 
     private static class KeyedStepContext implements StepContext {
 
-        private final Map<Object, InMemoryStateInternals> stateInternalsOfKeys;
+        private final ByteKeyMap<InMemoryStateInternals> stateInternalsOfKeys;
         private final InMemoryTimerInternals timerInternals;
 
         private InMemoryStateInternals currentStateInternals;
 
-        KeyedStepContext(InMemoryTimerInternals timerInternals) {
-            this.stateInternalsOfKeys = new HashMap<>();
+        KeyedStepContext(InMemoryTimerInternals timerInternals, boolean offHeapKeys) {
+            this.stateInternalsOfKeys = new ByteKeyMap<>(offHeapKeys);
             this.timerInternals = timerInternals;
         }
 
-        void setKey(Object key) {
-            currentStateInternals = stateInternalsOfKeys.computeIfAbsent(key, InMemoryStateInternals::forKey);
+        void setKey(Object key, byte[] keyedFrame) {
+            currentStateInternals = stateInternalsOfKeys.get(keyedFrame);
+            if (currentStateInternals == null) {
+                currentStateInternals = InMemoryStateInternals.forKey(key);
+                stateInternalsOfKeys.put(keyedFrame, currentStateInternals);
+            }
         }
 
         @Override
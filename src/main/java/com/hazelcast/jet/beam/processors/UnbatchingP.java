@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.Inbox;
+import com.hazelcast.jet.core.Outbox;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.Watermark;
+import com.hazelcast.jet.function.SupplierEx;
+
+import javax.annotation.Nonnull;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Jet {@link Processor} which wraps another one and unpacks the batch
+ * frames created by {@link BatchingP} arriving on some of its inbound
+ * edges, so the wrapped processor sees the keyed frames one by one.
+ *
+ * <p>A batch is unpacked as a whole when it's reached, its frames the
+ * wrapped processor doesn't take right away are kept and handed over before
+ * anything else: more input, watermarks or the completion of the edge.
+ */
+public class UnbatchingP implements Processor {
+
+    private final Processor delegate;
+    private final Set<Integer> batchedOrdinals;
+    private final UnbatchingInbox unbatchingInbox = new UnbatchingInbox();
+
+    private UnbatchingP(Processor delegate, Set<Integer> batchedOrdinals) {
+        this.delegate = delegate;
+        this.batchedOrdinals = batchedOrdinals;
+    }
+
+    @Override
+    public boolean isCooperative() {
+        return delegate.isCooperative();
+    }
+
+    @Override
+    public void init(@Nonnull Outbox outbox, @Nonnull Context context) throws Exception {
+        delegate.init(outbox, context);
+    }
+
+    @Override
+    public void process(int ordinal, @Nonnull Inbox inbox) {
+        if (!drainUnpacked()) {
+            return;
+        }
+        if (!batchedOrdinals.contains(ordinal)) {
+            delegate.process(ordinal, inbox);
+            return;
+        }
+        unbatchingInbox.wrap(ordinal, inbox);
+        delegate.process(ordinal, unbatchingInbox);
+    }
+
+    @Override
+    public boolean tryProcessWatermark(@Nonnull Watermark watermark) {
+        return drainUnpacked() && delegate.tryProcessWatermark(watermark);
+    }
+
+    @Override
+    public boolean tryProcess() {
+        boolean drained = drainUnpacked();
+        return delegate.tryProcess() && drained;
+    }
+
+    @Override
+    public boolean completeEdge(int ordinal) {
+        return drainUnpacked() && delegate.completeEdge(ordinal);
+    }
+
+    @Override
+    public boolean complete() {
+        return drainUnpacked() && delegate.complete();
+    }
+
+    @Override
+    public boolean saveToSnapshot() {
+        return drainUnpacked() && delegate.saveToSnapshot();
+    }
+
+    @Override
+    public void restoreFromSnapshot(@Nonnull Inbox inbox) {
+        delegate.restoreFromSnapshot(inbox);
+    }
+
+    @Override
+    public boolean finishSnapshotRestore() {
+        return delegate.finishSnapshotRestore();
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+
+    /**
+     * Hands the frames left over from the last unpacked batch to the wrapped
+     * processor, returns true once there are none left.
+     */
+    private boolean drainUnpacked() {
+        if (!unbatchingInbox.hasUnpacked()) {
+            return true;
+        }
+        unbatchingInbox.wrap(unbatchingInbox.ordinal, EmptyInbox.INSTANCE);
+        delegate.process(unbatchingInbox.ordinal, unbatchingInbox);
+        return !unbatchingInbox.hasUnpacked();
+    }
+
+    /**
+     * Returns a supplier of processors which unpack the batches arriving on
+     * the given inbound ordinals of the processors provided by the given
+     * supplier. The set can still be filled in after this call, until the
+     * supplier gets serialized.
+     */
+    public static SupplierEx<Processor> supplier(SupplierEx<Processor> delegateSupplier, Set<Integer> batchedOrdinals) {
+        return () -> new UnbatchingP(delegateSupplier.getEx(), batchedOrdinals);
+    }
+
+    /**
+     * Inbox view which replaces each batch frame of the underlying inbox
+     * with the frames packed in it.
+     */
+    private static class UnbatchingInbox implements Inbox {
+
+        private Inbox inbox;
+        private int ordinal;
+
+        private byte[][] unpacked;
+        private int next;
+
+        void wrap(int ordinal, Inbox inbox) {
+            this.ordinal = ordinal;
+            this.inbox = inbox;
+        }
+
+        boolean hasUnpacked() {
+            return unpacked != null;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return peek() == null;
+        }
+
+        @Override
+        public Object peek() {
+            if (unpacked != null) {
+                return unpacked[next];
+            }
+            Object item = inbox.peek();
+            if (item instanceof byte[] && Utils.isBatchFrame((byte[]) item)) {
+                inbox.remove();
+                unpacked = Utils.unpackKeyedFrames((byte[]) item);
+                next = 0;
+                return unpacked[next];
+            }
+            return item;
+        }
+
+        @Override
+        public Object poll() {
+            Object item = peek();
+            if (item != null) {
+                remove();
+            }
+            return item;
+        }
+
+        @Override
+        public void remove() {
+            if (peek() == null) {
+                throw new NoSuchElementException();
+            }
+            if (unpacked == null) {
+                inbox.remove();
+            } else if (++next == unpacked.length) {
+                unpacked = null;
+            }
+        }
+    }
+
+    private static final class EmptyInbox implements Inbox {
+
+        static final EmptyInbox INSTANCE = new EmptyInbox();
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+
+        @Override
+        public Object peek() {
+            return null;
+        }
+
+        @Override
+        public Object poll() {
+            return null;
+        }
+
+        @Override
+        public void remove() {
+            throw new NoSuchElementException();
+        }
+    }
+}
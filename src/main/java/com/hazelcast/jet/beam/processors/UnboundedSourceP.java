@@ -67,8 +67,12 @@ public class UnboundedSourceP<T, CmT extends UnboundedSource.CheckpointMark> ext
                 Utils.roundRobinSubList(allShards, context.globalProcessorIndex(), context.totalParallelism());
         this.readers = createReaders(myShards, options);
 
-        Function<UnboundedReader<T>, byte[]> mapFn = (reader) -> Utils.encode(
-                WindowedValue.timestampedValueInGlobalWindow(reader.getCurrent(), reader.getCurrentTimestamp()), outputCoder);
+        boolean encodeOutput = Utils.isEncodedOnEdges(outputCoder);
+        Function<UnboundedReader<T>, Object> mapFn = (reader) -> {
+            WindowedValue<T> windowedValue =
+                    WindowedValue.timestampedValueInGlobalWindow(reader.getCurrent(), reader.getCurrentTimestamp());
+            return encodeOutput ? Utils.encode(windowedValue, outputCoder) : windowedValue;
+        };
 
         if (myShards.size() == 0) {
             traverser = Traversers.empty();
@@ -184,10 +188,10 @@ public class UnboundedSourceP<T, CmT extends UnboundedSource.CheckpointMark> ext
 
     private static class SingleReaderTraverser<InputT> implements Traverser<Object> {
         private final UnboundedReader<InputT> reader;
-        private final Function<UnboundedReader<InputT>, byte[]> mapFn;
+        private final Function<UnboundedReader<InputT>, Object> mapFn;
         private long lastWatermark = Long.MIN_VALUE;
 
-        SingleReaderTraverser(UnboundedReader<InputT> reader, Function<UnboundedReader<InputT>, byte[]> mapFn) {
+        SingleReaderTraverser(UnboundedReader<InputT> reader, Function<UnboundedReader<InputT>, Object> mapFn) {
             this.reader = reader;
             this.mapFn = mapFn;
         }
@@ -209,14 +213,14 @@ public class UnboundedSourceP<T, CmT extends UnboundedSource.CheckpointMark> ext
 
     private static class CoalescingTraverser<InputT> implements Traverser<Object> {
         private final UnboundedReader<InputT>[] readers;
-        private final Function<UnboundedReader<InputT>, byte[]> mapFn;
+        private final Function<UnboundedReader<InputT>, Object> mapFn;
 
         private int currentReaderIndex;
         private long minWatermark = Long.MIN_VALUE;
         private long lastSentWatermark = Long.MIN_VALUE;
         private long[] watermarks;
 
-        CoalescingTraverser(UnboundedReader<InputT>[] readers, Function<UnboundedReader<InputT>, byte[]> mapFn) {
+        CoalescingTraverser(UnboundedReader<InputT>[] readers, Function<UnboundedReader<InputT>, Object> mapFn) {
             this.readers = readers;
             watermarks = initWatermarks(readers.length);
             this.mapFn = mapFn;
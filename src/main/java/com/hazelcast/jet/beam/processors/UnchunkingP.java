@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.KeyedFrameGrouping;
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.beam.Utils.ByteArrayKey;
+import com.hazelcast.jet.core.Inbox;
+import com.hazelcast.jet.core.Outbox;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.Watermark;
+import com.hazelcast.jet.function.SupplierEx;
+import org.apache.beam.sdk.coders.Coder;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Jet {@link Processor} which wraps another one and puts the grouped
+ * elements split into chunk frames (see {@link KeyedFrameGrouping}) back
+ * together on some of its inbound edges. The chunk frames of a key are kept
+ * until the frame of their element arrives, which the wrapped processor
+ * then gets as an already decoded windowed value, with an iterable decoding
+ * the values of the chunks lazily.
+ *
+ * <p>The chunks of an element all come from the same producer, before the
+ * element itself, but chunks of other producers may arrive in between, so
+ * they are kept by key.
+ */
+public class UnchunkingP implements Processor {
+
+    private final Processor delegate;
+    private final Map<Integer, Coder> chunkedOrdinals;
+    private final Map<Integer, UnchunkingInbox> unchunkingInboxes = new HashMap<>();
+
+    private UnchunkingP(Processor delegate, Map<Integer, Coder> chunkedOrdinals) {
+        this.delegate = delegate;
+        this.chunkedOrdinals = chunkedOrdinals;
+    }
+
+    @Override
+    public boolean isCooperative() {
+        return delegate.isCooperative();
+    }
+
+    @Override
+    public void init(@Nonnull Outbox outbox, @Nonnull Context context) throws Exception {
+        delegate.init(outbox, context);
+    }
+
+    @Override
+    public void process(int ordinal, @Nonnull Inbox inbox) {
+        Coder coder = chunkedOrdinals.get(ordinal);
+        if (coder == null) {
+            delegate.process(ordinal, inbox);
+            return;
+        }
+        UnchunkingInbox unchunkingInbox = unchunkingInboxes.computeIfAbsent(ordinal, o -> new UnchunkingInbox(coder));
+        unchunkingInbox.inbox = inbox;
+        delegate.process(ordinal, unchunkingInbox);
+    }
+
+    @Override
+    public boolean tryProcessWatermark(@Nonnull Watermark watermark) {
+        return delegate.tryProcessWatermark(watermark);
+    }
+
+    @Override
+    public boolean tryProcess() {
+        return delegate.tryProcess();
+    }
+
+    @Override
+    public boolean completeEdge(int ordinal) {
+        return delegate.completeEdge(ordinal);
+    }
+
+    @Override
+    public boolean complete() {
+        return delegate.complete();
+    }
+
+    @Override
+    public boolean saveToSnapshot() {
+        return delegate.saveToSnapshot();
+    }
+
+    @Override
+    public void restoreFromSnapshot(@Nonnull Inbox inbox) {
+        delegate.restoreFromSnapshot(inbox);
+    }
+
+    @Override
+    public boolean finishSnapshotRestore() {
+        return delegate.finishSnapshotRestore();
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+
+    /**
+     * Returns a supplier of processors which put chunked elements back
+     * together on the given inbound ordinals, mapped to the coders of their
+     * edges, of the processors provided by the given supplier. The map can
+     * still be filled in after this call, until the supplier gets serialized.
+     */
+    public static SupplierEx<Processor> supplier(SupplierEx<Processor> delegateSupplier, Map<Integer, Coder> chunkedOrdinals) {
+        return () -> new UnchunkingP(delegateSupplier.getEx(), chunkedOrdinals);
+    }
+
+    /**
+     * Inbox view which takes the chunk frames out of the underlying inbox
+     * and replaces the frame of a chunked element with the element, decoded.
+     */
+    private static class UnchunkingInbox implements Inbox {
+
+        private final Coder coder;
+        private final Map<ByteArrayKey, List<byte[]>> pendingChunks = new HashMap<>();
+
+        private Inbox inbox;
+        private Object assembled; // replaces the head of the underlying inbox
+
+        UnchunkingInbox(Coder coder) {
+            this.coder = coder;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return peek() == null;
+        }
+
+        @Override
+        public Object peek() {
+            if (assembled != null) {
+                return assembled;
+            }
+            while (true) {
+                Object item = inbox.peek();
+                if (!(item instanceof byte[])) {
+                    return item;
+                }
+                byte[] frame = (byte[]) item;
+                if (Utils.isChunkFrame(frame)) {
+                    pendingChunks.computeIfAbsent(Utils.getEncodedKey(frame, null, null), k -> new ArrayList<>()).add(frame);
+                    inbox.remove();
+                    continue;
+                }
+                List<byte[]> chunks = pendingChunks.isEmpty() ? null : pendingChunks.remove(Utils.getEncodedKey(frame, null, null));
+                if (chunks != null) {
+                    assembled = KeyedFrameGrouping.decodeChunked(chunks, frame, coder);
+                    return assembled;
+                }
+                return frame;
+            }
+        }
+
+        @Override
+        public Object poll() {
+            Object item = peek();
+            if (item != null) {
+                remove();
+            }
+            return item;
+        }
+
+        @Override
+        public void remove() {
+            if (peek() == null) {
+                throw new NoSuchElementException();
+            }
+            inbox.remove();
+            assembled = null;
+        }
+    }
+}
@@ -47,11 +47,12 @@ public class ViewP extends AbstractProcessor {
     private final TimestampCombiner timestampCombiner;
     private final Coder inputCoder;
     private final Coder outputCoder;
+    private final boolean encodeOutput;
     @SuppressWarnings({"FieldCanBeLocal", "unused"})
     private final String ownerId; //do not remove, useful for debugging
 
     private Map<BoundedWindow, TimestampAndValues> values = new HashMap<>();
-    private Traverser<byte[]> resultTraverser;
+    private Traverser<Object> resultTraverser;
 
     private ViewP(
             Coder inputCoder,
@@ -61,13 +62,15 @@ public class ViewP extends AbstractProcessor {
     ) {
         this.timestampCombiner = windowingStrategy.getTimestampCombiner();
         this.inputCoder = inputCoder;
+        // the edges are set up for the coder of the view, not for the derived one
+        this.encodeOutput = Utils.isEncodedOnEdges(outputCoder);
         this.outputCoder = Utils.deriveIterableValueCoder((WindowedValue.FullWindowedValueCoder) outputCoder);
         this.ownerId = ownerId;
     }
 
     @Override
     protected boolean tryProcess(int ordinal, @Nonnull Object item) {
-        WindowedValue<?> windowedValue = Utils.decodeWindowedValue((byte[]) item, inputCoder);
+        WindowedValue<?> windowedValue = Utils.decodeWindowedValue(item, inputCoder);
         for (BoundedWindow window : windowedValue.getWindows()) {
             values
                     .merge(window,
@@ -90,7 +93,7 @@ public class ViewP extends AbstractProcessor {
                                         Collections.singleton(e.getKey()),
                                         e.getValue().pane
                                 );
-                                return Utils.encode(outputValue, outputCoder);
+                                return encodeOutput ? Utils.encode(outputValue, outputCoder) : outputValue;
                             }
                     )
             );
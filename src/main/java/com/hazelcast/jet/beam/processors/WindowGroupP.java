@@ -16,8 +16,10 @@
 
 package com.hazelcast.jet.beam.processors;
 
+import com.hazelcast.jet.beam.ByteKeyMap;
+import com.hazelcast.jet.beam.JetPipelineOptions;
+import com.hazelcast.jet.beam.KeyedFrameGrouping;
 import com.hazelcast.jet.beam.Utils;
-import com.hazelcast.jet.beam.Utils.ByteArrayKey;
 import com.hazelcast.jet.core.AbstractProcessor;
 import com.hazelcast.jet.core.AppendableTraverser;
 import com.hazelcast.jet.core.Processor;
@@ -55,16 +57,15 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
  * Jet {@link com.hazelcast.jet.core.Processor} implementation for Beam's GroupByKeyOnly +
- * GroupAlsoByWindow primitives.
+ * GroupAlsoByWindow primitives. Can also be used for combining values, if it's given a
+ * combining {@link SystemReduceFn} instead of a buffering one.
  *
  * @param <K> key type of {@link KV} values from the output of this primitive
  * @param <V> type of elements being windowed
@@ -77,10 +78,11 @@ public class WindowGroupP<K, V> extends AbstractProcessor {
     private static final Object TRY_PROCESS_MARKER = new Object();
 
     private final SerializablePipelineOptions pipelineOptions;
-    private final Coder<V> inputValueValueCoder;
+    private final SystemReduceFn<K, V, ?, ?, BoundedWindow> reduceFn;
     private final Coder outputCoder;
     private final WindowingStrategy<V, BoundedWindow> windowingStrategy;
-    private final Map<ByteArrayKey, KeyManager> keyManagers = new HashMap<>();
+    private final ByteKeyMap<KeyManager> keyManagers;
+    private final int chunkSize;
     private final AppendableTraverser<Object> appendableTraverser = new AppendableTraverser<>(128); //todo: right capacity?
     private final FlatMapper<Object, Object> flatMapper;
     @SuppressWarnings({"FieldCanBeLocal", "unused"})
@@ -94,14 +96,18 @@ public class WindowGroupP<K, V> extends AbstractProcessor {
             WindowedValueCoder<KV<K, V>> inputCoder,
             Coder outputCoder,
             WindowingStrategy<V, BoundedWindow> windowingStrategy,
+            SystemReduceFn<K, V, ?, ?, BoundedWindow> reduceFn,
             String ownerId
     ) {
         this.pipelineOptions = pipelineOptions;
         KvCoder<K, V> inputValueCoder = (KvCoder<K, V>) inputCoder.getValueCoder();
-        this.inputValueValueCoder = inputValueCoder.getValueCoder();
+        this.reduceFn = reduceFn;
         this.outputCoder = outputCoder;
         this.windowingStrategy = windowingStrategy;
         this.ownerId = ownerId;
+        JetPipelineOptions options = pipelineOptions.get().as(JetPipelineOptions.class);
+        this.keyManagers = new ByteKeyMap<>(options.getJetOffHeapKeys());
+        this.chunkSize = KeyedFrameGrouping.isChunkable(outputCoder) ? options.getJetGroupByKeyChunkSize() : 0;
 
         this.flatMapper = flatMapper(
                 item -> {
@@ -118,14 +124,18 @@ public class WindowGroupP<K, V> extends AbstractProcessor {
                         advanceWatermark(((Watermark) item).timestamp());
                         appendableTraverser.append(item);
                     } else {
-                        WindowedValue<KV<K, V>> windowedValue = Utils.decodeWindowedValue((byte[]) item, inputCoder);
+                        WindowedValue<KV<K, V>> windowedValue = Utils.decodeWindowedValue(item, inputCoder);
                         KV<K, V> kv = windowedValue.getValue();
                         K key = kv.getKey();
                         V value = kv.getValue();
-                        ByteArrayKey keyBytes = new ByteArrayKey(Utils.encode(key, inputValueCoder.getKeyCoder()));
+                        byte[] keyedFrame = Utils.getKeyedFrame(item, key, inputValueCoder.getKeyCoder());
                         WindowedValue<V> updatedWindowedValue = WindowedValue.of(value, windowedValue.getTimestamp(), windowedValue.getWindows(), windowedValue.getPane());
-                        keyManagers.computeIfAbsent(keyBytes, x -> new KeyManager(key))
-                                   .processElement(updatedWindowedValue);
+                        KeyManager keyManager = keyManagers.get(keyedFrame);
+                        if (keyManager == null) {
+                            keyManager = new KeyManager(key);
+                            keyManagers.put(keyedFrame, keyManager);
+                        }
+                        keyManager.processElement(updatedWindowedValue);
                     }
                     return appendableTraverser;
                 }
@@ -140,7 +150,21 @@ public class WindowGroupP<K, V> extends AbstractProcessor {
             WindowingStrategy windowingStrategy,
             String ownerId
     ) {
-        return () -> new WindowGroupP<>(pipelineOptions, inputCoder, outputCoder, windowingStrategy, ownerId);
+        KvCoder<K, V> inputValueCoder = (KvCoder<K, V>) inputCoder.getValueCoder();
+        SystemReduceFn<K, V, ?, ?, BoundedWindow> reduceFn = SystemReduceFn.buffering(inputValueCoder.getValueCoder());
+        return supplier(pipelineOptions, inputCoder, outputCoder, windowingStrategy, reduceFn, ownerId);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> SupplierEx<Processor> supplier(
+            SerializablePipelineOptions pipelineOptions,
+            WindowedValueCoder<KV<K, V>> inputCoder,
+            Coder outputCoder,
+            WindowingStrategy windowingStrategy,
+            SystemReduceFn<K, V, ?, ?, BoundedWindow> reduceFn,
+            String ownerId
+    ) {
+        return () -> new WindowGroupP<>(pipelineOptions, inputCoder, outputCoder, windowingStrategy, reduceFn, ownerId);
     }
 
     @Override
@@ -201,8 +225,9 @@ public class WindowGroupP<K, V> extends AbstractProcessor {
 
         private final InMemoryTimerInternals timerInternals;
         private final InMemoryStateInternalsImpl stateInternals;
-        private final ReduceFnRunner<K, V, Iterable<V>, BoundedWindow> reduceFnRunner;
+        private final ReduceFnRunner<K, V, Object, BoundedWindow> reduceFnRunner;
 
+        @SuppressWarnings("unchecked")
         KeyManager(K key) {
             this.timerInternals = new InMemoryTimerInternals();
             this.stateInternals = new InMemoryStateInternalsImpl(key);
@@ -214,10 +239,18 @@ public class WindowGroupP<K, V> extends AbstractProcessor {
                                     TriggerTranslation.toProto(windowingStrategy.getTrigger()))),
                     stateInternals,
                     timerInternals,
-                    new OutputWindowedValue<KV<K, Iterable<V>>>() {
+                    new OutputWindowedValue<KV<K, Object>>() {
                         @Override
-                        public void outputWindowedValue(KV<K, Iterable<V>> output, Instant timestamp, Collection<? extends BoundedWindow> windows, PaneInfo pane) {
-                            WindowedValue<KV<K, Iterable<V>>> windowedValue = WindowedValue.of(output, timestamp, windows, pane);
+                        public void outputWindowedValue(KV<K, Object> output, Instant timestamp, Collection<? extends BoundedWindow> windows, PaneInfo pane) {
+                            WindowedValue<KV<K, Object>> windowedValue = WindowedValue.of(output, timestamp, windows, pane);
+                            if (chunkSize > 0) {
+                                // the values of hot keys get split into chunks
+                                for (byte[] frame : KeyedFrameGrouping.encodeChunked((WindowedValue<KV<Object, Iterable<Object>>>) (WindowedValue) windowedValue, outputCoder, chunkSize)) {
+                                    //noinspection ResultOfMethodCallIgnored
+                                    appendableTraverser.append(frame);
+                                }
+                                return;
+                            }
                             byte[] encodedValue = Utils.encode(windowedValue, outputCoder);
                             //noinspection ResultOfMethodCallIgnored
                             appendableTraverser.append(encodedValue);
@@ -235,7 +268,7 @@ public class WindowGroupP<K, V> extends AbstractProcessor {
                         }
                     },
                     NullSideInputReader.empty(),
-                    SystemReduceFn.buffering(inputValueValueCoder),
+                    (SystemReduceFn<K, V, ?, Object, BoundedWindow>) reduceFn,
                     pipelineOptions.get()
             );
             advanceWatermark(latestWatermark, Instant.now());
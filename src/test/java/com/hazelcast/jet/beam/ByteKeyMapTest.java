@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ByteKeyMapTest {
+
+    private static final int KEY_COUNT = 100_000;
+
+    @Test
+    public void testHeapKeys() {
+        testPutAndGet(false);
+    }
+
+    @Test
+    public void testOffHeapKeys() {
+        testPutAndGet(true);
+    }
+
+    private static void testPutAndGet(boolean offHeapKeys) {
+        ByteKeyMap<Integer> map = new ByteKeyMap<>(offHeapKeys);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            assertNull(map.put(keyFrame("key-" + i), i));
+        }
+        assertEquals(KEY_COUNT, map.size());
+
+        // frames of whole windowed values and key only frames both find their key
+        WindowedValue.FullWindowedValueCoder<KV<String, Integer>> coder = WindowedValue.FullWindowedValueCoder.of(
+                KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of()), GlobalWindow.Coder.INSTANCE);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            byte[] frame = Utils.encode(WindowedValue.valueInGlobalWindow(KV.of("key-" + i, -i)), coder);
+            assertEquals(Integer.valueOf(i), map.get(frame));
+            assertEquals(Integer.valueOf(i), map.put(keyFrame("key-" + i), i + 1));
+        }
+        assertNull(map.get(keyFrame("key-" + KEY_COUNT)));
+
+        Set<Integer> values = new HashSet<>();
+        map.values().forEach(values::add);
+        assertEquals(KEY_COUNT, values.size());
+    }
+
+    private static byte[] keyFrame(String key) {
+        return Utils.getKeyedFrame(key, key, StringUtf8Coder.of());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
+import org.apache.beam.sdk.coders.BigEndianLongCoder;
+import org.apache.beam.sdk.coders.ByteArrayCoder;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.ListCoder;
+import org.apache.beam.sdk.coders.NullableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.values.KV;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CodecsTest {
+
+    @Test
+    public void testSameBytesAsCoders() throws Exception {
+        assertSameBytes(StringUtf8Coder.of(), "ascii");
+        assertSameBytes(StringUtf8Coder.of(), "n\u00f6n-\u00e4scii \u20ac");
+        assertSameBytes(VarLongCoder.of(), Long.MIN_VALUE);
+        assertSameBytes(VarLongCoder.of(), 300L);
+        assertSameBytes(VarIntCoder.of(), -1);
+        assertSameBytes(VarIntCoder.of(), 127);
+        assertSameBytes(BigEndianLongCoder.of(), -42L);
+        assertSameBytes(BigEndianIntegerCoder.of(), 42);
+        assertSameBytes(ByteArrayCoder.of(), new byte[] {1, 2, 3});
+        assertSameBytes(NullableCoder.of(StringUtf8Coder.of()), null);
+        assertSameBytes(KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of()), KV.of("key", 42L));
+        assertSameBytes(
+                KvCoder.of(StringUtf8Coder.of(), IterableCoder.of(NullableCoder.of(StringUtf8Coder.of()))),
+                KV.of("key", Arrays.asList("a", null, "c"))
+        );
+        assertSameBytes(ListCoder.of(ByteArrayCoder.of()), Collections.singletonList(new byte[] {42}));
+    }
+
+    @Test
+    public void testIterableOfUnknownSizeDecoded() throws Exception {
+        IterableCoder<Long> coder = IterableCoder.of(VarLongCoder.of());
+        Iterable<Long> iterable = () -> Arrays.asList(1L, 2L, 3L).iterator(); // not a collection
+        byte[] bytes = CoderUtils.encodeToByteArray(coder, iterable);
+        assertEquals(Arrays.asList(1L, 2L, 3L), decode(coder, bytes, true));
+    }
+
+    @Test
+    public void testSubclassedCoderNotSpecialised() throws Exception {
+        assertSameBytes(new ReversingListCoder(), Arrays.asList(1L, 2L, 3L));
+        assertSameBytes(KvCoder.of(StringUtf8Coder.of(), new ReversingListCoder()), KV.of("key", Arrays.asList(1L, 2L)));
+    }
+
+    private static <T> void assertSameBytes(Coder<T> coder, T value) throws Exception {
+        for (boolean outer : new boolean[] {true, false}) {
+            Coder.Context context = outer ? Coder.Context.OUTER : Coder.Context.NESTED;
+            byte[] expected = CoderUtils.encodeToByteArray(coder, value, context);
+
+            CodecBuffers.OutputBuffer buffer = CodecBuffers.output();
+            Codecs.of(coder).encode(value, buffer, outer);
+            byte[] actual = buffer.toByteArray();
+
+            assertArrayEquals(expected, actual);
+            assertEquals(coder.structuralValue(value), coder.structuralValue(decode(coder, actual, outer)));
+        }
+    }
+
+    private static <T> T decode(Coder<T> coder, byte[] bytes, boolean outer) throws Exception {
+        CodecBuffers.InputBuffer buffer = CodecBuffers.input(bytes, 0, bytes.length);
+        try {
+            return Codecs.of(coder).decode(buffer, outer);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Writes the elements in reverse order, a specialised codec of its
+     * superclass would write them in the original one.
+     */
+    private static class ReversingListCoder extends ListCoder<Long> {
+
+        ReversingListCoder() {
+            super(VarLongCoder.of());
+        }
+
+        @Override
+        public void encode(List<Long> value, OutputStream outStream) throws IOException {
+            super.encode(reverse(value), outStream);
+        }
+
+        @Override
+        public List<Long> decode(InputStream inStream) throws IOException {
+            return reverse(super.decode(inStream));
+        }
+
+        private static List<Long> reverse(List<Long> list) {
+            List<Long> reversed = new ArrayList<>(list);
+            Collections.reverse(reversed);
+            return reversed;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.transforms.windowing.BoundedWindow;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompactWindowedValueCoderTest {
+
+    private static final WindowedValue.FullWindowedValueCoder<String> GLOBAL_CODER =
+            WindowedValue.FullWindowedValueCoder.of(StringUtf8Coder.of(), GlobalWindow.Coder.INSTANCE);
+    private static final WindowedValue.FullWindowedValueCoder<String> INTERVAL_CODER =
+            WindowedValue.FullWindowedValueCoder.of(StringUtf8Coder.of(), IntervalWindow.getCoder());
+
+    @Test
+    public void testGlobalWindowRoundTrip() throws Exception {
+        assertRoundTrip(GLOBAL_CODER, WindowedValue.valueInGlobalWindow("value"));
+        assertRoundTrip(GLOBAL_CODER, WindowedValue.timestampedValueInGlobalWindow("value", new Instant(42)));
+        assertRoundTrip(GLOBAL_CODER, WindowedValue.of(
+                "value", new Instant(-42), GlobalWindow.INSTANCE, PaneInfo.createPane(false, true, PaneInfo.Timing.LATE, 1, 1)));
+    }
+
+    @Test
+    public void testIntervalWindowRoundTrip() throws Exception {
+        IntervalWindow window = new IntervalWindow(new Instant(1_000), new Instant(2_000));
+        assertRoundTrip(INTERVAL_CODER, WindowedValue.of("value", window.maxTimestamp(), window, PaneInfo.ON_TIME_AND_ONLY_FIRING));
+        assertRoundTrip(INTERVAL_CODER, WindowedValue.of("value", new Instant(1_500), window, PaneInfo.NO_FIRING));
+        assertRoundTrip(INTERVAL_CODER, WindowedValue.of("value", new Instant(5_000), window, PaneInfo.NO_FIRING));
+        assertRoundTrip(INTERVAL_CODER, WindowedValue.of(
+                "value",
+                new Instant(1_500),
+                Arrays.asList(window, new IntervalWindow(new Instant(1_500), new Instant(2_500))),
+                PaneInfo.NO_FIRING
+        ));
+    }
+
+    @Test
+    public void testSmallerThanFullCoder() throws Exception {
+        IntervalWindow window = new IntervalWindow(new Instant(1_000), new Instant(2_000));
+        WindowedValue<String> value = WindowedValue.of("value", window.maxTimestamp(), window, PaneInfo.NO_FIRING);
+        byte[] full = CoderUtils.encodeToByteArray(INTERVAL_CODER, value);
+        byte[] compact = CoderUtils.encodeToByteArray(CompactWindowedValueCoder.of(INTERVAL_CODER), value);
+        assertTrue(compact.length + " >= " + full.length, compact.length < full.length);
+    }
+
+    @Test
+    public void testDecodedWindowsInterned() throws Exception {
+        CompactWindowedValueCoder<String> coder = CompactWindowedValueCoder.of(INTERVAL_CODER);
+        IntervalWindow window = new IntervalWindow(new Instant(1_000), new Instant(2_000));
+        byte[] first = CoderUtils.encodeToByteArray(coder, WindowedValue.of("a", new Instant(1_100), window, PaneInfo.NO_FIRING));
+        byte[] second = CoderUtils.encodeToByteArray(coder, WindowedValue.of("b", new Instant(1_200), window, PaneInfo.NO_FIRING));
+        BoundedWindow firstWindow = CoderUtils.decodeFromByteArray(coder, first).getWindows().iterator().next();
+        BoundedWindow secondWindow = CoderUtils.decodeFromByteArray(coder, second).getWindows().iterator().next();
+        assertSame(firstWindow, secondWindow);
+    }
+
+    private static void assertRoundTrip(WindowedValue.FullWindowedValueCoder<String> fullCoder, WindowedValue<String> value)
+            throws Exception {
+        CompactWindowedValueCoder<String> coder = CompactWindowedValueCoder.of(fullCoder);
+        WindowedValue<String> decoded = CoderUtils.decodeFromByteArray(coder, CoderUtils.encodeToByteArray(coder, value));
+        assertEquals(value, decoded);
+        assertEquals(value, Utils.decodeWindowedValue(Utils.encode(value, fullCoder), fullCoder));
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.jet.config.EdgeConfig;
+import com.hazelcast.jet.config.JetConfig;
+import com.hazelcast.jet.core.DAG;
+import com.hazelcast.jet.core.Edge;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.Vertex;
+import com.hazelcast.jet.core.test.TestSupport;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.state.StateSpec;
+import org.apache.beam.sdk.state.StateSpecs;
+import org.apache.beam.sdk.state.ValueState;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Values;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the shape of the DAGs pipelines get translated into, by way of
+ * their explain plans.
+ */
+public class DAGBuilderTest {
+
+    @Test
+    public void testCreateTranslatedIntoSingleVertex() throws Exception {
+        JetPipelineOptions options = options();
+        Pipeline p = Pipeline.create(options);
+        p.apply(Create.of(KV.of("a", 1), KV.of("b", 2)))
+         .apply(Values.create());
+        JsonNode json = explain(options, p);
+
+        assertEquals(names(json).toString(), 2, json.get("vertices").size());
+        JsonNode create = vertex(json, "Create.Values");
+        assertTrue(create.get("cooperative").asBoolean());
+        assertEquals(create.get("name").asText(), edge(json, "Create.Values/Read(CreateSource).out").get("source").asText());
+    }
+
+    @Test
+    public void testTransformLocalParallelism() throws Exception {
+        JetPipelineOptions options = options();
+        options.setJetLocalParallelism(2);
+        // the first fully matching regex applies, regexes may have '=' in them
+        options.setJetTransformLocalParallelism(Arrays.asList("(?=Group).*=4", "G.*=3", "Values/.* = 1"));
+        Pipeline p = Pipeline.create(options);
+        p.apply(Create.of(KV.of("a", 1), KV.of("b", 2)))
+         .apply(GroupByKey.create())
+         .apply(Values.create());
+        JsonNode json = explain(options, p);
+
+        assertEquals(2, vertex(json, "Create.Values").get("localParallelism").asInt());
+        assertEquals(4, vertex(json, "GroupByKey").get("localParallelism").asInt());
+        assertEquals(1, vertex(json, "Values/").get("localParallelism").asInt());
+    }
+
+    @Test
+    public void testInvalidTransformLocalParallelism() {
+        for (String item : Arrays.asList("GroupByKey", "GroupByKey=", "GroupByKey=four", "GroupByKey=0", "GroupByKey=-2")) {
+            JetPipelineOptions options = options();
+            options.setJetTransformLocalParallelism(Collections.singletonList(item));
+            try {
+                new DAGBuilder(options);
+                fail("Accepted " + item);
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().endsWith(item));
+            }
+        }
+    }
+
+    @Test
+    public void testEdgeConfig() {
+        JetPipelineOptions options = options();
+        Pipeline p = Pipeline.create(options);
+        p.apply(Create.of(KV.of("a", 1), KV.of("b", 2)))
+         .apply(GroupByKey.create())
+         .apply(Values.create());
+
+        // edges without any settings use the config of the Jet instance
+        for (Edge edge : edges(JetRunner.fromOptions(options).getDag(p))) {
+            assertNull(edge.getConfig());
+        }
+
+        options.setJetEdgeQueueSize(256);
+        options.setJetPCollectionEdgeConfig(Arrays.asList("Group.*=packetSizeLimit:4096; queueSize:64", "GroupByKey.out=queueSize:32"));
+        for (Edge edge : edges(JetRunner.fromOptions(options).getDag(p))) {
+            EdgeConfig config = edge.getConfig();
+            if (edge.getSourceName().contains("(GroupByKey)")) {
+                assertEquals(64, config.getQueueSize());
+                assertEquals(4096, config.getPacketSizeLimit());
+            } else {
+                assertEquals(256, config.getQueueSize());
+                assertEquals(new EdgeConfig().getPacketSizeLimit(), config.getPacketSizeLimit());
+            }
+            assertEquals(new EdgeConfig().getReceiveWindowMultiplier(), config.getReceiveWindowMultiplier());
+        }
+    }
+
+    @Test
+    public void testInvalidEdgeConfig() {
+        List<String> items = Arrays.asList("GroupByKey.out", "GroupByKey.out=queueSize", "GroupByKey.out=queueSize:many",
+                "GroupByKey.out=;queueSize:64", "GroupByKey.out=queueLength:64");
+        for (String item : items) {
+            JetPipelineOptions options = options();
+            options.setJetPCollectionEdgeConfig(Collections.singletonList(item));
+            try {
+                new DAGBuilder(options);
+                fail("Accepted " + item);
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().endsWith(item));
+            }
+        }
+    }
+
+    @Test
+    public void testCooperativeTransforms() throws Exception {
+        JetPipelineOptions options = options();
+        options.setJetFusionEnabled(false);
+        // regexes have to match the full names
+        options.setJetCooperativeTransforms(Arrays.asList("Cooperative.*", "Stateful/.*", "Blocking"));
+        Pipeline p = Pipeline.create(options);
+        p.apply(Create.of(KV.of("a", 1), KV.of("b", 2)))
+         .apply("Cooperative", ParDo.of(new IdentityFn()))
+         .apply("Blocking", ParDo.of(new IdentityFn()))
+         .apply("Stateful", ParDo.of(new StatefulIdentityFn()))
+         .apply("Cooperative values", Values.create());
+        JsonNode json = explain(options, p);
+
+        assertTrue(vertex(json, "Cooperative/").get("cooperative").asBoolean());
+        assertFalse(vertex(json, "Blocking/").get("cooperative").asBoolean());
+        assertTrue(vertex(json, "Stateful/").get("cooperative").asBoolean());
+        assertTrue(vertex(json, "Cooperative values/").get("cooperative").asBoolean());
+
+        // the processors themselves tell Jet the same
+        for (Vertex vertex : JetRunner.fromOptions(options).getDag(p)) {
+            if (vertex.getName().contains("/ParMultiDo(")) {
+                Processor processor = TestSupport.supplierFrom(vertex.getMetaSupplier()).get();
+                assertEquals(vertex.getName(), !vertex.getName().contains("(Blocking/"), processor.isCooperative());
+            }
+        }
+    }
+
+    @Test
+    public void testLocalPartitionedEdgeAfterKeyPreservingVertex() throws Exception {
+        JetPipelineOptions options = options();
+        options.setJetFusionEnabled(false);
+        Pipeline p = Pipeline.create(options);
+        p.apply(Create.of(KV.of("a", 1), KV.of("b", 2)))
+         .apply("First", GroupByKey.create())
+         .apply("Second", GroupByKey.create())
+         .apply("Flatten", ParDo.of(new FlattenFn()))
+         .apply("Third", GroupByKey.create())
+         .apply(Values.create());
+        JsonNode json = explain(options, p);
+
+        // into the first group the keys come from anywhere
+        assertPartitioned(edgeFrom(json, "Create.Values"), true);
+        // the first group's output is already on the members owning its keys
+        assertPartitioned(edgeFrom(json, "First"), false);
+        // a DoFn may emit any key
+        assertPartitioned(edgeFrom(json, "Flatten/"), true);
+    }
+
+    @Test
+    public void testUnconsumedVerticesPruned() throws Exception {
+        JetPipelineOptions options = options();
+        options.setJetFusionEnabled(false);
+        Pipeline p = Pipeline.create(options);
+        PCollection<KV<String, Integer>> input = p
+                .apply(Create.of(KV.of("a", 1), KV.of("b", 2)))
+                .apply("Parse", ParDo.of(new IdentityFn()));
+        input.apply("Used group", GroupByKey.create())
+             .apply("Values", Values.create());
+        input.apply("Unused group", GroupByKey.create())
+             .apply("Unused window", Window.into(FixedWindows.of(Duration.standardSeconds(1))));
+        JsonNode json = explain(options, p);
+
+        // a ParDo may have side effects, so is kept even if nothing consumes its output
+        assertEquals(names(json).toString(), 4, json.get("vertices").size());
+        vertex(json, "Parse/");
+        vertex(json, "Used group");
+        vertex(json, "Values/");
+        assertEquals(json.toString(), 3, json.get("edges").size());
+    }
+
+    private static JetPipelineOptions options() {
+        JetPipelineOptions options = PipelineOptionsFactory.create().as(JetPipelineOptions.class);
+        options.setJetGroupName(JetConfig.DEFAULT_GROUP_NAME);
+        return options;
+    }
+
+    private static JsonNode explain(JetPipelineOptions options, Pipeline p) throws Exception {
+        return new ObjectMapper().readTree(JetRunner.fromOptions(options).explain(p).toJson());
+    }
+
+    /**
+     * Returns the vertex whose name has the given transform in it, fused
+     * vertices have all of their members' names in theirs.
+     */
+    private static JsonNode vertex(JsonNode json, String transformName) {
+        for (JsonNode vertex : json.get("vertices")) {
+            if (vertex.get("name").asText().contains("(" + transformName)) {
+                return vertex;
+            }
+        }
+        throw new AssertionError("No vertex of " + transformName + " in " + names(json));
+    }
+
+    private static JsonNode edge(JsonNode json, String pCollection) {
+        for (JsonNode edge : json.get("edges")) {
+            if (edge.get("pCollection").asText().equals(pCollection)) {
+                return edge;
+            }
+        }
+        throw new AssertionError("No edge of " + pCollection + " in " + json);
+    }
+
+    private static JsonNode edgeFrom(JsonNode json, String transformName) {
+        String source = vertex(json, transformName).get("name").asText();
+        for (JsonNode edge : json.get("edges")) {
+            if (edge.get("source").asText().equals(source)) {
+                return edge;
+            }
+        }
+        throw new AssertionError("No edge from " + source + " in " + json);
+    }
+
+    private static void assertPartitioned(JsonNode edge, boolean distributed) {
+        assertEquals(edge.toString(), "PARTITIONED", edge.get("routing").asText());
+        assertEquals(edge.toString(), distributed, edge.get("distributed").asBoolean());
+    }
+
+    private static List<Edge> edges(DAG dag) {
+        List<Edge> edges = new ArrayList<>();
+        for (Vertex vertex : dag) {
+            edges.addAll(dag.getOutboundEdges(vertex.getName()));
+        }
+        assertFalse(edges.isEmpty());
+        return edges;
+    }
+
+    private static List<String> names(JsonNode json) {
+        List<String> names = new ArrayList<>();
+        for (JsonNode vertex : json.get("vertices")) {
+            names.add(vertex.get("name").asText());
+        }
+        return names;
+    }
+
+    private static class IdentityFn extends DoFn<KV<String, Integer>, KV<String, Integer>> {
+        @ProcessElement
+        public void processElement(ProcessContext c) {
+            c.output(c.element());
+        }
+    }
+
+    private static class FlattenFn extends DoFn<KV<String, Iterable<Iterable<Integer>>>, KV<String, Integer>> {
+        @ProcessElement
+        public void processElement(ProcessContext c) {
+            for (Iterable<Integer> values : c.element().getValue()) {
+                for (Integer value : values) {
+                    c.output(KV.of(c.element().getKey(), value));
+                }
+            }
+        }
+    }
+
+    private static class StatefulIdentityFn extends DoFn<KV<String, Integer>, KV<String, Integer>> {
+
+        @StateId("seen")
+        private final StateSpec<ValueState<Boolean>> seenSpec = StateSpecs.value();
+
+        @ProcessElement
+        public void processElement(ProcessContext c, @StateId("seen") ValueState<Boolean> seen) {
+            seen.write(true);
+            c.output(c.element());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import com.hazelcast.jet.config.JetConfig;
+import com.hazelcast.jet.core.DAG;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.NullableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.TestStream;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.WithKeys;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.joda.time.Duration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DAGCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testHitReusesDagAndWritesItsExplainPlan() throws Exception {
+        JetPipelineOptions options = options("hit");
+        String explainPlanFile = new File(temporaryFolder.getRoot(), "plan").getPath();
+        options.setJetExplainPlanFile(explainPlanFile);
+        JetRunner runner = JetRunner.fromOptions(options);
+
+        DAG dag = runner.getDag(pipeline(options, "hit", StringUtf8Coder.of(), 10, "key", "a"));
+        File dotFile = new File(explainPlanFile + ".dot");
+        File jsonFile = new File(explainPlanFile + ".json");
+        String json = new String(Files.readAllBytes(jsonFile.toPath()));
+        assertTrue(dotFile.delete());
+        assertTrue(jsonFile.delete());
+
+        assertSame(dag, runner.getDag(pipeline(options, "hit", StringUtf8Coder.of(), 10, "key", "a")));
+        assertTrue(dotFile.exists());
+        assertEquals(json, new String(Files.readAllBytes(jsonFile.toPath())));
+    }
+
+    @Test
+    public void testMissTranslatesDifferentPipelines() {
+        JetPipelineOptions options = options("miss");
+        AtomicInteger translations = new AtomicInteger();
+
+        DAG dag = get(pipeline(options, "miss", StringUtf8Coder.of(), 10, "key", "a"), options, translations);
+        assertSame(dag, get(pipeline(options, "miss", StringUtf8Coder.of(), 10, "key", "a"), options, translations));
+        assertEquals(1, translations.get());
+
+        assertNotSame(dag, get(pipeline(options, "miss2", StringUtf8Coder.of(), 10, "key", "a"), options, translations));
+        assertNotSame(dag, get(pipeline(options, "miss", NullableCoder.of(StringUtf8Coder.of()), 10, "key", "a"), options, translations));
+        assertNotSame(dag, get(pipeline(options, "miss", StringUtf8Coder.of(), 20, "key", "a"), options, translations));
+        assertEquals(4, translations.get());
+
+        // differing only in the state of a DoFn or in the elements of a Create
+        assertNotSame(dag, get(pipeline(options, "miss", StringUtf8Coder.of(), 10, "key2", "a"), options, translations));
+        assertNotSame(dag, get(pipeline(options, "miss", StringUtf8Coder.of(), 10, "key", "c"), options, translations));
+        assertEquals(6, translations.get());
+
+        JetPipelineOptions otherOptions = options("miss");
+        otherOptions.setJetLocalParallelism(4);
+        assertNotEquals(
+                DAGCache.fingerprint(pipeline(options, "miss", StringUtf8Coder.of(), 10, "key", "a"), options),
+                DAGCache.fingerprint(pipeline(otherOptions, "miss", StringUtf8Coder.of(), 10, "key", "a"), otherOptions)
+        );
+    }
+
+    @Test
+    public void testPipelineWithUnknownStateNotCached() {
+        JetPipelineOptions options = options("unknown");
+        Pipeline pipeline = Pipeline.create(options);
+        pipeline.apply(TestStream.create(StringUtf8Coder.of()).addElements("a").advanceWatermarkToInfinity());
+
+        assertNull(DAGCache.fingerprint(pipeline, options));
+    }
+
+    private static DAG get(Pipeline pipeline, JetPipelineOptions options, AtomicInteger translations) {
+        return DAGCache.get(pipeline, options, () -> {
+            translations.incrementAndGet();
+            return new DAGCache.Translation(new DAG(), null);
+        }).getDag();
+    }
+
+    private static JetPipelineOptions options(String jobName) {
+        JetPipelineOptions options = PipelineOptionsFactory.create().as(JetPipelineOptions.class);
+        options.setJetGroupName(JetConfig.DEFAULT_GROUP_NAME);
+        options.setJetDagCacheEnabled(true);
+        options.setJobName(jobName);
+        return options;
+    }
+
+    private static Pipeline pipeline(
+            JetPipelineOptions options, String name, Coder<String> coder, long windowMillis, String key, String element
+    ) {
+        Pipeline pipeline = Pipeline.create(options);
+        pipeline.apply(Create.of(element, "b").withCoder(coder))
+                .apply(Window.into(FixedWindows.of(Duration.millis(windowMillis))))
+                .apply(name, WithKeys.of(key));
+        return pipeline;
+    }
+}
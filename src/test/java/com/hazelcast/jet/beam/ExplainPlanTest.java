@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.jet.config.JetConfig;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.BigEndianIntegerCoder;
+import org.apache.beam.sdk.coders.BigEndianLongCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.Values;
+import org.apache.beam.sdk.transforms.WithKeys;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExplainPlanTest {
+
+    @Test
+    public void testToDot() {
+        String dot = plan().toDot();
+
+        assertTrue(dot, dot.startsWith("digraph DAG {\n"));
+        assertTrue(dot, dot.endsWith("}\n"));
+        assertTrue(dot, dot.contains("\t\"0 (Read) + 1 (\\\"Parse\\\")\" [label=\"0 (Read) + 1 (\\\"Parse\\\")"
+                + "\\nparallelism=2, non-cooperative\", style=bold];\n"));
+        assertTrue(dot, dot.contains("\t\"2 (Group)\" [label=\"2 (Group)\\nparallelism=4, cooperative\"];\n"));
+        assertTrue(dot, dot.contains("\t\"3 (Write)\" [label=\"3 (Write)\\nparallelism=1\"];\n"));
+        assertTrue(dot, dot.contains("\t\"0 (Read) + 1 (\\\"Parse\\\")\" -> \"2 (Group)\" [label=\"Parse.out"
+                + "\\nPARTITIONED-distributed\\nKvCoder\", style=bold];\n"));
+        assertTrue(dot, dot.contains("\t\"2 (Group)\" -> \"3 (Write)\" [label=\"Group.out\\nUNICAST-local\\nIterableCoder\"];\n"));
+    }
+
+    @Test
+    public void testToJson() throws Exception {
+        JsonNode json = new ObjectMapper().readTree(plan().toJson());
+
+        JsonNode vertices = json.get("vertices");
+        assertEquals(3, vertices.size());
+        assertEquals("0 (Read) + 1 (\"Parse\")", vertices.get(0).get("name").asText());
+        assertEquals(2, vertices.get(0).get("localParallelism").asInt());
+        assertFalse(vertices.get(0).get("cooperative").asBoolean());
+        assertTrue(vertices.get(1).get("cooperative").asBoolean());
+        assertTrue(vertices.get(2).get("cooperative").isNull());
+
+        JsonNode edges = json.get("edges");
+        assertEquals(2, edges.size());
+        JsonNode edge = edges.get(0);
+        assertEquals("0 (Read) + 1 (\"Parse\")", edge.get("source").asText());
+        assertEquals(0, edge.get("sourceOrdinal").asInt());
+        assertEquals("2 (Group)", edge.get("destination").asText());
+        assertEquals(1, edge.get("destinationOrdinal").asInt());
+        assertEquals("Parse.out", edge.get("pCollection").asText());
+        assertTrue(edge.get("distributed").asBoolean());
+        assertEquals("PARTITIONED", edge.get("routing").asText());
+        assertEquals("KvCoder", edge.get("coder").asText());
+    }
+
+    @Test
+    public void testTranslatedPlan() throws Exception {
+        JetPipelineOptions options = PipelineOptionsFactory.create().as(JetPipelineOptions.class);
+        options.setJetGroupName(JetConfig.DEFAULT_GROUP_NAME);
+        options.setJetCooperativeTransforms(Collections.singletonList("Cooperative.*"));
+        options.setJetFusionEnabled(true);
+        Pipeline p = Pipeline.create(options);
+        p.apply(Create.of(1L).withCoder(BigEndianLongCoder.of()))
+         .apply("Cooperative", ParDo.of(new Identity()))
+         .apply("Blocking", ParDo.of(new Identity()))
+         .apply("Cooperative keys", WithKeys.of(1))
+         .setCoder(KvCoder.of(BigEndianIntegerCoder.of(), BigEndianLongCoder.of()))
+         .apply(GroupByKey.create())
+         .apply("Cooperative values", Values.create());
+        JsonNode json = new ObjectMapper().readTree(JetRunner.fromOptions(options).explain(p).toJson());
+
+        Map<String, Boolean> cooperativeness = new HashMap<>();
+        for (JsonNode vertex : json.get("vertices")) {
+            cooperativeness.put(vertex.get("name").asText(), vertex.get("cooperative").asBoolean());
+        }
+        // a single non-cooperative member makes the fused vertex non-cooperative
+        assertEquals(cooperativeness.toString(), 3, cooperativeness.size());
+        assertTrue(cooperativeness.toString(), cooperativeness.entrySet().stream()
+                .allMatch(e -> e.getKey().contains("(Blocking/") != e.getValue()));
+    }
+
+    private static ExplainPlan plan() {
+        ExplainPlan plan = new ExplainPlan();
+        plan.addVertex("0 (Read) + 1 (\"Parse\")", 2, false);
+        plan.addVertex("2 (Group)", 4, true);
+        plan.addVertex("3 (Write)", 1, null);
+        plan.addEdge("0 (Read) + 1 (\"Parse\")", 0, "2 (Group)", 1, "Parse.out", true, "PARTITIONED", "KvCoder");
+        plan.addEdge("2 (Group)", 0, "3 (Write)", 0, "Group.out", false, "UNICAST", "IterableCoder");
+        return plan;
+    }
+
+    private static class Identity extends DoFn<Long, Long> {
+        @ProcessElement
+        public void processElement(ProcessContext c) {
+            c.output(c.element());
+        }
+    }
+}
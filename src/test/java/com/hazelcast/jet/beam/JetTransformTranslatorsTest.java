@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import org.apache.beam.sdk.transforms.GroupIntoBatches;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class JetTransformTranslatorsTest {
+
+    @Test
+    public void testGroupIntoBatchesSizeIsReadable() {
+        // fails when a Beam upgrade renames the private field, which would silently turn off the native translation
+        assertEquals(7, JetTransformTranslators.GroupIntoBatchesTranslator.getBatchSize(GroupIntoBatches.ofSize(7)));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam;
+
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UtilsTest {
+
+    private static final Coder<String> KEY_CODER = StringUtf8Coder.of();
+    private static final Coder<WindowedValue<KV<String, Integer>>> CODER = WindowedValue.FullWindowedValueCoder.of(
+            KvCoder.of(KEY_CODER, VarIntCoder.of()), GlobalWindow.Coder.INSTANCE);
+    private static final Coder<WindowedValue<KV<String, Integer>>> WINDOWED_CODER = WindowedValue.FullWindowedValueCoder.of(
+            KvCoder.of(KEY_CODER, VarIntCoder.of()), IntervalWindow.getCoder());
+
+    @Test
+    public void testKeyedFrameRoundTrip() {
+        WindowedValue<KV<String, Integer>> value = WindowedValue.valueInGlobalWindow(KV.of("key", 42));
+        WindowedValue<KV<String, Integer>> windowedValue = WindowedValue.of(
+                KV.of("key", 42),
+                new Instant(5),
+                new IntervalWindow(new Instant(0), new Instant(10)),
+                PaneInfo.ON_TIME_AND_ONLY_FIRING
+        );
+
+        assertEquals(value, Utils.decodeWindowedValue(Utils.encode(value, CODER), CODER));
+        assertEquals(windowedValue, Utils.decodeWindowedValue(Utils.encode(windowedValue, WINDOWED_CODER), WINDOWED_CODER));
+    }
+
+    @Test
+    public void testKeyedFrameHeaderHoldsEncodedKey() {
+        byte[] frame = Utils.encode(WindowedValue.valueInGlobalWindow(KV.of("key", 42)), CODER);
+
+        // the key from the header is the same one fused processors get by encoding the decoded key
+        Utils.ByteArrayKey headerKey = Utils.getEncodedKey(frame, null, KEY_CODER);
+        Utils.ByteArrayKey encodedKey = Utils.getEncodedKey(WindowedValue.valueInGlobalWindow(KV.of("key", 42)), "key", KEY_CODER);
+        assertEquals(encodedKey, headerKey);
+        assertEquals(encodedKey.hashCode(), headerKey.hashCode());
+        assertEquals(new Utils.ByteArrayKey(Utils.encode("key", KEY_CODER)), headerKey);
+    }
+
+    @Test
+    public void testKeyedFramesPartitionedByKey() {
+        int partitionCount = 8;
+        Set<Integer> partitions = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String key = "key" + i;
+            int partition = Utils.getPartition(Utils.encode(WindowedValue.valueInGlobalWindow(KV.of(key, i)), CODER), partitionCount);
+            int otherValuePartition = Utils.getPartition(Utils.encode(WindowedValue.valueInGlobalWindow(KV.of(key, -i)), CODER), partitionCount);
+            int otherWindowPartition = Utils.getPartition(Utils.encode(WindowedValue.of(
+                    KV.of(key, i),
+                    new Instant(i),
+                    new IntervalWindow(new Instant(0), new Instant(1000)),
+                    PaneInfo.NO_FIRING
+            ), WINDOWED_CODER), partitionCount);
+
+            assertTrue(partition >= 0 && partition < partitionCount);
+            assertEquals(partition, otherValuePartition);
+            assertEquals(partition, otherWindowPartition);
+            partitions.add(partition);
+        }
+        assertEquals(partitionCount, partitions.size());
+    }
+
+    @Test
+    public void testOnlyKeyedValuesEncodedOnEdges() {
+        assertTrue(Utils.isEncodedOnEdges(CODER));
+        assertFalse(Utils.isEncodedOnEdges(
+                WindowedValue.FullWindowedValueCoder.of(VarIntCoder.of(), GlobalWindow.Coder.INSTANCE)));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.jmh;
+
+import com.hazelcast.jet.beam.Utils;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarLongCoder;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.CoderUtils;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Measures the per-element coder work processors do on their edges, for
+ * the runner's codec ({@link Utils#encode(Object, Coder)} and {@link
+ * Utils#decodeWindowedValue(Object, Coder)}) and, as a baseline, for plain
+ * {@link CoderUtils}. Meant to be run with the GC profiler, which reports
+ * the bytes allocated per operation, for example:
+ * <pre>
+ *   mvn -Pjmh test-compile -Djmh.args="CodecBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private Coder<WindowedValue<String>> valueCoder;
+    private Coder<WindowedValue<KV<String, Long>>> kvCoder;
+    private Coder<WindowedValue<KV<String, Iterable<Long>>>> groupedCoder;
+
+    private WindowedValue<String> value;
+    private WindowedValue<KV<String, Long>> kv;
+    private WindowedValue<KV<String, Iterable<Long>>> grouped;
+
+    private byte[] encodedValue;
+    private byte[] encodedKv;
+    private byte[] baselineEncodedValue;
+    private byte[] baselineEncodedKv;
+    private byte[] encodedGrouped;
+    private byte[] baselineEncodedGrouped;
+
+    @Setup
+    public void setup() throws IOException {
+        valueCoder = WindowedValue.FullWindowedValueCoder.of(StringUtf8Coder.of(), GlobalWindow.Coder.INSTANCE);
+        kvCoder = WindowedValue.FullWindowedValueCoder.of(
+                KvCoder.of(StringUtf8Coder.of(), VarLongCoder.of()), GlobalWindow.Coder.INSTANCE);
+
+        value = WindowedValue.valueInGlobalWindow("the quick brown fox jumps over the lazy dog");
+        kv = WindowedValue.valueInGlobalWindow(KV.of("fox", 42L));
+        groupedCoder = WindowedValue.FullWindowedValueCoder.of(
+                KvCoder.of(StringUtf8Coder.of(), IterableCoder.of(VarLongCoder.of())), GlobalWindow.Coder.INSTANCE);
+        List<Long> values = LongStream.range(0, 100).boxed().collect(Collectors.toList());
+        grouped = WindowedValue.valueInGlobalWindow(KV.of("fox", values));
+
+        encodedValue = Utils.encode(value, valueCoder);
+        encodedKv = Utils.encode(kv, kvCoder);
+        baselineEncodedValue = CoderUtils.encodeToByteArray(valueCoder, value);
+        baselineEncodedKv = CoderUtils.encodeToByteArray(kvCoder, kv);
+        encodedGrouped = Utils.encode(grouped, groupedCoder);
+        baselineEncodedGrouped = CoderUtils.encodeToByteArray(groupedCoder, grouped);
+    }
+
+    /**
+     * A ParDo decoding its input and encoding its keyed output.
+     */
+    @Benchmark
+    public Object parDo() {
+        Utils.decodeWindowedValue(encodedValue, valueCoder);
+        return Utils.encode(kv, kvCoder);
+    }
+
+    @Benchmark
+    public Object parDoBaseline() throws IOException {
+        CoderUtils.decodeFromByteArray(valueCoder, baselineEncodedValue);
+        return CoderUtils.encodeToByteArray(kvCoder, kv);
+    }
+
+    /**
+     * A GroupByKey looking up the key of its input and decoding it.
+     */
+    @Benchmark
+    public void groupByKey(Blackhole bh) {
+        WindowedValue<KV<String, Long>> windowedValue = Utils.decodeWindowedValue(encodedKv, kvCoder);
+        bh.consume(Utils.getEncodedKey(encodedKv, windowedValue.getValue().getKey(), StringUtf8Coder.of()));
+        bh.consume(windowedValue);
+    }
+
+    @Benchmark
+    public void groupByKeyBaseline(Blackhole bh) throws IOException {
+        WindowedValue<KV<String, Long>> windowedValue = CoderUtils.decodeFromByteArray(kvCoder, baselineEncodedKv);
+        bh.consume(CoderUtils.encodeToByteArray(StringUtf8Coder.of(), windowedValue.getValue().getKey()));
+        bh.consume(windowedValue);
+    }
+
+    /**
+     * A Flatten decoding its input and encoding it again.
+     */
+    @Benchmark
+    public Object flatten() {
+        WindowedValue<KV<String, Long>> windowedValue = Utils.decodeWindowedValue(encodedKv, kvCoder);
+        return Utils.encode(windowedValue, kvCoder);
+    }
+
+    @Benchmark
+    public Object flattenBaseline() throws IOException {
+        WindowedValue<KV<String, Long>> windowedValue = CoderUtils.decodeFromByteArray(kvCoder, baselineEncodedKv);
+        return CoderUtils.encodeToByteArray(kvCoder, windowedValue);
+    }
+
+    /**
+     * A consumer of a GroupByKey decoding the grouped values of a key and a
+     * GroupByKey encoding them.
+     */
+    @Benchmark
+    public Object grouped() {
+        Utils.decodeWindowedValue(encodedGrouped, groupedCoder);
+        return Utils.encode(grouped, groupedCoder);
+    }
+
+    @Benchmark
+    public Object groupedBaseline() throws IOException {
+        CoderUtils.decodeFromByteArray(groupedCoder, baselineEncodedGrouped);
+        return CoderUtils.encodeToByteArray(groupedCoder, grouped);
+    }
+}
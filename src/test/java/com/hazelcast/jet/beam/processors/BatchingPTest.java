@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.test.TestSupport;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.hazelcast.jet.core.processor.Processors.mapP;
+
+public class BatchingPTest {
+
+    private static final Coder<WindowedValue<KV<String, Integer>>> CODER = WindowedValue.FullWindowedValueCoder.of(
+            KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of()), GlobalWindow.Coder.INSTANCE);
+
+    @Test
+    public void testBatchesUnpackToSameValues() {
+        List<byte[]> frames = IntStream.range(0, 1000)
+                .mapToObj(i -> WindowedValue.valueInGlobalWindow(KV.of("key-" + i % 10, i)))
+                .map(value -> Utils.encode(value, CODER))
+                .collect(Collectors.toList());
+
+        List<Object> batches = new ArrayList<>();
+        TestSupport
+                .verifyProcessor(BatchingP.supplier(
+                        mapP((byte[] b) -> b),
+                        Collections.singletonMap(0, new BatchingP.Settings(64, 1000))
+                ))
+                .disableSnapshots()
+                .input(frames)
+                .outputChecker((expected, actual) -> {
+                    batches.clear();
+                    batches.addAll(actual);
+                    return actual.size() < expected.size();
+                })
+                .expectOutput(frames);
+
+        TestSupport
+                .verifyProcessor(UnbatchingP.supplier(mapP((byte[] b) -> b), Collections.singleton(0)))
+                .disableSnapshots()
+                .input(batches)
+                .outputChecker((expected, actual) -> decodedSorted(expected).equals(decodedSorted(actual)))
+                .expectOutput(frames);
+    }
+
+    private static List<Integer> decodedSorted(List<?> frames) {
+        return frames.stream()
+                .map(frame -> Utils.<KV<String, Integer>>decodeWindowedValue(frame, CODER).getValue().getValue())
+                .sorted(Comparator.naturalOrder())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.test.TestSupport;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.hazelcast.jet.core.processor.Processors.mapP;
+
+public class CompressingPTest {
+
+    private static final Coder<WindowedValue<KV<String, String>>> CODER = WindowedValue.FullWindowedValueCoder.of(
+            KvCoder.of(StringUtf8Coder.of(), StringUtf8Coder.of()), GlobalWindow.Coder.INSTANCE);
+
+    @Test
+    public void testCompressedFramesDecodeToSameValues() {
+        List<byte[]> frames = IntStream.range(0, 100)
+                .mapToObj(i -> WindowedValue.valueInGlobalWindow(KV.of("key-" + i, payload(i))))
+                .map(value -> Utils.encode(value, CODER))
+                .collect(Collectors.toList());
+
+        TestSupport
+                .verifyProcessor(CompressingP.supplier(mapP((byte[] b) -> b), Collections.singleton(0), 64))
+                .disableSnapshots()
+                .input(frames)
+                .outputChecker((expected, actual) -> sameValues(expected, actual) && allCompressed(expected, actual))
+                .expectOutput(frames);
+    }
+
+    @Test
+    public void testSmallFramesNotCompressed() {
+        List<byte[]> frames = IntStream.range(0, 100)
+                .mapToObj(i -> WindowedValue.valueInGlobalWindow(KV.of("key-" + i, "value-" + i)))
+                .map(value -> Utils.encode(value, CODER))
+                .collect(Collectors.toList());
+
+        TestSupport
+                .verifyProcessor(CompressingP.supplier(mapP((byte[] b) -> b), Collections.singleton(0), 1024))
+                .disableSnapshots()
+                .input(frames)
+                .outputChecker((expected, actual) -> expected.equals(actual))
+                .expectOutput(frames);
+    }
+
+    private static String payload(int i) {
+        return IntStream.range(0, 50)
+                .mapToObj(j -> "{\"id\":" + i + ",\"field\":\"value\",\"index\":" + j + "}")
+                .collect(Collectors.joining(","));
+    }
+
+    private static boolean sameValues(List<?> expected, List<?> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!Utils.decodeWindowedValue(expected.get(i), CODER).equals(Utils.decodeWindowedValue(actual.get(i), CODER))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean allCompressed(List<?> expected, List<?> actual) {
+        for (int i = 0; i < expected.size(); i++) {
+            if (((byte[]) actual.get(i)).length >= ((byte[]) expected.get(i)).length) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
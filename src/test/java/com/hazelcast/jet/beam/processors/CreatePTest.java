@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.test.TestOutbox;
+import com.hazelcast.jet.core.test.TestProcessorContext;
+import com.hazelcast.jet.core.test.TestSupport;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CreatePTest {
+
+    private static final Coder<WindowedValue<Integer>> CODER =
+            WindowedValue.FullWindowedValueCoder.of(VarIntCoder.of(), GlobalWindow.Coder.INSTANCE);
+
+    @Test
+    public void testEmpty() {
+        TestSupport
+                .verifyProcessor(CreateP.supplier(emptyList(), "create"))
+                .disableSnapshots()
+                .expectOutput(emptyList());
+    }
+
+    @Test
+    public void testEmitsEncodedElementsAsTheyAre() {
+        List<byte[]> elements = encodedElements(10);
+
+        // the very same arrays, nothing gets re-encoded
+        TestSupport
+                .verifyProcessor(CreateP.supplier(elements, "create"))
+                .disableSnapshots()
+                .outputChecker((expected, actual) -> expected.size() == actual.size()
+                        && IntStream.range(0, expected.size()).allMatch(i -> expected.get(i) == actual.get(i)))
+                .expectOutput(elements);
+    }
+
+    @Test
+    public void testEachProcessorEmitsItsShare() throws Exception {
+        List<byte[]> elements = encodedElements(10);
+        int totalParallelism = 3;
+
+        List<Integer> all = new ArrayList<>();
+        for (int index = 0; index < totalParallelism; index++) {
+            Processor processor = CreateP.supplier(elements, "create").getEx();
+            TestOutbox outbox = new TestOutbox(2);
+            processor.init(outbox, new TestProcessorContext()
+                    .setGlobalProcessorIndex(index)
+                    .setTotalParallelism(totalParallelism));
+
+            List<Integer> share = new ArrayList<>();
+            boolean done;
+            do {
+                done = processor.complete();
+                for (Object item; (item = outbox.queue(0).poll()) != null; ) {
+                    share.add(Utils.<Integer>decodeWindowedValue(item, CODER).getValue());
+                }
+                outbox.reset();
+            } while (!done);
+
+            assertTrue(share.toString(), share.size() == 3 || share.size() == 4);
+            all.addAll(share);
+        }
+
+        all.sort(Integer::compare);
+        assertEquals(IntStream.range(0, 10).boxed().collect(Collectors.toList()), all);
+    }
+
+    private static List<byte[]> encodedElements(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> Utils.encode(WindowedValue.valueInGlobalWindow(i), CODER))
+                .collect(Collectors.toList());
+    }
+}
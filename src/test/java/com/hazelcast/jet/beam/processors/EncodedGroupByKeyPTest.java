@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.Watermark;
+import com.hazelcast.jet.core.test.TestSupport;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class EncodedGroupByKeyPTest {
+
+    private static final WindowedValue.FullWindowedValueCoder<KV<String, String>> INPUT_CODER =
+            WindowedValue.FullWindowedValueCoder.of(
+                    KvCoder.of(StringUtf8Coder.of(), StringUtf8Coder.of()), IntervalWindow.getCoder());
+    private static final WindowedValue.FullWindowedValueCoder<KV<String, Iterable<String>>> OUTPUT_CODER =
+            WindowedValue.FullWindowedValueCoder.of(
+                    KvCoder.of(StringUtf8Coder.of(), IterableCoder.of(StringUtf8Coder.of())), IntervalWindow.getCoder());
+    private static final WindowingStrategy<?, ?> WINDOWING_STRATEGY = WindowingStrategy.of(FixedWindows.of(Duration.millis(10)));
+
+    @Test
+    public void testGroupsByKeyAndWindow() {
+        List<Object> input = Arrays.asList(
+                Utils.encode(element("a", "a1", 1), INPUT_CODER),
+                Utils.encode(element("b", "b1", 2), INPUT_CODER),
+                Utils.encode(element("a", "a2", 3), INPUT_CODER),
+                Utils.encode(element("a", "a3", 12), INPUT_CODER)
+        );
+        List<Object> expected = Arrays.asList(
+                grouped("a", 0, "a1", "a2"),
+                grouped("b", 0, "b1"),
+                grouped("a", 10, "a3")
+        );
+
+        TestSupport
+                .verifyProcessor(EncodedGroupByKeyP.supplier(INPUT_CODER, OUTPUT_CODER, WINDOWING_STRATEGY, false, 0, "test"))
+                .disableSnapshots()
+                .input(input)
+                .outputChecker((e, actual) -> new HashSet<>(e).equals(new HashSet<>(decode(actual))))
+                .expectOutput(expected);
+    }
+
+    @Test
+    public void testFiresOnWatermarkAndDropsLateElements() {
+        List<Object> input = Arrays.asList(
+                Utils.encode(element("a", "a1", 1), INPUT_CODER),
+                new Watermark(15),
+                Utils.encode(element("a", "late", 3), INPUT_CODER),
+                Utils.encode(element("a", "a2", 12), INPUT_CODER)
+        );
+        List<Object> expected = Arrays.asList(
+                grouped("a", 0, "a1"),
+                new Watermark(15),
+                grouped("a", 10, "a2")
+        );
+
+        TestSupport
+                .verifyProcessor(EncodedGroupByKeyP.supplier(INPUT_CODER, OUTPUT_CODER, WINDOWING_STRATEGY, false, 0, "test"))
+                .disableSnapshots()
+                .input(input)
+                .outputChecker((e, actual) -> e.equals(decode(actual)))
+                .expectOutput(expected);
+    }
+
+    private static WindowedValue<KV<String, String>> element(String key, String value, long timestamp) {
+        IntervalWindow window = window(timestamp - timestamp % 10);
+        return WindowedValue.of(KV.of(key, value), new Instant(timestamp), window, PaneInfo.NO_FIRING);
+    }
+
+    private static WindowedValue<KV<String, Iterable<String>>> grouped(String key, long windowStart, String... values) {
+        IntervalWindow window = window(windowStart);
+        return WindowedValue.of(KV.of(key, (Iterable<String>) Arrays.asList(values)), window.maxTimestamp(), window, PaneInfo.ON_TIME_AND_ONLY_FIRING);
+    }
+
+    private static IntervalWindow window(long start) {
+        return new IntervalWindow(new Instant(start), new Instant(start + 10));
+    }
+
+    private static List<Object> decode(List<?> output) {
+        return output.stream()
+                .map(item -> item instanceof byte[] ? Utils.decodeWindowedValue(item, OUTPUT_CODER) : item)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.core.test.TestSupport;
+import org.junit.Test;
+
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.hazelcast.jet.core.processor.Processors.filterP;
+import static com.hazelcast.jet.core.processor.Processors.mapP;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+
+public class FusedPTest {
+
+    @Test
+    public void testEmpty() {
+        TestSupport
+                .verifyProcessor(FusedP.supplier(asList(mapP((Integer i) -> i * 2), mapP((Integer i) -> i + 1))))
+                .disableSnapshots()
+                .input(emptyList())
+                .expectOutput(emptyList());
+    }
+
+    @Test
+    public void testChain() {
+        TestSupport
+                .verifyProcessor(FusedP.supplier(asList(
+                        mapP((Integer i) -> i * 2),
+                        filterP((Integer i) -> i % 3 != 0),
+                        mapP((Integer i) -> i + 1)
+                )))
+                .disableSnapshots()
+                .input(asList(1, 2, 3, 4, 5, 6))
+                .expectOutput(asList(3, 5, 9, 11));
+    }
+
+    @Test
+    public void testMoreItemsThanQueueCapacity() {
+        TestSupport
+                .verifyProcessor(FusedP.supplier(asList(mapP((Integer i) -> i * 2), mapP((Integer i) -> i + 1))))
+                .disableSnapshots()
+                .input(IntStream.range(0, 10_000).boxed().collect(Collectors.toList()))
+                .expectOutput(IntStream.range(0, 10_000).mapToObj(i -> i * 2 + 1).collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.Watermark;
+import com.hazelcast.jet.core.test.TestSupport;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class GroupIntoBatchesPTest {
+
+    private static final WindowedValue.FullWindowedValueCoder<KV<String, String>> INPUT_CODER =
+            WindowedValue.FullWindowedValueCoder.of(
+                    KvCoder.of(StringUtf8Coder.of(), StringUtf8Coder.of()), IntervalWindow.getCoder());
+    private static final WindowedValue.FullWindowedValueCoder<KV<String, Iterable<String>>> OUTPUT_CODER =
+            WindowedValue.FullWindowedValueCoder.of(
+                    KvCoder.of(StringUtf8Coder.of(), IterableCoder.of(StringUtf8Coder.of())), IntervalWindow.getCoder());
+    private static final Duration ALLOWED_LATENESS = Duration.millis(5);
+
+    @Test
+    public void testFlushesFullBatches() {
+        List<Object> input = Arrays.asList(
+                Utils.encode(element("a", "a1", 1), INPUT_CODER),
+                element("b", "b1", 2),
+                Utils.encode(element("a", "a2", 3), INPUT_CODER),
+                element("a", "a3", 4),
+                Utils.encode(element("a", "a4", 12), INPUT_CODER)
+        );
+        List<Object> expected = Arrays.asList(
+                batch("a", 0, new Instant(3), PaneInfo.NO_FIRING, "a1", "a2"),
+                batch("b", 0, deadline(0), PaneInfo.NO_FIRING, "b1"),
+                batch("a", 0, deadline(0), PaneInfo.NO_FIRING, "a3"),
+                batch("a", 10, deadline(10), PaneInfo.NO_FIRING, "a4")
+        );
+
+        TestSupport
+                .verifyProcessor(GroupIntoBatchesP.supplier(INPUT_CODER, OUTPUT_CODER, 2, ALLOWED_LATENESS, false, "test"))
+                .disableSnapshots()
+                .input(input)
+                .outputChecker((e, actual) -> e.get(0).equals(decode(actual).get(0))
+                        && e.size() == actual.size() && decode(actual).containsAll(e))
+                .expectOutput(expected);
+    }
+
+    @Test
+    public void testFlushesAtEndOfWindowPlusAllowedLateness() {
+        List<Object> input = Arrays.asList(
+                Utils.encode(element("a", "a1", 1), INPUT_CODER),
+                new Watermark(12),
+                // late, but the window is kept until the allowed lateness has passed too
+                Utils.encode(element("a", "a2", 2), INPUT_CODER),
+                new Watermark(15),
+                Utils.encode(element("a", "a3", 13), INPUT_CODER)
+        );
+        List<Object> expected = Arrays.asList(
+                new Watermark(12),
+                batch("a", 0, deadline(0), PaneInfo.NO_FIRING, "a1", "a2"),
+                new Watermark(15),
+                batch("a", 10, deadline(10), PaneInfo.NO_FIRING, "a3")
+        );
+
+        TestSupport
+                .verifyProcessor(GroupIntoBatchesP.supplier(INPUT_CODER, OUTPUT_CODER, 10, ALLOWED_LATENESS, false, "test"))
+                .disableSnapshots()
+                .input(input)
+                .outputChecker((e, actual) -> e.equals(decode(actual)))
+                .expectOutput(expected);
+    }
+
+    private static WindowedValue<KV<String, String>> element(String key, String value, long timestamp) {
+        IntervalWindow window = window(timestamp - timestamp % 10);
+        return WindowedValue.of(KV.of(key, value), new Instant(timestamp), window, PaneInfo.NO_FIRING);
+    }
+
+    private static WindowedValue<KV<String, Iterable<String>>> batch(
+            String key, long windowStart, Instant timestamp, PaneInfo pane, String... values
+    ) {
+        return WindowedValue.of(KV.of(key, (Iterable<String>) Arrays.asList(values)), timestamp, window(windowStart), pane);
+    }
+
+    private static Instant deadline(long windowStart) {
+        return window(windowStart).maxTimestamp().plus(ALLOWED_LATENESS);
+    }
+
+    private static IntervalWindow window(long start) {
+        return new IntervalWindow(new Instant(start), new Instant(start + 10));
+    }
+
+    private static List<Object> decode(List<?> output) {
+        return output.stream()
+                .map(item -> item instanceof byte[] ? Utils.decodeWindowedValue(item, OUTPUT_CODER) : item)
+                .collect(Collectors.toList());
+    }
+}
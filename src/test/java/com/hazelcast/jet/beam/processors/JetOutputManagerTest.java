@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.Outbox;
+import com.hazelcast.jet.core.test.TestOutbox;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.metrics.Counter;
+import org.apache.beam.sdk.metrics.Distribution;
+import org.apache.beam.sdk.metrics.Gauge;
+import org.apache.beam.sdk.metrics.MetricName;
+import org.apache.beam.sdk.metrics.MetricsContainer;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.TupleTag;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JetOutputManagerTest {
+
+    private static final TupleTag<KV<String, Integer>> TAG = new TupleTag<>("main");
+    private static final Coder<WindowedValue<KV<String, Integer>>> CODER = WindowedValue.FullWindowedValueCoder.of(
+            KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of()), GlobalWindow.Coder.INSTANCE);
+    private static final int ITEM_SIZE = Utils.encode(value(0), CODER).length; // of all values below 128
+    private static final int OUTPUTS = 100;
+
+    @Test
+    public void testTakesNoInputWhileOverBudget() {
+        TestOutbox outbox = new TestOutbox(4);
+        RecordingMetricsContainer metrics = new RecordingMetricsContainer();
+        AbstractParDoP.JetOutputManager outputManager = outputManager(outbox, 2, Long.MAX_VALUE, metrics);
+
+        // each input is turned into 3 outputs, the outbox is only drained by every 5th call
+        List<Integer> received = new ArrayList<>();
+        int nextInput = 0;
+        long maxBufferedElements = 0;
+        for (int call = 0; nextInput < 20 || !outputManager.tryFlush(); call++) {
+            outbox.reset();
+            outputManager.reset();
+            while (nextInput < 20 && outputManager.tryFlushToBudget()) {
+                for (int i = 0; i < 3; i++) {
+                    outputManager.output(TAG, value(3 * nextInput + i));
+                }
+                nextInput++;
+                long buffered = 3L * nextInput - received.size() - outbox.queue(0).size();
+                maxBufferedElements = Math.max(maxBufferedElements, buffered);
+            }
+            if (call % 5 == 4) {
+                drain(outbox, received);
+            }
+        }
+        drain(outbox, received);
+
+        // over the budget only by the outputs of a single input
+        assertTrue(String.valueOf(maxBufferedElements), maxBufferedElements <= 2 + 3);
+        assertEquals(IntStream.range(0, 60).boxed().collect(Collectors.toList()), received);
+        assertEquals(0, metrics.gauges.get("bufferedElements").value);
+        assertEquals(0, metrics.gauges.get("bufferedBytes").value);
+    }
+
+    @Test
+    public void testBuffersOutputsOfSingleInput() {
+        TestOutbox outbox = new TestOutbox(4);
+        RecordingMetricsContainer metrics = new RecordingMetricsContainer();
+        AbstractParDoP.JetOutputManager outputManager = outputManager(outbox, OUTPUTS, 2L * ITEM_SIZE, metrics);
+
+        // like a DoFn turning one input into many outputs, they can't be refused
+        outbox.reset();
+        outputManager.reset();
+        for (int i = 0; i < OUTPUTS; i++) {
+            outputManager.output(TAG, value(i));
+        }
+        assertFalse(outputManager.tryFlushToBudget());
+
+        List<Integer> received = new ArrayList<>();
+        do {
+            drain(outbox, received);
+            outbox.reset();
+            outputManager.reset();
+        } while (!outputManager.tryFlush());
+        drain(outbox, received);
+
+        assertEquals(IntStream.range(0, OUTPUTS).boxed().collect(Collectors.toList()), received);
+        assertTrue(metrics.gauges.get("peakBufferedBytes").value > 10L * ITEM_SIZE);
+        assertEquals(0, metrics.gauges.get("bufferedBytes").value);
+    }
+
+    private static AbstractParDoP.JetOutputManager outputManager(
+            Outbox outbox, int maxBufferedElements, long maxBufferedBytes, MetricsContainer metrics
+    ) {
+        return new AbstractParDoP.JetOutputManager(
+                outbox,
+                Collections.<TupleTag<?>, Coder<?>>singletonMap(TAG, CODER),
+                Collections.<TupleTag<?>, int[]>singletonMap(TAG, new int[]{0}),
+                maxBufferedElements,
+                maxBufferedBytes,
+                metrics
+        );
+    }
+
+    private static WindowedValue<KV<String, Integer>> value(int i) {
+        return WindowedValue.valueInGlobalWindow(KV.of("key", i));
+    }
+
+    private static int valueOf(Object item) {
+        return Utils.<KV<String, Integer>>decodeWindowedValue(item, CODER).getValue().getValue();
+    }
+
+    private static void drain(TestOutbox outbox, List<Integer> received) {
+        for (Object item; (item = outbox.queue(0).poll()) != null; ) {
+            received.add(valueOf(item));
+        }
+    }
+
+    private static class RecordingMetricsContainer implements MetricsContainer {
+
+        private final Map<String, RecordingGauge> gauges = new HashMap<>();
+
+        @Override
+        public Counter getCounter(MetricName metricName) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Distribution getDistribution(MetricName metricName) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Gauge getGauge(MetricName metricName) {
+            return gauges.computeIfAbsent(metricName.getName(), name -> new RecordingGauge(metricName));
+        }
+    }
+
+    private static class RecordingGauge implements Gauge {
+
+        private final MetricName name;
+
+        private long value;
+
+        RecordingGauge(MetricName name) {
+            this.name = name;
+        }
+
+        @Override
+        public void set(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public MetricName getName() {
+            return name;
+        }
+    }
+}
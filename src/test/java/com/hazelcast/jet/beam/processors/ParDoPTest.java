@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.JetInstance;
+import com.hazelcast.jet.JetTestInstanceFactory;
+import com.hazelcast.jet.beam.JetPipelineOptions;
+import com.hazelcast.jet.config.JetConfig;
+import com.hazelcast.jet.core.Edge;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.Vertex;
+import com.hazelcast.jet.core.Watermark;
+import com.hazelcast.jet.core.processor.Processors;
+import com.hazelcast.jet.core.test.TestInbox;
+import com.hazelcast.jet.core.test.TestOutbox;
+import com.hazelcast.jet.core.test.TestProcessorContext;
+import org.apache.beam.runners.core.construction.SerializablePipelineOptions;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.DoFnSchemaInformation;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.PCollectionView;
+import org.apache.beam.sdk.values.TupleTag;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParDoPTest {
+
+    private static final TupleTag<Integer> MAIN = new TupleTag<>("main");
+    private static final Coder<WindowedValue<Integer>> CODER =
+            WindowedValue.FullWindowedValueCoder.of(VarIntCoder.of(), GlobalWindow.Coder.INSTANCE);
+    private static final int INPUTS = 20;
+    private static final int OUTPUTS_PER_INPUT = 10;
+    private static final int MAX_BUFFERED_ELEMENTS = 15;
+
+    private static JetTestInstanceFactory factory = new JetTestInstanceFactory();
+    private static JetInstance instance;
+
+    @BeforeClass
+    public static void beforeClass() {
+        instance = factory.newMember(new JetConfig());
+    }
+
+    @Before
+    public void before() {
+        BundleRecordingFn.finishedBundleSizes.clear();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        factory.shutdownAll();
+    }
+
+    @Test
+    public void testBundleSpansInboxDrains() throws Exception {
+        JetPipelineOptions options = options();
+        options.setJetMaxBundleSize(5);
+        options.setJetMaxBundleTimeMillis((int) HOURS.toMillis(1));
+        Processor processor = processor(options, new BundleRecordingFn());
+        TestOutbox outbox = new TestOutbox(128);
+        processor.init(outbox, new TestProcessorContext().setJetInstance(instance));
+
+        TestInbox inbox = new TestInbox();
+        for (int call = 0; call < 3; call++) {
+            inbox.add(WindowedValue.valueInGlobalWindow(2 * call));
+            inbox.add(WindowedValue.valueInGlobalWindow(2 * call + 1));
+            outbox.reset();
+            processor.process(0, inbox);
+            assertTrue(inbox.isEmpty());
+        }
+        assertEquals(Collections.singletonList(5), BundleRecordingFn.finishedBundleSizes);
+
+        outbox.reset();
+        assertTrue(processor.complete());
+        assertEquals(Arrays.asList(5, 1), BundleRecordingFn.finishedBundleSizes);
+    }
+
+    @Test
+    public void testExpiredBundleFinishedWhenIdle() throws Exception {
+        JetPipelineOptions options = options();
+        options.setJetMaxBundleTimeMillis(200);
+        Processor processor = processor(options, new BundleRecordingFn());
+        TestOutbox outbox = new TestOutbox(128);
+        processor.init(outbox, new TestProcessorContext().setJetInstance(instance));
+
+        TestInbox inbox = new TestInbox();
+        inbox.add(WindowedValue.valueInGlobalWindow(0));
+        outbox.reset();
+        processor.process(0, inbox);
+        outbox.reset();
+        assertTrue(processor.tryProcess());
+        assertEquals(Collections.emptyList(), BundleRecordingFn.finishedBundleSizes);
+
+        Thread.sleep(300);
+        outbox.reset();
+        assertTrue(processor.tryProcess());
+        assertEquals(Collections.singletonList(1), BundleRecordingFn.finishedBundleSizes);
+    }
+
+    @Test
+    public void testWatermarkFinishesBundle() throws Exception {
+        Processor processor = processor(options(), new BundleRecordingFn());
+        TestOutbox outbox = new TestOutbox(128);
+        processor.init(outbox, new TestProcessorContext().setJetInstance(instance));
+
+        TestInbox inbox = new TestInbox();
+        inbox.add(WindowedValue.valueInGlobalWindow(0));
+        inbox.add(WindowedValue.valueInGlobalWindow(1));
+        outbox.reset();
+        processor.process(0, inbox);
+        outbox.reset();
+        assertTrue(processor.tryProcessWatermark(new Watermark(10)));
+
+        assertEquals(Collections.singletonList(2), BundleRecordingFn.finishedBundleSizes);
+        // the output of the bundle goes ahead of the watermark
+        assertEquals(
+                Arrays.asList(WindowedValue.valueInGlobalWindow(0), WindowedValue.valueInGlobalWindow(1), new Watermark(10)),
+                new ArrayList<>(outbox.queue(0))
+        );
+    }
+
+    @Test
+    public void testTakesNoInputWhileOutputIsOverBudget() throws Exception {
+        JetPipelineOptions options = options();
+        options.setJetOutputBufferMaxElements(MAX_BUFFERED_ELEMENTS);
+        Processor processor = processor(options, new ExplodeFn());
+        TestOutbox outbox = new TestOutbox(4);
+        processor.init(outbox, new TestProcessorContext().setJetInstance(instance));
+
+        TestInbox inbox = new TestInbox();
+        for (int i = 0; i < INPUTS; i++) {
+            inbox.add(WindowedValue.valueInGlobalWindow(i));
+        }
+
+        List<Integer> received = new ArrayList<>();
+        long maxBuffered = 0;
+        while (!inbox.isEmpty()) {
+            outbox.reset();
+            processor.process(0, inbox);
+            int queued = outbox.queue(0).size();
+            long buffered = (long) (INPUTS - inbox.size()) * OUTPUTS_PER_INPUT - received.size() - queued;
+            maxBuffered = Math.max(maxBuffered, buffered);
+
+            // the consumer doesn't take anything, the processor must not take any input either
+            outbox.reset();
+            int inboxSize = inbox.size();
+            processor.process(0, inbox);
+            assertEquals(inboxSize, inbox.size());
+            assertEquals(queued, outbox.queue(0).size());
+
+            drain(outbox, received);
+        }
+        do {
+            drain(outbox, received);
+            outbox.reset();
+        } while (!processor.complete());
+        drain(outbox, received);
+
+        // over the budget only by the outputs of a single input
+        assertTrue(String.valueOf(maxBuffered), maxBuffered <= MAX_BUFFERED_ELEMENTS + OUTPUTS_PER_INPUT);
+        assertEquals(
+                IntStream.range(0, INPUTS * OUTPUTS_PER_INPUT).boxed().collect(Collectors.toList()),
+                received
+        );
+    }
+
+    @Test
+    public void testTryProcessFalseUntilOutputFlushed() throws Exception {
+        JetPipelineOptions options = options();
+        options.setJetOutputBufferMaxElements(MAX_BUFFERED_ELEMENTS);
+        Processor processor = processor(options, new ExplodeFn());
+        TestOutbox outbox = new TestOutbox(4);
+        processor.init(outbox, new TestProcessorContext().setJetInstance(instance));
+
+        TestInbox inbox = new TestInbox();
+        inbox.add(WindowedValue.valueInGlobalWindow(0));
+        outbox.reset();
+        processor.process(0, inbox);
+        assertTrue(inbox.isEmpty());
+
+        List<Integer> received = new ArrayList<>();
+        outbox.reset();
+        assertFalse(processor.tryProcess());
+        drain(outbox, received);
+        outbox.reset();
+        assertFalse(processor.tryProcess());
+        drain(outbox, received);
+        outbox.reset();
+        assertTrue(processor.tryProcess());
+        drain(outbox, received);
+
+        assertEquals(IntStream.range(0, OUTPUTS_PER_INPUT).boxed().collect(Collectors.toList()), received);
+    }
+
+    private static JetPipelineOptions options() {
+        return PipelineOptionsFactory.create().as(JetPipelineOptions.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Processor processor(JetPipelineOptions options, DoFn<Integer, Integer> doFn) {
+        ParDoP.Supplier<Integer, Integer> supplier = new ParDoP.Supplier<>(
+                "step",
+                "pardo",
+                doFn,
+                WindowingStrategy.globalDefault(),
+                DoFnSchemaInformation.create(),
+                new SerializablePipelineOptions(options),
+                MAIN,
+                Collections.singleton(MAIN),
+                (Coder) CODER,
+                Collections.<PCollectionView<?>, Coder<?>>emptyMap(),
+                Collections.<TupleTag<?>, Coder<?>>singletonMap(MAIN, CODER),
+                VarIntCoder.of(),
+                Collections.<TupleTag<?>, Coder<?>>singletonMap(MAIN, VarIntCoder.of()),
+                Collections.<PCollectionView<?>>emptyList(),
+                false
+        );
+        Edge edge = Edge.from(new Vertex("pardo", Processors.noopP()));
+        supplier.isOutboundEdgeOfVertex(edge, "out", MAIN.getId(), "pardo");
+        return supplier.get();
+    }
+
+    private static void drain(TestOutbox outbox, List<Integer> received) {
+        for (Object item; (item = outbox.queue(0).poll()) != null; ) {
+            received.add(((WindowedValue<Integer>) item).getValue());
+        }
+    }
+
+    /**
+     * Turns each input into the next {@link #OUTPUTS_PER_INPUT} numbers from
+     * it times {@link #OUTPUTS_PER_INPUT}, so the outputs of all inputs form
+     * a single sequence.
+     */
+    private static class ExplodeFn extends DoFn<Integer, Integer> {
+        @ProcessElement
+        public void processElement(ProcessContext c) {
+            for (int i = 0; i < OUTPUTS_PER_INPUT; i++) {
+                c.output(c.element() * OUTPUTS_PER_INPUT + i);
+            }
+        }
+    }
+
+    /**
+     * Records the number of elements of each finished bundle, in a static
+     * list, as the processor works with a copy of the DoFn.
+     */
+    private static class BundleRecordingFn extends DoFn<Integer, Integer> {
+
+        private static final List<Integer> finishedBundleSizes = new ArrayList<>();
+
+        private int bundleSize;
+
+        @StartBundle
+        public void startBundle() {
+            bundleSize = 0;
+        }
+
+        @ProcessElement
+        public void processElement(ProcessContext c) {
+            bundleSize++;
+            c.output(c.element());
+        }
+
+        @FinishBundle
+        public void finishBundle() {
+            finishedBundleSizes.add(bundleSize);
+        }
+    }
+}
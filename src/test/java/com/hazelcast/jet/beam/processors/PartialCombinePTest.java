@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.Watermark;
+import com.hazelcast.jet.core.test.TestSupport;
+import org.apache.beam.sdk.coders.CannotProvideCoderException;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.CoderRegistry;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
+import org.apache.beam.sdk.transforms.windowing.PaneInfo;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.WindowingStrategy;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartialCombinePTest {
+
+    private static final WindowedValue.FullWindowedValueCoder<KV<String, Integer>> INPUT_CODER =
+            WindowedValue.FullWindowedValueCoder.of(
+                    KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of()), IntervalWindow.getCoder());
+    private static final WindowingStrategy<?, ?> WINDOWING_STRATEGY = WindowingStrategy.of(FixedWindows.of(Duration.millis(10)));
+    private static final Combine.BinaryCombineIntegerFn COMBINE_FN = Sum.ofIntegers();
+
+    @Test
+    public void testFlushesWhenTooManyKeysAndOnWatermark() throws CannotProvideCoderException {
+        Coder<int[]> accumulatorCoder = COMBINE_FN.getAccumulatorCoder(CoderRegistry.createDefault(), VarIntCoder.of());
+        WindowedValue.FullWindowedValueCoder<KV<String, int[]>> outputCoder = WindowedValue.FullWindowedValueCoder.of(
+                KvCoder.of(StringUtf8Coder.of(), accumulatorCoder), IntervalWindow.getCoder());
+
+        List<Object> input = new ArrayList<>();
+        Map<KV<String, IntervalWindow>, Integer> expectedSums = new HashMap<>();
+        int sumBeforeWatermark = 0;
+        for (int i = 0; i < 40; i++) {
+            if (i == 20) {
+                input.add(new Watermark(10));
+            }
+            long timestamp = i < 20 ? i % 10 : 10 + i % 10;
+            WindowedValue<KV<String, Integer>> element = element("key-" + i % 3, i, timestamp);
+            input.add(Utils.encode(element, INPUT_CODER));
+            expectedSums.merge(KV.of(element.getValue().getKey(), window(timestamp)), i, Integer::sum);
+            sumBeforeWatermark += i < 20 ? i : 0;
+        }
+        int expectedSumBeforeWatermark = sumBeforeWatermark;
+
+        TestSupport
+                .verifyProcessor(PartialCombineP.supplier(INPUT_CODER, outputCoder, COMBINE_FN, WINDOWING_STRATEGY, 2, "test"))
+                .disableSnapshots()
+                .input(input)
+                .outputChecker((expected, actual) -> {
+                    Map<KV<String, IntervalWindow>, Integer> sums = new HashMap<>();
+                    int accumulationCount = 0;
+                    int sumAtWatermark = -1;
+                    for (Object item : actual) {
+                        if (item instanceof Watermark) {
+                            sumAtWatermark = sums.values().stream().mapToInt(Integer::intValue).sum();
+                            continue;
+                        }
+                        WindowedValue<KV<String, int[]>> accumulation = Utils.decodeWindowedValue(item, outputCoder);
+                        IntervalWindow window = (IntervalWindow) accumulation.getWindows().iterator().next();
+                        sums.merge(KV.of(accumulation.getValue().getKey(), window), accumulation.getValue().getValue()[0], Integer::sum);
+                        accumulationCount++;
+                    }
+                    // more accumulations than keys and windows, some of them have been sent on early
+                    return accumulationCount > expectedSums.size()
+                            && sumAtWatermark == expectedSumBeforeWatermark
+                            && sums.equals(expectedSums);
+                })
+                .expectOutput(new ArrayList<>(expectedSums.values()));
+    }
+
+    @Test
+    public void testAcceptsDecodedInput() throws CannotProvideCoderException {
+        Coder<int[]> accumulatorCoder = COMBINE_FN.getAccumulatorCoder(CoderRegistry.createDefault(), VarIntCoder.of());
+        WindowedValue.FullWindowedValueCoder<KV<String, int[]>> outputCoder = WindowedValue.FullWindowedValueCoder.of(
+                KvCoder.of(StringUtf8Coder.of(), accumulatorCoder), IntervalWindow.getCoder());
+
+        List<Object> input = new ArrayList<>();
+        input.add(element("a", 1, 1));
+        input.add(Utils.encode(element("a", 2, 2), INPUT_CODER));
+        input.add(element("b", 3, 3));
+
+        List<Object> actualOutput = new ArrayList<>();
+        TestSupport
+                .verifyProcessor(PartialCombineP.supplier(INPUT_CODER, outputCoder, COMBINE_FN, WINDOWING_STRATEGY, 100, "test"))
+                .disableSnapshots()
+                .input(input)
+                .outputChecker((expected, actual) -> {
+                    actualOutput.clear();
+                    actualOutput.addAll(actual);
+                    return actual.size() == expected.size();
+                })
+                .expectOutput(input.subList(0, 2));
+
+        Map<String, Integer> sums = new HashMap<>();
+        for (Object item : actualOutput) {
+            KV<String, int[]> kv = Utils.<KV<String, int[]>>decodeWindowedValue(item, outputCoder).getValue();
+            sums.put(kv.getKey(), kv.getValue()[0]);
+        }
+        assertEquals(2, sums.size());
+        assertEquals(3, (int) sums.get("a"));
+        assertEquals(3, (int) sums.get("b"));
+        assertTrue(actualOutput.stream().allMatch(item -> item instanceof byte[]));
+    }
+
+    private static WindowedValue<KV<String, Integer>> element(String key, int value, long timestamp) {
+        return WindowedValue.of(KV.of(key, value), new Instant(timestamp), window(timestamp), PaneInfo.NO_FIRING);
+    }
+
+    private static IntervalWindow window(long timestamp) {
+        long start = timestamp - timestamp % 10;
+        return new IntervalWindow(new Instant(start), new Instant(start + 10));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.test.TestSupport;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ReshufflePTest {
+
+    private static final Coder<WindowedValue<KV<String, Integer>>> CODER = WindowedValue.FullWindowedValueCoder.of(
+            KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of()), GlobalWindow.Coder.INSTANCE);
+
+    @Test
+    public void testDecodedElementsEncodedIntoKeyedFrames() {
+        byte[] frame = Utils.encode(value("a", 1), CODER);
+
+        TestSupport
+                .verifyProcessor(ReshuffleP.supplier(CODER, "reshuffle"))
+                .disableSnapshots()
+                .input(Arrays.asList(frame, value("b", 2)))
+                .outputChecker((expected, actual) -> expected.equals(decoded(actual)))
+                .expectOutput(Arrays.asList(KV.of("a", 1), KV.of("b", 2)));
+    }
+
+    private static WindowedValue<KV<String, Integer>> value(String key, int value) {
+        return WindowedValue.valueInGlobalWindow(KV.of(key, value));
+    }
+
+    private static List<Object> decoded(List<?> output) {
+        List<Object> decoded = new ArrayList<>();
+        for (Object item : output) {
+            // partitioning takes the key from the header of the frame, items which aren't frames fail here
+            byte[] frame = (byte[]) item;
+            KV<String, Integer> kv = Utils.<KV<String, Integer>>decodeWindowedValue(frame, CODER).getValue();
+            Utils.ByteArrayKey headerKey = Utils.getEncodedKey(frame, null, StringUtf8Coder.of());
+            decoded.add(headerKey.equals(new Utils.ByteArrayKey(Utils.encode(kv.getKey(), StringUtf8Coder.of()))) ? kv : null);
+        }
+        return decoded;
+    }
+}
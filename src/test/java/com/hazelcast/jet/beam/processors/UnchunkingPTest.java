@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.processors;
+
+import com.hazelcast.jet.beam.KeyedFrameGrouping;
+import com.hazelcast.jet.beam.Utils;
+import com.hazelcast.jet.core.test.TestSupport;
+import org.apache.beam.sdk.coders.Coder;
+import org.apache.beam.sdk.coders.IterableCoder;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.transforms.windowing.GlobalWindow;
+import org.apache.beam.sdk.util.WindowedValue;
+import org.apache.beam.sdk.values.KV;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.hazelcast.jet.core.processor.Processors.mapP;
+import static org.junit.Assert.assertTrue;
+
+public class UnchunkingPTest {
+
+    private static final Coder<WindowedValue<KV<String, Iterable<Integer>>>> CODER = WindowedValue.FullWindowedValueCoder.of(
+            KvCoder.of(StringUtf8Coder.of(), IterableCoder.of(VarIntCoder.of())), GlobalWindow.Coder.INSTANCE);
+
+    @Test
+    public void testChunkedElementsPutBackTogether() {
+        List<Integer> hotValues = IntStream.range(0, 1000).boxed().collect(Collectors.toList());
+        List<byte[]> hotFrames = KeyedFrameGrouping.encodeChunked(grouped("hot", hotValues), CODER, 256);
+        List<byte[]> coldFrames = KeyedFrameGrouping.encodeChunked(grouped("cold", Arrays.asList(1, 2, 3)), CODER, 256);
+        assertTrue(hotFrames.size() > 1);
+        assertTrue(Utils.isChunkFrame(hotFrames.get(0)));
+
+        // the element of another key gets in between the chunks of the hot one
+        List<byte[]> input = new ArrayList<>(hotFrames);
+        input.addAll(1, coldFrames);
+
+        TestSupport
+                .verifyProcessor(UnchunkingP.supplier(mapP(o -> o), Collections.singletonMap(0, CODER)))
+                .disableSnapshots()
+                .input(input)
+                .outputChecker((expected, actual) -> expected.equals(decoded(actual)))
+                .expectOutput(Arrays.asList(KV.of("cold", Arrays.asList(1, 2, 3)), KV.of("hot", hotValues)));
+    }
+
+    private static WindowedValue<KV<String, Iterable<Integer>>> grouped(String key, List<Integer> values) {
+        return WindowedValue.valueInGlobalWindow(KV.of(key, values));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> decoded(List<?> output) {
+        List<Object> decoded = new ArrayList<>();
+        for (Object item : output) {
+            KV<String, Iterable<Integer>> kv = Utils.<KV<String, Iterable<Integer>>>decodeWindowedValue(item, CODER).getValue();
+            List<Integer> values = new ArrayList<>();
+            kv.getValue().forEach(values::add);
+            decoded.add(KV.of(kv.getKey(), values));
+        }
+        return decoded;
+    }
+}
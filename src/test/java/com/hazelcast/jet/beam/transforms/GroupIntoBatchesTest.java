@@ -43,7 +43,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -209,4 +213,52 @@ public class GroupIntoBatchesTest extends AbstractTransformTest {
             });
     pipeline.run().waitUntilFinish();
   }
+
+  @Test
+  public void testFlushesOnSizeAndAtEndOfWindowPlusAllowedLateness() {
+    Instant startInstant = new Instant(0L);
+    Duration windowDuration = Duration.standardSeconds(10);
+    Duration allowedLateness = Duration.standardSeconds(5);
+    TestStream<KV<String, String>> stream =
+        TestStream.create(KvCoder.of(StringUtf8Coder.of(), StringUtf8Coder.of()))
+            .addElements(
+                TimestampedValue.of(KV.of("key", "a"), startInstant.plus(Duration.standardSeconds(1))),
+                TimestampedValue.of(KV.of("key", "b"), startInstant.plus(Duration.standardSeconds(2))),
+                TimestampedValue.of(KV.of("key", "c"), startInstant.plus(Duration.standardSeconds(3))),
+                TimestampedValue.of(KV.of("key", "d"), startInstant.plus(Duration.standardSeconds(4))))
+            // past the end of the window, but not past its allowed lateness
+            .advanceWatermarkTo(startInstant.plus(Duration.standardSeconds(12)))
+            .addElements(
+                TimestampedValue.of(KV.of("key", "late"), startInstant.plus(Duration.standardSeconds(5))))
+            .advanceWatermarkTo(startInstant.plus(Duration.standardSeconds(20)))
+            .advanceWatermarkToInfinity();
+
+    PCollection<KV<String, Iterable<String>>> outputCollection =
+        pipeline
+            .apply(stream)
+            .apply(
+                Window.<KV<String, String>>into(FixedWindows.of(windowDuration))
+                    .withAllowedLateness(allowedLateness)
+                    .discardingFiredPanes())
+            .apply(GroupIntoBatches.ofSize(3))
+            .setCoder(KvCoder.of(StringUtf8Coder.of(), IterableCoder.of(StringUtf8Coder.of())));
+
+    PAssert.that("Incorrect batches after GroupIntoBatches", outputCollection)
+        .satisfies(
+            input -> {
+              List<List<String>> batches = new ArrayList<>();
+              for (KV<String, Iterable<String>> element : input) {
+                List<String> batch = new ArrayList<>();
+                element.getValue().forEach(batch::add);
+                Collections.sort(batch);
+                batches.add(batch);
+              }
+              batches.sort(Comparator.comparing(batch -> batch.get(0)));
+              // the first batch is flushed because it's full, the second one, with the late element
+              // which came within the allowed lateness, when the watermark passes the lateness too
+              assertEquals(Arrays.asList(Arrays.asList("a", "b", "c"), Arrays.asList("d", "late")), batches);
+              return null;
+            });
+    pipeline.run().waitUntilFinish();
+  }
 }
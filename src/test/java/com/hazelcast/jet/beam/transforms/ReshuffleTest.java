@@ -16,6 +16,7 @@
 
 package com.hazelcast.jet.beam.transforms;
 
+import com.hazelcast.jet.beam.JetPipelineOptions;
 import org.apache.beam.sdk.PipelineResult;
 import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.StringUtf8Coder;
@@ -41,10 +42,17 @@ import org.apache.beam.sdk.values.TimestampedValue;
 import org.apache.beam.sdk.values.TypeDescriptors;
 import org.apache.beam.sdk.values.WindowingStrategy;
 import org.apache.beam.vendor.guava.v20_0.com.google.common.collect.ImmutableList;
+import org.apache.beam.vendor.guava.v20_0.com.google.common.collect.ImmutableMap;
+import org.apache.beam.vendor.guava.v20_0.com.google.common.collect.Iterables;
 import org.joda.time.Duration;
 import org.joda.time.Instant;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import static junit.framework.TestCase.assertEquals;
 import static org.apache.beam.sdk.TestUtils.KvMatcher.isKv;
 import static org.hamcrest.Matchers.equalTo;
@@ -194,6 +202,36 @@ public class ReshuffleTest extends AbstractTransformTest {
         assertEquals(PipelineResult.State.DONE, state);
     }
 
+    @Test
+    public void testReshuffleAfterChunkedGroupByKey() {
+        // the grouped values are sent in chunks and put back together in front of the reshuffle
+        pipeline.getOptions().as(JetPipelineOptions.class).setJetGroupByKeyChunkSize(64);
+        List<KV<String, Integer>> kvs = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            kvs.add(KV.of("k" + i % 2, i));
+        }
+
+        PCollection<KV<String, Iterable<Integer>>> output =
+                pipeline
+                        .apply(Create.of(kvs).withCoder(KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of())))
+                        .apply(GroupByKey.create())
+                        .apply(Reshuffle.of());
+
+        PAssert.that(output)
+                .satisfies(
+                        actual -> {
+                            Map<String, Integer> counts = new HashMap<>();
+                            for (KV<String, Iterable<Integer>> kv : actual) {
+                                counts.merge(kv.getKey(), Iterables.size(kv.getValue()), Integer::sum);
+                            }
+                            assertEquals(ImmutableMap.of("k0", 500, "k1", 500), counts);
+                            return null;
+                        });
+
+        PipelineResult.State state = pipeline.run().waitUntilFinish();
+        assertEquals(PipelineResult.State.DONE, state);
+    }
+
     @Test
     public void testReshuffleAfterFixedWindows() {
 
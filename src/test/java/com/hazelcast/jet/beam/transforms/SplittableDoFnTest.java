@@ -66,7 +66,7 @@ import static org.junit.Assert.assertTrue;
 /* "Inspired" by org.apache.beam.sdk.transforms.SplittableDoFnTest */
 public class SplittableDoFnTest extends AbstractTransformTest {
 
-    //todo: tests disabled due to splittable DoFns not being implemented
+    //todo: tests disabled due to unbounded splittable DoFns not being implemented
 
     private static class PairStringWithIndexToLengthBase extends DoFn<String, KV<String, Integer>> {
         @ProcessElement
@@ -104,7 +104,6 @@ public class SplittableDoFnTest extends AbstractTransformTest {
     }
 
     @Test
-    @Ignore
     public void testPairWithIndexBasicBounded() {
         testPairWithIndexBasic(IsBounded.BOUNDED);
     }
@@ -138,7 +137,6 @@ public class SplittableDoFnTest extends AbstractTransformTest {
     }
 
     @Test
-    @Ignore
     public void testPairWithIndexWindowedTimestampedBounded() {
         testPairWithIndexWindowedTimestamped(IsBounded.BOUNDED);
     }
@@ -263,7 +261,6 @@ public class SplittableDoFnTest extends AbstractTransformTest {
     }
 
     @Test
-    @Ignore
     public void testOutputAfterCheckpointBounded() {
         testOutputAfterCheckpoint(IsBounded.BOUNDED);
     }
@@ -299,7 +296,6 @@ public class SplittableDoFnTest extends AbstractTransformTest {
     }
 
     @Test
-    @Ignore
     public void testSideInputBounded() {
         testSideInput(IsBounded.BOUNDED);
     }
@@ -579,7 +575,6 @@ public class SplittableDoFnTest extends AbstractTransformTest {
     }
 
     @Test
-    @Ignore
     public void testAdditionalOutputBounded() {
         testAdditionalOutput(IsBounded.BOUNDED);
     }
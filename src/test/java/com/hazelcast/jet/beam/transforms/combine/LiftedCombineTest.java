@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2008-2019, Hazelcast, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hazelcast.jet.beam.transforms.combine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.jet.beam.JetPipelineOptions;
+import com.hazelcast.jet.beam.JetRunner;
+import com.hazelcast.jet.config.JetConfig;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.options.PipelineOptionsFactory;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestStream;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.Sum;
+import org.apache.beam.sdk.transforms.Values;
+import org.apache.beam.sdk.transforms.windowing.FixedWindows;
+import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.TimestampedValue;
+import org.joda.time.Duration;
+import org.joda.time.Instant;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static junit.framework.TestCase.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/* Checks the two stage translation of Combine.PerKey against the plain GroupByKey based one */
+public class LiftedCombineTest extends AbstractCombineTest {
+
+    private static final KvCoder<String, Integer> KV_CODER = KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of());
+    private static final Duration WINDOW_SIZE = Duration.millis(10);
+
+    @Test
+    public void testInputOfAccumulationIsFused() throws Exception {
+        JsonNode plan = explainCombine(true);
+
+        boolean accumulationFused = false;
+        for (JsonNode vertex : plan.get("vertices")) {
+            String name = vertex.get("name").asText();
+            accumulationFused |= name.contains("(Create.Values) + ") && name.endsWith("/Accumulate)");
+        }
+        assertTrue(accumulationFused);
+        assertOnlyAccumulatorsAreShuffled(plan);
+    }
+
+    @Test
+    public void testInputOfAccumulationIsLocalWhenNotFused() throws Exception {
+        JsonNode plan = explainCombine(false);
+
+        boolean accumulationInputFound = false;
+        for (JsonNode edge : plan.get("edges")) {
+            String destination = edge.get("destination").asText();
+            if (destination.endsWith("/Accumulate)")) {
+                assertFalse("distributed edge into " + destination, edge.get("distributed").asBoolean());
+                assertFalse("partitioned edge into " + destination, "PARTITIONED".equals(edge.get("routing").asText()));
+                accumulationInputFound = true;
+            }
+        }
+        assertTrue(accumulationInputFound);
+        assertOnlyAccumulatorsAreShuffled(plan);
+    }
+
+    private static JsonNode explainCombine(boolean fusionEnabled) throws Exception {
+        JetPipelineOptions options = PipelineOptionsFactory.create().as(JetPipelineOptions.class);
+        options.setJetGroupName(JetConfig.DEFAULT_GROUP_NAME);
+        options.setJetLocalParallelism(2);
+        options.setJetFusionEnabled(fusionEnabled);
+        Pipeline p = Pipeline.create(options);
+        p.apply(Create.of(KV.of("a", 1), KV.of("b", 2)).withCoder(KV_CODER))
+         .apply(Combine.perKey(Sum.ofIntegers()))
+         .apply(Values.create()); // consumes the sums, or they wouldn't be computed
+        return new ObjectMapper().readTree(JetRunner.fromOptions(options).explain(p).toJson());
+    }
+
+    private static void assertOnlyAccumulatorsAreShuffled(JsonNode plan) {
+        int distributedEdges = 0;
+        for (JsonNode edge : plan.get("edges")) {
+            if (edge.get("distributed").asBoolean()) {
+                assertTrue(edge.get("source").asText().endsWith("/Accumulate)"));
+                assertTrue(edge.get("destination").asText().endsWith("/Combine)"));
+                assertEquals("PARTITIONED", edge.get("routing").asText());
+                distributedEdges++;
+            }
+        }
+        assertEquals(1, distributedEdges);
+    }
+
+    @Test
+    public void testMatchesUnliftedCombineWhenFlushingOnTooManyKeys() {
+        // every few keys the accumulators go on to the merging stage, partial ones get merged there
+        pipeline.getOptions().as(JetPipelineOptions.class).setJetCombineMaxAccumulators(3);
+
+        List<TimestampedValue<KV<String, Integer>>> elements = new ArrayList<>();
+        Map<KV<String, Long>, Integer> sums = new TreeMap<>((a, b) -> {
+            int res = a.getKey().compareTo(b.getKey());
+            return res != 0 ? res : Long.compare(a.getValue(), b.getValue());
+        });
+        for (int i = 0; i < 1000; i++) {
+            String key = "key-" + i % 17;
+            long timestamp = i % 50;
+            elements.add(TimestampedValue.of(KV.of(key, i), new Instant(timestamp)));
+            sums.merge(KV.of(key, timestamp / WINDOW_SIZE.getMillis()), i, Integer::sum);
+        }
+        List<KV<String, Integer>> expected = new ArrayList<>();
+        sums.forEach((keyAndWindow, sum) -> expected.add(KV.of(keyAndWindow.getKey(), sum)));
+
+        PCollection<KV<String, Integer>> input = pipeline
+                .apply(Create.timestamped(elements).withCoder(KV_CODER))
+                .apply(Window.into(FixedWindows.of(WINDOW_SIZE)));
+        assertMatchesUnliftedCombine(input, expected);
+
+        PipelineResult.State state = pipeline.run().waitUntilFinish();
+        assertEquals(PipelineResult.State.DONE, state);
+    }
+
+    @Test
+    public void testMatchesUnliftedCombineWhenFlushingOnWatermark() {
+        TestStream<KV<String, Integer>> source = TestStream.create(KV_CODER)
+                .addElements(
+                        TimestampedValue.of(KV.of("a", 1), new Instant(0)),
+                        TimestampedValue.of(KV.of("b", 2), new Instant(1)),
+                        TimestampedValue.of(KV.of("a", 3), new Instant(2)))
+                .advanceWatermarkTo(new Instant(WINDOW_SIZE.getMillis()))
+                // the accumulators of the first window have been sent on by now
+                .addElements(
+                        TimestampedValue.of(KV.of("a", 10), new Instant(11)),
+                        TimestampedValue.of(KV.of("b", 20), new Instant(12)),
+                        TimestampedValue.of(KV.of("b", 30), new Instant(13)))
+                .advanceWatermarkTo(new Instant(2 * WINDOW_SIZE.getMillis()))
+                .addElements(TimestampedValue.of(KV.of("c", 100), new Instant(21)))
+                .advanceWatermarkToInfinity();
+
+        PCollection<KV<String, Integer>> input = pipeline
+                .apply(source)
+                .apply(Window.into(FixedWindows.of(WINDOW_SIZE)));
+        List<KV<String, Integer>> expected = new ArrayList<>();
+        expected.add(KV.of("a", 4));
+        expected.add(KV.of("b", 2));
+        expected.add(KV.of("a", 10));
+        expected.add(KV.of("b", 50));
+        expected.add(KV.of("c", 100));
+        assertMatchesUnliftedCombine(input, expected);
+
+        PipelineResult.State state = pipeline.run().waitUntilFinish();
+        assertEquals(PipelineResult.State.DONE, state);
+    }
+
+    private static void assertMatchesUnliftedCombine(PCollection<KV<String, Integer>> input, List<KV<String, Integer>> expected) {
+        PCollection<KV<String, Integer>> lifted = input
+                .apply("Lifted", Combine.perKey(Sum.ofIntegers()));
+        PCollection<KV<String, Integer>> unlifted = input
+                .apply("Group", GroupByKey.create())
+                .apply("Unlifted", Combine.groupedValues(Sum.ofIntegers()));
+
+        PAssert.that("lifted", lifted).containsInAnyOrder(expected);
+        PAssert.that("unlifted", unlifted).containsInAnyOrder(expected);
+    }
+}
@@ -16,7 +16,11 @@
 
 package com.hazelcast.jet.beam.transforms.pardo;
 
+import com.hazelcast.jet.beam.JetPipelineOptions;
 import org.apache.beam.sdk.PipelineResult;
+import org.apache.beam.sdk.coders.AtomicCoder;
+import org.apache.beam.sdk.coders.CoderException;
+import org.apache.beam.sdk.coders.KvCoder;
 import org.apache.beam.sdk.coders.VarIntCoder;
 import org.apache.beam.sdk.testing.PAssert;
 import org.apache.beam.sdk.transforms.Create;
@@ -26,6 +30,7 @@ import org.apache.beam.sdk.transforms.View;
 import org.apache.beam.sdk.transforms.windowing.IntervalWindow;
 import org.apache.beam.sdk.transforms.windowing.SlidingWindows;
 import org.apache.beam.sdk.transforms.windowing.Window;
+import org.apache.beam.sdk.values.KV;
 import org.apache.beam.sdk.values.PCollection;
 import org.apache.beam.sdk.values.PCollectionTuple;
 import org.apache.beam.sdk.values.PCollectionView;
@@ -37,6 +42,8 @@ import org.joda.time.Instant;
 import org.joda.time.MutableDateTime;
 import org.junit.Test;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -350,4 +357,52 @@ public class MultipleInputsAndOutputParDoTest extends AbstractParDoTest {
         assertEquals(PipelineResult.State.DONE, state);
     }
 
+    @Test
+    public void testUnconsumedTaggedOutputNotEncoded() {
+        TupleTag<Integer> mainOutputTag = new TupleTag<Integer>("main") {};
+        TupleTag<KV<String, Integer>> unconsumedOutputTag = new TupleTag<KV<String, Integer>>("unconsumed") {};
+        // outputs of fused ParDos are never encoded
+        pipeline.getOptions().as(JetPipelineOptions.class).setJetFusionEnabled(false);
+
+        PCollectionTuple outputs =
+                pipeline
+                        .apply(Create.of(Arrays.asList(3, -42, 666)))
+                        .apply(ParDo.of(new BothOutputsDoFn(unconsumedOutputTag))
+                                        .withOutputTags(mainOutputTag, TupleTagList.of(unconsumedOutputTag)));
+        // keyed outputs get encoded for their edges, but this one has no edges
+        outputs.get(unconsumedOutputTag).setCoder(KvCoder.of(new UnencodableCoder(), VarIntCoder.of()));
+
+        PAssert.that(outputs.get(mainOutputTag)).containsInAnyOrder(3, -42, 666);
+
+        PipelineResult.State state = pipeline.run().waitUntilFinish();
+        assertEquals(PipelineResult.State.DONE, state);
+    }
+
+    private static class BothOutputsDoFn extends DoFn<Integer, Integer> {
+
+        private final TupleTag<KV<String, Integer>> additionalOutputTag;
+
+        BothOutputsDoFn(TupleTag<KV<String, Integer>> additionalOutputTag) {
+            this.additionalOutputTag = additionalOutputTag;
+        }
+
+        @ProcessElement
+        public void processElement(ProcessContext c) {
+            c.output(c.element());
+            c.output(additionalOutputTag, KV.of("key", c.element()));
+        }
+    }
+
+    private static class UnencodableCoder extends AtomicCoder<String> {
+
+        @Override
+        public void encode(String value, OutputStream outStream) throws CoderException {
+            throw new CoderException("Unconsumed output encoded");
+        }
+
+        @Override
+        public String decode(InputStream inStream) throws CoderException {
+            throw new CoderException("Unconsumed output decoded");
+        }
+    }
 }